@@ -56,6 +56,12 @@ public class EncodingBenchmark {
         @Param({"true", "false"})
         static boolean useScalarProduct;
 
+        @Param({"true", "false"})
+        static boolean useBinPacking;
+
+        @Param({"1000", "5000", "10000"})
+        static int numNodes;
+
         @Setup(Level.Iteration)
         public void setUp() {
             // create database
@@ -97,7 +103,7 @@ public class EncodingBenchmark {
                             "select * from t2 group by d1 having increasing(controllable__c1) = true"
             );
 
-            for (int i = 0; i < 1000; i++) {
+            for (int i = 0; i < numNodes; i++) {
                 conn.execute(String.format("insert into t1 values(%s, %s)", i,
                         50 + ThreadLocalRandom.current().nextInt(1, 100)));
             }
@@ -108,6 +114,7 @@ public class EncodingBenchmark {
             final OrToolsSolver solver = new OrToolsSolver.Builder()
                     .setUseFullReifiedConstraintsForJoinPreferences(fullReification)
                     .setTryScalarProductEncoding(useScalarProduct)
+                    .setUseBinPackingForCapacityConstraints(useBinPacking)
                     .setMaxTimeInSeconds(100)
                     .build();
             model = Model.buildModel(conn, solver, views);
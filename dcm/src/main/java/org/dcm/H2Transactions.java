@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+
+
+/**
+ * Tells which H2 transaction fired a trigger, and whether that transaction is over, so that changes logged by
+ * triggers are only published once they are committed. H2's public trigger API exposes neither: it hands every
+ * trigger invocation a new Connection, even within the same transaction. This is therefore the only place that
+ * relies on H2's internals, namely the session behind an embedded connection and whether it holds uncommitted
+ * changes.
+ *
+ * Those internals are looked up reflectively and checked once, when the class is loaded. If the H2 version in use
+ * does not have them (H2 2.x renamed the session class, for example), isSupported() returns false, and callers
+ * must not track changes using triggers.
+ */
+final class H2Transactions {
+    private static final Logger LOG = LoggerFactory.getLogger(H2Transactions.class);
+    @Nullable private static final Class<?> CONNECTION_CLASS;
+    @Nullable private static final Class<?> SESSION_CLASS;
+    @Nullable private static final Method GET_SESSION;
+    @Nullable private static final Method CONTAINS_UNCOMMITTED;
+    @Nullable private static final Method IS_CLOSED;
+
+    static {
+        Class<?> connectionClass = null;
+        Class<?> sessionClass = null;
+        Method getSession = null;
+        Method containsUncommitted = null;
+        Method isClosed = null;
+        try {
+            connectionClass = Class.forName("org.h2.jdbc.JdbcConnection");
+            sessionClass = Class.forName("org.h2.engine.Session");
+            getSession = connectionClass.getMethod("getSession");
+            containsUncommitted = sessionClass.getMethod("containsUncommitted");
+            isClosed = sessionClass.getMethod("isClosed");
+        } catch (final ReflectiveOperationException e) {
+            LOG.info("The H2 version in use does not let triggers track transactions: {}", e.toString());
+            connectionClass = null;
+            sessionClass = null;
+            getSession = null;
+            containsUncommitted = null;
+            isClosed = null;
+        }
+        CONNECTION_CLASS = connectionClass;
+        SESSION_CLASS = sessionClass;
+        GET_SESSION = getSession;
+        CONTAINS_UNCOMMITTED = containsUncommitted;
+        IS_CLOSED = isClosed;
+    }
+
+    private H2Transactions() {
+    }
+
+    /**
+     * @return whether the other methods can be used with the H2 version in use
+     */
+    static boolean isSupported() {
+        return GET_SESSION != null;
+    }
+
+    /**
+     * @param connection the connection a trigger was fired with
+     * @return an object that identifies the trigger's transaction until it is over, or null if the connection is
+     *         not an embedded H2 connection, in which case its transaction cannot be known
+     */
+    @Nullable
+    static Object transactionOf(final Connection connection) {
+        if (!isSupported() || !CONNECTION_CLASS.isInstance(connection)) {
+            return null;
+        }
+        final Object session = invoke(GET_SESSION, connection);
+        return SESSION_CLASS.isInstance(session) ? session : null;
+    }
+
+    /**
+     * @param transaction an object returned by transactionOf()
+     * @return whether the transaction either committed or rolled back
+     */
+    static boolean isOver(final Object transaction) {
+        return (Boolean) invoke(IS_CLOSED, transaction) || !(Boolean) invoke(CONTAINS_UNCOMMITTED, transaction);
+    }
+
+    private static Object invoke(@Nullable final Method method, final Object target) {
+        try {
+            return method.invoke(target);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Could not call " + method + " on " + target, e);
+        }
+    }
+}
@@ -31,8 +31,10 @@ public class IRColumn {
     @Nullable private final IRTable irTable;
     private final String name;
     private final FieldTag tag;
-    @GuardedBy("this") private List<String> values;
-    @GuardedBy("this") private List<?> fieldValues;
+    // Values set explicitly through setValues(). Otherwise, the values are read from the table's current data.
+    @GuardedBy("this") @Nullable private List<?> fieldValues = null;
+    // The MiniZinc rendering of the values, computed on first use after every update
+    @GuardedBy("this") @Nullable private List<String> values = null;
     private Optional<IRColumn> foreignKeyParent;
 
 
@@ -146,8 +148,6 @@ public class IRColumn {
         this.name = fieldName;
         this.tag = fieldTag;
         this.type = fieldType;
-        this.values = new ArrayList<>();
-        this.fieldValues = new ArrayList<>();
         this.foreignKeyParent = Optional.empty();
     }
 
@@ -219,59 +219,62 @@ public class IRColumn {
     }
 
     /**
-     * @return we get the original values from the correspondent jooqField
+     * This is used to update the IRColumn with values that do not come from its table's current data.
+     * The MiniZinc friendly string rendering is only computed if getValues() is invoked.
+     *
+     * @param values A list of values from the corresponding jooqField/column.
      */
-    synchronized List<?> getFieldValues() {
+    synchronized void setValues(final List<?> values) {
         Preconditions.checkNotNull(type);
-        return fieldValues;
+        this.fieldValues = values;
+        this.values = null;
     }
 
     /**
-     * This is used to update the IRColumn with the values from its corresponding
-     * column in the SQL database. We coerce the variable and value names to a formatting
-     * that is MiniZinc friendly.
-     *
-     * @param values A list of values that will be reflected in the dzn file for
-     *               the corresponding jooqField/column.
+     * Marks the column as out of date with its table's current data, so that its string rendering is
+     * recomputed the next time it is used. Backends which read the table's result set directly, like
+     * OR-tools, never pay for the rendering.
      */
-    synchronized void setValues(final List<?> values) {
-        Preconditions.checkNotNull(type);
-        this.fieldValues = values;
-        this.values = new ArrayList<>();
-        for (final Object v : values) {
+    synchronized void invalidate() {
+        this.fieldValues = null;
+        this.values = null;
+    }
+
+    /**
+     * Renders the column's values in a MiniZinc friendly form.
+     */
+    @GuardedBy("this")
+    private List<String> renderValues() {
+        final List<?> columnValues = fieldValues != null
+                ? fieldValues
+                : getIRTable().getCurrentData().getValues((Field<?>) Preconditions.checkNotNull(jooqField));
+        final List<String> rendered = new ArrayList<>(columnValues.size());
+        for (final Object v : columnValues) {
             // we always convert to string
             String svalue = v == null ? "null" : v.toString();
 
             /*
              * The generated model differentiates between primary keys, controllable, and
              * fixed columns. We translate the values to MiniZinc friendly forms.
+             * Both CONTROLLABLE and INPUT have the same rules because current CONTROLLABLE values
+             * are also part of the data model
              */
-            switch (tag) {
-                /*
-                 * Both CONTROLLABLE and INPUT have the same rules because current CONTROLLABLE values
-                 * are also part of the data model
-                 */
-                case CONTROLLABLE:
-                case INPUT: {
-                    switch (type) {
-                        // Strings in MiniZinc need to be quoted
-                        case STRING: {
-                            svalue = String.format("\"%s\"", svalue);
-                            break;
-                        }
-                        // bools are lower cased 'true' and 'false'
-                        case BOOL: {
-                            svalue = svalue.toLowerCase(Locale.US);
-                            break;
-                        }
-                        default: { }
-                    }
+            switch (Preconditions.checkNotNull(type)) {
+                // Strings in MiniZinc need to be quoted
+                case STRING: {
+                    svalue = String.format("\"%s\"", svalue);
+                    break;
+                }
+                // bools are lower cased 'true' and 'false'
+                case BOOL: {
+                    svalue = svalue.toLowerCase(Locale.US);
                     break;
                 }
                 default: { }
             }
-            this.values.add(svalue);
+            rendered.add(svalue);
         }
+        return rendered;
     }
 
     @Override
@@ -282,7 +285,6 @@ public class IRColumn {
                 ", type=" + this.type +
                 ", tag=" + this.tag +
                 ", values=" + this.values +
-                ", fieldValues=" + this.fieldValues +
                 '}';
     }
 
@@ -307,7 +309,15 @@ public class IRColumn {
         return Objects.hash(jooqField, type, name, tag, foreignKeyParent);
     }
 
+    /**
+     * Used by backends that consume the string form of the data, like MiniZinc
+     *
+     * @return the column's values, rendered as strings
+     */
     public synchronized List<String> getValues() {
+        if (values == null) {
+            values = renderValues();
+        }
         return values;
     }
 }
@@ -7,6 +7,8 @@
 package org.dcm;
 
 import com.google.common.base.Preconditions;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Result;
@@ -37,6 +39,8 @@ public class IRTable {
     private final String alias;
     @Nullable private final Table<? extends Record> jooqTable;
     @Nullable private Result<? extends Record> recentData = null;
+    // Changes whenever recentData is replaced or modified
+    private long dataVersion = 0;
     private final Map<String, IRColumn> irColumns;
     private final Map<Field, IRColumn> fieldToIRColumn;
     private final List<IRForeignKey> foreignKeys;
@@ -111,8 +115,7 @@ public class IRTable {
      */
     public int getNumRows() {
         Preconditions.checkNotNull(jooqTable);
-        // just returns the length of one of the columns
-        return irColumns.values().iterator().next().getFieldValues().size();
+        return recentData == null ? 0 : recentData.size();
     }
 
     /**
@@ -182,15 +185,99 @@ public class IRTable {
     }
 
     /**
-     * Updates a table field with a list of values
+     * Replaces the table's rows. The columns' values are only rendered from them if they are used, for
+     * example by MiniZinc.
      */
     void updateValues(final Result<? extends Record> recentData) {
         Preconditions.checkNotNull(jooqTable);
         this.recentData = recentData;
-        // stores all the values per field for later use in MiniZinc
-        for (final Field<?> field : jooqTable.fields()) {
-            fieldToIRColumn.get(field).setValues(recentData.getValues(field));
+        invalidateColumns();
+    }
+
+    /**
+     * Fetches the table's rows, or only those satisfying the filter if there is one.
+     *
+     * @return the approximate number of bytes fetched
+     */
+    long fetchValues(final DSLContext dbCtx, @Nullable final Condition filter) {
+        Preconditions.checkNotNull(jooqTable);
+        final Result<? extends Record> result = filter == null ? dbCtx.selectFrom(jooqTable).fetch()
+                                                               : dbCtx.selectFrom(jooqTable).where(filter).fetch();
+        long bytes = 0;
+        for (final Record record : result) {
+            for (int i = 0; i < record.size(); i++) {
+                bytes += sizeOf(record.get(i));
+            }
         }
+        updateValues(result);
+        return bytes;
+    }
+
+    private void invalidateColumns() {
+        dataVersion++;
+        irColumns.values().forEach(IRColumn::invalidate);
+    }
+
+    /**
+     * Replaces a row of the current data in place.
+     */
+    void setRow(final int index, final Record record) {
+        Preconditions.checkNotNull(jooqTable);
+        mutableData().set(index, record);
+        invalidateColumns();
+    }
+
+    /**
+     * Appends a row to the current data in place.
+     */
+    void addRow(final Record record) {
+        Preconditions.checkNotNull(jooqTable);
+        mutableData().add(record);
+        invalidateColumns();
+    }
+
+    /**
+     * Removes a row from the current data in place, by moving the last row into its place.
+     */
+    void removeRow(final int index) {
+        Preconditions.checkNotNull(jooqTable);
+        final Result<Record> data = mutableData();
+        final int last = data.size() - 1;
+        data.set(index, data.get(last));
+        data.remove(last);
+        invalidateColumns();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result<Record> mutableData() {
+        return (Result<Record>) Preconditions.checkNotNull(recentData);
+    }
+
+    private static long sizeOf(@Nullable final Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 2L * ((String) value).length();
+        }
+        if (value instanceof Boolean || value instanceof Byte) {
+            return 1;
+        }
+        if (value instanceof Short) {
+            return 2;
+        }
+        if (value instanceof Integer || value instanceof Float) {
+            return 4;
+        }
+        return 8;
+    }
+
+    /**
+     * @return a number that changes whenever the current data changes, which is cheaper to compare than the
+     *         data itself. The data is modified in place by incremental updates (see Model.enableIncrementalUpdates())
+     */
+    public long getDataVersion() {
+        return dataVersion;
     }
 
     /**
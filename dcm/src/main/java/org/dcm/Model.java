@@ -11,39 +11,49 @@ import com.facebook.presto.sql.parser.ParsingException;
 import com.facebook.presto.sql.parser.ParsingOptions;
 import com.facebook.presto.sql.parser.SqlParser;
 import com.facebook.presto.sql.tree.CreateView;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.dcm.backend.ISolverBackend;
 import org.dcm.backend.MinizincSolver;
 import org.dcm.compiler.ModelCompiler;
-import org.jooq.Constraint;
+import org.jooq.BatchBindStep;
+import org.jooq.Condition;
 import org.jooq.DSLContext;
 import org.jooq.Field;
 import org.jooq.ForeignKey;
+import org.jooq.InsertValuesStepN;
 import org.jooq.Meta;
+import org.jooq.Query;
 import org.jooq.Record;
 import org.jooq.Result;
-import org.jooq.RowN;
 import org.jooq.Table;
+import org.jooq.UniqueKey;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
-import static org.jooq.impl.DSL.row;
-import static org.jooq.impl.DSL.values;
-
 
 /**
  * Used synthesize a MiniZinc model based on a set of SQL tables.
@@ -62,10 +72,13 @@ public class Model {
     private final DSLContext dbCtx;
     private final Map<Table<? extends Record>, IRTable> jooqTableToIRTable;
     private final Map<String, IRTable> irTables;
-    private final Multimap<Table<?>, Constraint> jooqTableConstraintMap;
     private final ModelCompiler compiler;
     private IRContext irContext;
     private final ISolverBackend backend;
+    @Nullable private TableChangeTracker changeTracker = null;
+    @Nullable private ExecutorService fetchExecutor = null;
+    private Map<String, Long> lastFetchTimesNanos = Collections.emptyMap();
+    private final Map<Table<? extends Record>, Condition> fetchFilters = new HashMap<>();
 
 
     @SuppressWarnings("unused")
@@ -119,21 +132,8 @@ public class Model {
 
         // parse model from SQL tables
         jooqTableToIRTable = new HashMap<>(augmentedTableList.size());
-        jooqTableConstraintMap = HashMultimap.create();
         irTables = new HashMap<>(augmentedTableList.size());
         parseModel(augmentedTableList);
-        for (final Map.Entry<Table<? extends Record>, IRTable> entry : jooqTableToIRTable.entrySet()) {
-            // TODO: uncomment if removal of pk constraints is needed
-            // final UniqueKey pk = table.getPrimaryKey();
-            // constraints.put(table, pk.constraint());
-            // dbCtx.alterTable(table).drop(pk.constraint()).execute();
-
-            // remove fk constraints
-            final Table<? extends Record> table = entry.getKey();
-            for (final ForeignKey<? extends Record, ?> fk : table.getReferences()) {
-                jooqTableConstraintMap.put(table, fk.constraint());
-            }
-        }
         irContext = new IRContext(irTables);
         compiler = new ModelCompiler(irContext);
         compiler.compile(constraintViews, backend);
@@ -228,6 +228,95 @@ public class Model {
         updateDataFields();
     }
 
+    /**
+     * Makes subsequent calls to updateData() apply only the rows that changed since the previous call,
+     * instead of re-fetching every table. Changes are tracked using database triggers, which is only supported
+     * for H2 tables with a primary key. All other tables (and views) continue to be re-fetched in full.
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized void enableIncrementalUpdates() {
+        if (changeTracker != null) {
+            return;
+        }
+        final TableChangeTracker tracker = new TableChangeTracker(dbCtx);
+        for (final Map.Entry<Table<? extends Record>, IRTable> entry : jooqTableToIRTable.entrySet()) {
+            tracker.track(entry.getKey(), entry.getValue());
+        }
+        changeTracker = tracker;
+    }
+
+    /**
+     * Removes the triggers installed by enableIncrementalUpdates(), reverting to re-fetching every table
+     * in updateData().
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized void disableIncrementalUpdates() {
+        if (changeTracker != null) {
+            changeTracker.close();
+            changeTracker = null;
+        }
+    }
+
+    /**
+     * Makes subsequent calls to updateData() fetch tables concurrently, using up to numThreads threads. To
+     * benefit from this, the DSLContext used to build the model should be backed by a connection pool
+     * (for example, a DataSource), so that each table is fetched over its own connection.
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized void enableParallelFetch(final int numThreads) {
+        Preconditions.checkArgument(numThreads > 0, "numThreads must be positive: %s", numThreads);
+        disableParallelFetch();
+        final ThreadFactory namedThreadFactory =
+                new ThreadFactoryBuilder().setNameFormat("fetch-thread-%d").setDaemon(true).build();
+        fetchExecutor = Executors.newFixedThreadPool(numThreads, namedThreadFactory);
+    }
+
+    /**
+     * Reverts to fetching tables one after the other in updateData().
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized void disableParallelFetch() {
+        if (fetchExecutor != null) {
+            fetchExecutor.shutdown();
+            fetchExecutor = null;
+        }
+    }
+
+    /**
+     * Restricts the rows that subsequent calls to updateData() fetch from a table to those that satisfy a
+     * condition, for example to solve for a subset of a table's rows. Filtered tables are always re-fetched in
+     * full. A null condition removes the restriction.
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized void setFetchFilter(final String tableName, @Nullable final Condition condition) {
+        final IRTable irTable = irTables.get(tableName.toUpperCase(Locale.US));
+        Preconditions.checkArgument(irTable != null && !irTable.isAliasedTable(), "Unknown table: %s", tableName);
+        if (condition == null) {
+            fetchFilters.remove(irTable.getTable());
+        } else {
+            fetchFilters.put(irTable.getTable(), condition);
+        }
+    }
+
+    /**
+     * @return the rows of a table as of the most recent call to updateData()
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized Result<? extends Record> getTableData(final String tableName) {
+        final IRTable irTable = irTables.get(tableName.toUpperCase(Locale.US));
+        Preconditions.checkArgument(irTable != null, "Unknown table: %s", tableName);
+        return irTable.getCurrentData();
+    }
+
+    /**
+     * @return the time taken to refresh each table in the most recent call to updateData(), in nanoseconds,
+     *         ordered from the slowest table to the fastest
+     */
+    @SuppressWarnings({"WeakerAccess", "reason=Public API"})
+    public synchronized Map<String, Long> getLastFetchTimesNanos() {
+        return lastFetchTimesNanos;
+    }
+
     /**
      * Solves the current model by running the current modelFile and dataFile against MiniZinc
      */
@@ -263,102 +352,267 @@ public class Model {
     }
 
     /**
-     * Updates the database tables based on the output from the MiniZinc model.
-     *
-     * XXX: This method is currently a performance bottleneck.
+     * Updates the database tables based on the output from the MiniZinc model. The output is compared against
+     * the rows the solver was given, so only rows that the solver changed are written, all in one transaction.
      */
-    @SuppressWarnings("unchecked")
     private void updateTables(final Map<IRTable, Result<? extends Record>> recordsPerTable) {
-        LOG.info("Removing constraints");
-
-        // We temporarily remove constraints so we avoid SQL errors related to ForeignKey errors
-        removeConstraints(jooqTableConstraintMap);
+        final long start = System.nanoTime();
+        dbCtx.transaction(configuration -> {
+            final DSLContext txCtx = DSL.using(configuration);
+            for (final Map.Entry<IRTable, Result<? extends Record>> tableEntry : recordsPerTable.entrySet()) {
+                final IRTable irTable = tableEntry.getKey();
+
+                // if a table has no variables, there will be no new values from MiniZinc output to write
+                // hence we just skip that value
+                if (irTable.getVars().isEmpty()) {
+                    continue;
+                }
+                LOG.info("Updating rows for table: {}", irTable.getName());
+                final UniqueKey<? extends Record> primaryKey = irTable.getTable().getPrimaryKey();
+                // Rows can only be matched by key if the solver cannot change the key itself
+                if (primaryKey == null || primaryKey.getFields().stream()
+                                                   .anyMatch(field -> irTable.getField(field).isControllable())) {
+                    updateTableWithoutKey(txCtx, irTable, tableEntry.getValue());
+                } else {
+                    updateTableByKey(txCtx, irTable, primaryKey, tableEntry.getValue());
+                }
+            }
+        });
+        LOG.info("Wrote output to the given DB context in {}ns! You can read changes now.",
+                 (System.nanoTime() - start));
+    }
 
-        for (final Map.Entry<IRTable, Result<? extends Record>> tableEntry : recordsPerTable.entrySet()) {
-            final IRTable irTable = tableEntry.getKey();
-            LOG.info("Updating rows for table: {}", irTable.getName());
+    /**
+     * Writes back the solver's output for a table with a primary key. Only rows whose controllable columns
+     * changed are updated, using batched statements keyed by the primary key. Rows the solver was not given are
+     * inserted, and rows missing from the solver's output are deleted.
+     */
+    private void updateTableByKey(final DSLContext txCtx, final IRTable irTable,
+                                  final UniqueKey<? extends Record> primaryKey,
+                                  final Result<? extends Record> records) {
+        final Table<? extends Record> table = irTable.getTable();
+        final List<Field<?>> keyFields = new ArrayList<>(primaryKey.getFields());
+        final List<Field<?>> varFields = varFields(irTable);
+
+        // Values of the controllable columns that the solver was given, by primary key
+        final Result<? extends Record> inputRecords = irTable.getCurrentData();
+        final Map<List<Object>, List<Object>> inputVarsByKey = new HashMap<>(inputRecords.size());
+        for (final Record record : inputRecords) {
+            inputVarsByKey.put(valuesOf(record, keyFields), valuesOf(record, varFields));
+        }
 
-            // if a table has no variables, there will be no new values from MiniZinc output to write
-            // hence we just skip that value
-            if (irTable.getVars().isEmpty()) {
+        final List<Object[]> updates = new ArrayList<>();
+        final List<Object[]> inserts = new ArrayList<>();
+        final Set<List<Object>> keysInOutput = new HashSet<>(records.size());
+        final List<Field<?>> fields = List.of(table.fields());
+        for (final Record record : records) {
+            final List<Object> key = valuesOf(record, keyFields);
+            keysInOutput.add(key);
+            final List<Object> inputVars = inputVarsByKey.get(key);
+            if (inputVars == null) {
+                inserts.add(valuesOf(record, fields).toArray());
                 continue;
             }
+            final List<Object> newVars = valuesOf(record, varFields);
+            if (!newVars.equals(inputVars)) {
+                final List<Object> bindValues = new ArrayList<>(newVars);
+                bindValues.addAll(key);
+                updates.add(bindValues.toArray());
+            }
+        }
+        final List<Object[]> deletes = inputVarsByKey.keySet().stream()
+                                                     .filter(key -> !keysInOutput.contains(key))
+                                                     .map(List::toArray)
+                                                     .collect(Collectors.toList());
+
+        // UPDATE table SET var1 = ?, ... WHERE key1 = ? AND ...
+        final Condition keyPlaceholders = placeholderConditions(keyFields);
+        executeBatch(txCtx, txCtx.update(table).set(setPlaceholders(varFields)).where(keyPlaceholders), updates);
+        executeBatch(txCtx, txCtx.delete(table).where(keyPlaceholders), deletes);
+        insertRows(txCtx, table, inserts);
+        LOG.info("Updated {} rows, inserted {} rows and deleted {} rows in table {}",
+                 updates.size(), inserts.size(), deletes.size(), table.getName());
+    }
 
-            final Table table = irTable.getTable();
-            final Result<? extends Record> records = tableEntry.getValue();
-
-            // transform the result into a temporary VALUES table
-            // https://www.jooq.org/doc/latest/manual/sql-building/table-expressions/values/
-            final RowN[] valuesRows = records.stream().map(Record::valuesRow).toArray(RowN[]::new);
+    /**
+     * Writes back the solver's output for a table without a stable primary key. Rows are matched by their
+     * non-controllable columns, which the solver does not change, and rows whose controllable columns changed are
+     * updated in place, so that foreign keys on or into the table keep holding throughout. Identical rows cannot
+     * be told apart, so if the solver assigns them different values they are deleted and inserted again. Since
+     * foreign keys only reference unique columns, such rows are never referenced.
+     */
+    private void updateTableWithoutKey(final DSLContext txCtx, final IRTable irTable,
+                                       final Result<? extends Record> records) {
+        final Table<? extends Record> table = irTable.getTable();
+        final List<Field<?>> fields = List.of(table.fields());
+        final List<Field<?>> varFields = varFields(irTable);
+        final List<Field<?>> fixedFields = fields.stream()
+                                                 .filter(field -> !irTable.getField(field).isControllable())
+                                                 .collect(Collectors.toList());
+        final Map<List<Object>, List<List<Object>>> inputVars = varsByFixedValues(irTable.getCurrentData(),
+                                                                                  fixedFields, varFields);
+        final Map<List<Object>, List<List<Object>>> outputVars = varsByFixedValues(records, fixedFields,
+                                                                                   varFields);
+        final Set<List<Object>> allFixedValues = new HashSet<>(inputVars.keySet());
+        allFixedValues.addAll(outputVars.keySet());
+
+        final List<Object[]> updates = new ArrayList<>();
+        final List<Object[]> deletes = new ArrayList<>();
+        final List<Object[]> inserts = new ArrayList<>();
+        for (final List<Object> fixedValues : allFixedValues) {
+            final List<List<Object>> before = inputVars.getOrDefault(fixedValues, Collections.emptyList());
+            final List<List<Object>> after = outputVars.getOrDefault(fixedValues, Collections.emptyList());
+            final List<List<Object>> removed = multisetDifference(before, after);
+            final List<List<Object>> added = multisetDifference(after, before);
+
+            // Pair every removed row with an added row where possible, grouping identical removed rows
+            final Map<List<Object>, List<List<Object>>> replacements = new LinkedHashMap<>();
+            for (int i = 0; i < removed.size(); i++) {
+                final List<List<Object>> replacement = replacements.computeIfAbsent(removed.get(i),
+                                                                                     k -> new ArrayList<>());
+                if (i < added.size()) {
+                    replacement.add(added.get(i));
+                }
+            }
+            for (int i = removed.size(); i < added.size(); i++) {
+                inserts.add(rowValues(fields, fixedFields, fixedValues, varFields, added.get(i)));
+            }
+            for (final Map.Entry<List<Object>, List<List<Object>>> entry : replacements.entrySet()) {
+                final List<Object> oldVars = entry.getKey();
+                final List<List<Object>> newVars = entry.getValue();
+                final int copies = Collections.frequency(before, oldVars);
+                final int numRemoved = Collections.frequency(removed, oldVars);
+                final List<Object> match = new ArrayList<>(fixedValues);
+                match.addAll(oldVars);
+                if (numRemoved == copies && newVars.size() == copies && new HashSet<>(newVars).size() == 1) {
+                    final List<Object> bindValues = new ArrayList<>(newVars.get(0));
+                    bindValues.addAll(match);
+                    updates.add(bindValues.toArray());
+                    continue;
+                }
+                deletes.add(match.toArray());
+                for (int i = 0; i < copies - numRemoved; i++) {
+                    inserts.add(rowValues(fields, fixedFields, fixedValues, varFields, oldVars));
+                }
+                newVars.forEach(vars -> inserts.add(rowValues(fields, fixedFields, fixedValues, varFields, vars)));
+            }
+        }
 
-            // Rundown of the different query parts:
-            // - Current Table:
-            //      dbCtx.selectFrom(table)
-            // - Temporary VALUES table built from the MiniZinc output
-            //      dbCtx.selectFrom(values(valuesRows).as(table, table.fields()))
+        // UPDATE table SET var1 = ?, ... WHERE fixed1 IS NOT DISTINCT FROM ? AND ... AND var1 IS NOT DISTINCT ...
+        final List<Field<?>> matchFields = new ArrayList<>(fixedFields);
+        matchFields.addAll(varFields);
+        final Condition rowPlaceholders = DSL.and(matchFields.stream()
+                                                             .map(Model::nullSafePlaceholderCondition)
+                                                             .collect(Collectors.toList()));
+        executeBatch(txCtx, txCtx.delete(table).where(rowPlaceholders), deletes);
+        executeBatch(txCtx, txCtx.update(table).set(setPlaceholders(varFields)).where(rowPlaceholders), updates);
+        insertRows(txCtx, table, inserts);
+        LOG.info("Updated {} row groups, replaced {} row groups and inserted {} rows in table {}",
+                 updates.size(), deletes.size(), inserts.size(), table.getName());
+    }
 
-            // Delete rows on current table that are not in the MiniZinc output
-            // computed as: Current Table MINUS MiniZinc output table
-            final Result<? extends Record> rowsToDelete = dbCtx.selectFrom(table)
-                    .except(dbCtx.selectFrom(values(valuesRows).as(table, table.fields())))
-                    .fetchInto(table);
+    /**
+     * Groups the values of the controllable columns of each row by the values of its other columns.
+     */
+    private static Map<List<Object>, List<List<Object>>> varsByFixedValues(final Result<? extends Record> records,
+                                                                          final List<Field<?>> fixedFields,
+                                                                          final List<Field<?>> varFields) {
+        final Map<List<Object>, List<List<Object>>> ret = new HashMap<>();
+        for (final Record record : records) {
+            ret.computeIfAbsent(valuesOf(record, fixedFields), k -> new ArrayList<>())
+               .add(valuesOf(record, varFields));
+        }
+        return ret;
+    }
 
-            if (rowsToDelete.size() == 0) {
-                continue;
+    /**
+     * @return the elements of a, without as many occurrences of each element as there are in b
+     */
+    private static List<List<Object>> multisetDifference(final List<List<Object>> a, final List<List<Object>> b) {
+        final Map<List<Object>, Integer> remaining = new HashMap<>();
+        b.forEach(element -> remaining.merge(element, 1, Integer::sum));
+        final List<List<Object>> ret = new ArrayList<>();
+        for (final List<Object> element : a) {
+            final int count = remaining.getOrDefault(element, 0);
+            if (count > 0) {
+                remaining.put(element, count - 1);
+            } else {
+                ret.add(element);
             }
+        }
+        return ret;
+    }
 
-            // jOOQ's `batchDelete` won't work here because it needs a list of `UpdatableRecord`s,
-            // but `UpdatableRecord` only exists for tables with a primary key.
-            // Since we are not assuming that, we execute an row-by-row delete.
-            dbCtx.transaction(configuration -> {
-                final DSLContext txCtx = DSL.using(configuration);
-                for (final Record recordToDelete : rowsToDelete) {
-                    txCtx.delete(table).where(row(table.fields()).eq(recordToDelete.intoArray())).execute();
-                }
-
-            });
-
-            // Insert new rows from MiniZinc output
-            // computed as: MiniZinc output table MINUS Current Table
-            dbCtx.insertInto(table)
-                    .select(dbCtx.selectFrom(values(valuesRows).as(table, table.fields()))
-                                 .except(dbCtx.selectFrom(table)))
-                    .execute();
+    private static Object[] rowValues(final List<Field<?>> fields, final List<Field<?>> fixedFields,
+                                      final List<Object> fixedValues, final List<Field<?>> varFields,
+                                      final List<Object> varValues) {
+        final Object[] values = new Object[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            final int fixedIndex = fixedFields.indexOf(fields.get(i));
+            values[i] = fixedIndex >= 0 ? fixedValues.get(fixedIndex)
+                                        : varValues.get(varFields.indexOf(fields.get(i)));
         }
+        return values;
+    }
+
+    private static List<Field<?>> varFields(final IRTable irTable) {
+        return irTable.getVars().stream()
+                      .map(column -> (Field<?>) column.getJooqField())
+                      .collect(Collectors.toList());
+    }
 
-        // FIXME: If any exception is thrown while performing the operations in the tables we might not be able to
-        // restore the constraints here again. Even if we add a try-finally block, there might be the case when the
-        // table was left at an inconsistent state and then when we are unable to restore constraints
-        // TODO: Observe the different exceptions that might get thrown in this method and handle them overtime
+    private static Map<Field<?>, Object> setPlaceholders(final List<Field<?>> fields) {
+        final Map<Field<?>, Object> setPlaceholders = new LinkedHashMap<>();
+        fields.forEach(field -> setPlaceholders.put(field, placeholder(field)));
+        return setPlaceholders;
+    }
 
-        // After updating the DB we restore the constraints that we removed before
-        restoreConstraints(jooqTableConstraintMap);
+    private static Condition placeholderConditions(final List<Field<?>> fields) {
+        return DSL.and(fields.stream()
+                             .map(field -> placeholderCondition(field))
+                             .collect(Collectors.toList()));
+    }
 
-        LOG.info("Wrote output to the given DB context! You can read changes now.");
+    private static void insertRows(final DSLContext txCtx, final Table<? extends Record> table,
+                                   final List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        InsertValuesStepN<? extends Record> insert = null;
+        for (final Object[] values : rows) {
+            insert = insert == null ? txCtx.insertInto(table, table.fields()).values(values)
+                                    : insert.values(values);
+        }
+        Preconditions.checkNotNull(insert).execute();
     }
 
-    /**
-     * Restore previously removed constraints
-     */
-    private void restoreConstraints(final Multimap<Table<?>, Constraint> constraints) {
-        for (final Map.Entry<Table<?>, Constraint> entry : constraints.entries()) {
-            final Table<?> table = entry.getKey();
-            final Constraint constraint = entry.getValue();
-            LOG.info("Restoring constraint: {} on table: {}", constraint, table);
-            dbCtx.alterTable(table).add(constraint).execute();
+    private static void executeBatch(final DSLContext txCtx, final Query query, final List<Object[]> bindValues) {
+        if (bindValues.isEmpty()) {
+            return;
         }
+        final BatchBindStep batch = txCtx.batch(query);
+        bindValues.forEach(batch::bind);
+        batch.execute();
     }
 
-    /**
-     * Removes existing foreign key constraints
-     */
-    private void removeConstraints(final Multimap<Table<?>, Constraint> constraints) {
-        for (final Map.Entry<Table<?>, Constraint> entry : constraints.entries()) {
-            final Table<?> table = entry.getKey();
-            final Constraint constraint = entry.getValue();
-            LOG.info("Removing constraint: {} on table: {}", constraint, table);
-            dbCtx.alterTable(table).drop(constraint).execute();
+    private static List<Object> valuesOf(final Record record, final List<Field<?>> fields) {
+        final List<Object> values = new ArrayList<>(fields.size());
+        for (final Field<?> field : fields) {
+            values.add(field.getDataType().convert(record.get(field.getName())));
         }
+        return values;
+    }
+
+    private static <T> Field<T> placeholder(final Field<T> field) {
+        return DSL.val(null, field.getDataType());
+    }
+
+    private static <T> Condition placeholderCondition(final Field<T> field) {
+        return field.eq(placeholder(field));
+    }
+
+    private static <T> Condition nullSafePlaceholderCondition(final Field<T> field) {
+        return field.isNotDistinctFrom(placeholder(field));
     }
 
     /**
@@ -411,19 +665,70 @@ public class Model {
      */
     private void updateDataFields() {
         final long updateData = System.nanoTime();
-        for (final Map.Entry<Table<? extends Record>, IRTable> entry : jooqTableToIRTable.entrySet()) {
-            final Table<? extends Record> table = entry.getKey();
-            final IRTable irTable = entry.getValue();
-            final long start = System.nanoTime();
-            final Result<? extends Record> recentData = dbCtx.selectFrom(table).fetch();
-            final long select = System.nanoTime();
-            irTable.updateValues(recentData);
-            final long updateValues = System.nanoTime();
-            LOG.info("updateDataFields for table {} took {} ns to fetch {} rows from DB, " +
-                            "and {} ns to reflect in IRTables",
-                     table.getName(), (select - start), recentData.size(), (System.nanoTime() - updateValues));
+        final Map<String, Long> fetchTimes = new ConcurrentHashMap<>();
+        final ExecutorService executor = fetchExecutor;
+        if (executor == null) {
+            for (final Map.Entry<Table<? extends Record>, IRTable> entry : jooqTableToIRTable.entrySet()) {
+                fetchTimes.put(entry.getKey().getName(), updateDataField(entry.getKey(), entry.getValue()));
+            }
+        } else {
+            final List<Future<?>> futures = new ArrayList<>(jooqTableToIRTable.size());
+            for (final Map.Entry<Table<? extends Record>, IRTable> entry : jooqTableToIRTable.entrySet()) {
+                futures.add(executor.submit(() -> fetchTimes.put(entry.getKey().getName(),
+                                                                 updateDataField(entry.getKey(), entry.getValue()))));
+            }
+            try {
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new ModelException("Interrupted while fetching tables", e);
+            } catch (final ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new ModelException("Could not fetch tables", e.getCause());
+            }
         }
+        final Map<String, Long> sortedFetchTimes = new LinkedHashMap<>();
+        fetchTimes.entrySet().stream()
+                  .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                  .forEach(e -> sortedFetchTimes.put(e.getKey(), e.getValue()));
+        lastFetchTimesNanos = Collections.unmodifiableMap(sortedFetchTimes);
+        LOG.info("Fetched {} tables ({}) in {}ns, slowest first: {}", fetchTimes.size(),
+                 executor == null ? "sequentially" : "in parallel", (System.nanoTime() - updateData),
+                 lastFetchTimesNanos);
         compiler.updateData(irContext, backend);
         LOG.info("compiler.updateData() took {}ns to complete", (System.nanoTime() - updateData));
     }
+
+    /**
+     * Brings a single table up to date.
+     *
+     * @return the time taken, in nanoseconds
+     */
+    private long updateDataField(final Table<? extends Record> table, final IRTable irTable) {
+        final long start = System.nanoTime();
+        final Condition filter = fetchFilters.get(table);
+        if (filter == null && changeTracker != null && changeTracker.isTracked(table)) {
+            final int changedRows = changeTracker.refresh(table);
+            final long elapsed = System.nanoTime() - start;
+            if (changedRows >= 0) {
+                LOG.info("updateDataFields for table {} took {} ns to apply {} changed rows",
+                         table.getName(), elapsed, changedRows);
+            } else {
+                LOG.info("updateDataFields for table {} took {} ns to re-fetch {} rows",
+                         table.getName(), elapsed, irTable.getNumRows());
+            }
+            return elapsed;
+        }
+        final long bytes = irTable.fetchValues(dbCtx, filter);
+        final long elapsed = System.nanoTime() - start;
+        final int numRows = irTable.getNumRows();
+        LOG.info("updateDataFields for table {} took {} ns to fetch {} rows ({} bytes) from DB into IRTables " +
+                 "({} rows/sec)", table.getName(), elapsed, numRows, bytes,
+                 elapsed == 0 ? 0 : numRows * 1_000_000_000L / elapsed);
+        return elapsed;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,326 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.google.common.base.Preconditions;
+import org.h2.api.Trigger;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.name;
+
+
+/**
+ * Tracks row-level changes to the base tables of a Model using database triggers, so that
+ * Model.updateData() can apply deltas to the cached IRTable state instead of re-fetching every table.
+ *
+ * Only tables with a primary key are tracked. Views and tables without a primary key are always re-fetched in
+ * full, as is every table when the database is not H2, or when the H2 version in use does not let triggers tell
+ * which transaction fired them (see H2Transactions).
+ *
+ * Triggers fire while a statement runs, inside its transaction. Changes are therefore held back per transaction
+ * until it is over, and the triggers also fire when changes are rolled back, which logs their inverse. Changes are
+ * applied to the IRTable's rows in place, in time proportional to their number.
+ */
+class TableChangeTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(TableChangeTracker.class);
+    private static final String TRIGGER_PREFIX = "DCM_CHANGE_LOG_";
+    private static final AtomicInteger TRACKER_IDS = new AtomicInteger(0);
+
+    // Triggers are instantiated by the database, so they find their change log using the trigger name
+    private static final Map<String, ChangeLog> CHANGE_LOGS = new ConcurrentHashMap<>();
+
+    private final DSLContext dbCtx;
+    private final int trackerId = TRACKER_IDS.incrementAndGet();
+    private final Map<Table<? extends Record>, TrackedTable> trackedTables = new HashMap<>();
+
+    TableChangeTracker(final DSLContext dbCtx) {
+        this.dbCtx = dbCtx;
+    }
+
+    /**
+     * Installs a change log trigger on the given table, if possible.
+     *
+     * @return true if changes to the table will be tracked
+     */
+    boolean track(final Table<? extends Record> table, final IRTable irTable) {
+        if (trackedTables.containsKey(table)) {
+            return true;
+        }
+        if (dbCtx.dialect().family() != SQLDialect.H2 || !H2Transactions.isSupported()
+                || table.getPrimaryKey() == null || !isBaseTable(table)) {
+            return false;
+        }
+        final String triggerName = triggerName(table);
+        final ChangeLog changeLog = new ChangeLog();
+        CHANGE_LOGS.put(triggerName, changeLog);
+        dbCtx.execute(String.format("create trigger %s after insert, update, delete, rollback on %s " +
+                                    "for each row call \"%s\"",
+                                    triggerName, table.getQualifiedName(), ChangeLogTrigger.class.getName()));
+        trackedTables.put(table, new TrackedTable(table, irTable, changeLog));
+        LOG.info("Tracking changes to table {} using trigger {}", table.getName(), triggerName);
+        return true;
+    }
+
+    boolean isTracked(final Table<? extends Record> table) {
+        return trackedTables.containsKey(table);
+    }
+
+    /**
+     * Brings the IRTable associated with a tracked table up to date.
+     *
+     * @return the number of changed rows that were applied, or -1 if the table had to be re-fetched in full
+     */
+    int refresh(final Table<? extends Record> table) {
+        final TrackedTable trackedTable = trackedTables.get(table);
+        if (trackedTable == null) {
+            throw new IllegalArgumentException("Table " + table.getName() + " is not tracked");
+        }
+        return trackedTable.refresh();
+    }
+
+    /**
+     * Removes the triggers installed by this tracker.
+     */
+    void close() {
+        for (final Table<? extends Record> table : trackedTables.keySet()) {
+            final String triggerName = triggerName(table);
+            dbCtx.execute(String.format("drop trigger if exists %s", triggerName));
+            CHANGE_LOGS.remove(triggerName);
+        }
+        trackedTables.clear();
+    }
+
+    private String triggerName(final Table<? extends Record> table) {
+        return String.format("%s%d_%s", TRIGGER_PREFIX, trackerId, table.getName().toUpperCase(Locale.US));
+    }
+
+    private boolean isBaseTable(final Table<? extends Record> table) {
+        final String schemaName = table.getSchema() == null ? null : table.getSchema().getName();
+        final Record tableType = dbCtx.select(field(name("TABLE_TYPE")))
+                                      .from(name("INFORMATION_SCHEMA", "TABLES"))
+                                      .where(field(name("TABLE_NAME")).eq(table.getName()))
+                                      .and(schemaName == null ? field(name("TABLE_SCHEMA")).isNotNull()
+                                                              : field(name("TABLE_SCHEMA")).eq(schemaName))
+                                      .fetchOne();
+        return tableType != null && "TABLE".equals(tableType.get(0));
+    }
+
+    /**
+     * A tracked table, along with the position of each of its rows in the IRTable, by primary key.
+     */
+    private final class TrackedTable {
+        private final Table<? extends Record> table;
+        private final IRTable irTable;
+        private final ChangeLog changeLog;
+        private final int[] keyIndices;
+        @Nullable private Map<List<Object>, Integer> rowIndexByKey = null;
+
+        private TrackedTable(final Table<? extends Record> table, final IRTable irTable, final ChangeLog changeLog) {
+            this.table = table;
+            this.irTable = irTable;
+            this.changeLog = changeLog;
+            final List<? extends Field<?>> fields = Arrays.asList(table.fields());
+            this.keyIndices = table.getPrimaryKey().getFields().stream().mapToInt(fields::indexOf).toArray();
+        }
+
+        private int refresh() {
+            final List<Object[][]> changes = changeLog.drain();
+            if (rowIndexByKey == null || changes == null || changes.size() > rowIndexByKey.size()) {
+                // Changes that race with the fetch below are replayed on the next refresh,
+                // which is harmless because applying a change is idempotent.
+                irTable.fetchValues(dbCtx, null);
+                final Result<? extends Record> recentData = irTable.getCurrentData();
+                final Map<List<Object>, Integer> index = new HashMap<>(recentData.size());
+                for (int i = 0; i < recentData.size(); i++) {
+                    index.put(key(recentData.get(i).intoArray()), i);
+                }
+                rowIndexByKey = index;
+                return -1;
+            }
+            for (final Object[][] change : changes) {
+                final Object[] oldRow = change[0];
+                final Object[] newRow = change[1];
+                final List<Object> newKey = newRow == null ? null : key(newRow);
+                if (oldRow != null) {
+                    final List<Object> oldKey = key(oldRow);
+                    if (oldKey.equals(newKey) && rowIndexByKey.containsKey(newKey)) {
+                        irTable.setRow(rowIndexByKey.get(newKey), toRecord(newRow));
+                        continue;
+                    }
+                    remove(oldKey);
+                }
+                if (newRow != null) {
+                    final Integer existing = rowIndexByKey.get(newKey);
+                    if (existing != null) {
+                        irTable.setRow(existing, toRecord(newRow));
+                    } else {
+                        rowIndexByKey.put(newKey, irTable.getNumRows());
+                        irTable.addRow(toRecord(newRow));
+                    }
+                }
+            }
+            return changes.size();
+        }
+
+        private void remove(final List<Object> key) {
+            final Map<List<Object>, Integer> index = Preconditions.checkNotNull(rowIndexByKey);
+            final Integer row = index.remove(key);
+            if (row == null) {
+                return;
+            }
+            // The last row takes the removed row's place
+            final int last = irTable.getNumRows() - 1;
+            if (row != last) {
+                index.put(key(irTable.getCurrentData().get(last).intoArray()), row);
+            }
+            irTable.removeRow(row);
+        }
+
+        private List<Object> key(final Object[] row) {
+            final Field<?>[] fields = table.fields();
+            final List<Object> key = new ArrayList<>(keyIndices.length);
+            for (final int index : keyIndices) {
+                key.add(fields[index].getDataType().convert(row[index]));
+            }
+            return key;
+        }
+
+        private Record toRecord(final Object[] row) {
+            final Field<?>[] fields = table.fields();
+            final Record record = dbCtx.newRecord(fields);
+            for (int i = 0; i < fields.length; i++) {
+                setConverted(record, fields[i], row[i]);
+            }
+            record.changed(false);
+            return record;
+        }
+    }
+
+    private static <T> void setConverted(final Record record, final Field<T> field, @Nullable final Object value) {
+        record.set(field, field.getDataType().convert(value));
+    }
+
+    /**
+     * Changes logged by a trigger since the last refresh, as {oldRow, newRow} pairs. Changes are only handed
+     * out once the transaction that made them is over: either it committed, or it rolled back and the inverse
+     * changes were logged after them.
+     */
+    private static final class ChangeLog {
+        // beyond this many pending changes we stop logging and fall back to a full re-fetch
+        private static final int MAX_PENDING_CHANGES = 1 << 20;
+        private final Map<Object, List<Object[][]>> changesByTransaction = new IdentityHashMap<>();
+        private List<Object[][]> committedChanges = new ArrayList<>();
+        private int numPendingChanges = 0;
+        // Transactions whose changes were dropped. Until all of them are over, every refresh is a full re-fetch,
+        // since a re-fetch does not see changes that are committed after it.
+        private final Set<Object> overflowedTransactions = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean overflowed = false;
+
+        /**
+         * @param transaction the transaction that made the change (see H2Transactions.transactionOf()), or null
+         *                    if it cannot be known, in which case the change is handed out right away
+         */
+        private synchronized void add(@Nullable final Object transaction, @Nullable final Object[] oldRow,
+                                      @Nullable final Object[] newRow) {
+            if (!overflowed && numPendingChanges >= MAX_PENDING_CHANGES) {
+                overflowed = true;
+                overflowedTransactions.addAll(changesByTransaction.keySet());
+                changesByTransaction.clear();
+                committedChanges = new ArrayList<>();
+                numPendingChanges = 0;
+            }
+            if (overflowed) {
+                if (transaction != null) {
+                    overflowedTransactions.add(transaction);
+                }
+                return;
+            }
+            final List<Object[][]> changes = transaction == null
+                    ? committedChanges : changesByTransaction.computeIfAbsent(transaction, t -> new ArrayList<>());
+            changes.add(new Object[][]{oldRow, newRow});
+            numPendingChanges++;
+        }
+
+        /**
+         * @return the changes of all transactions that are over, or null if changes were dropped and the table
+         *         has to be re-fetched
+         */
+        @Nullable
+        private synchronized List<Object[][]> drain() {
+            if (overflowed) {
+                overflowedTransactions.removeIf(H2Transactions::isOver);
+                overflowed = !overflowedTransactions.isEmpty();
+                return null;
+            }
+            final Iterator<Map.Entry<Object, List<Object[][]>>> it = changesByTransaction.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<Object, List<Object[][]>> entry = it.next();
+                if (H2Transactions.isOver(entry.getKey())) {
+                    committedChanges.addAll(entry.getValue());
+                    it.remove();
+                }
+            }
+            final List<Object[][]> drained = committedChanges;
+            numPendingChanges -= drained.size();
+            committedChanges = new ArrayList<>();
+            return drained;
+        }
+    }
+
+    /**
+     * H2 trigger that appends every row change on a tracked table, and every rolled back one, to the table's
+     * change log.
+     */
+    public static class ChangeLogTrigger implements Trigger {
+        @Nullable private ChangeLog changeLog = null;
+
+        @Override
+        public void init(final Connection connection, final String schemaName, final String triggerName,
+                         final String tableName, final boolean before, final int type) {
+            changeLog = CHANGE_LOGS.get(triggerName.toUpperCase(Locale.US));
+        }
+
+        @Override
+        public void fire(final Connection connection, @Nullable final Object[] oldRow,
+                         @Nullable final Object[] newRow) {
+            if (changeLog != null) {
+                changeLog.add(H2Transactions.transactionOf(connection), oldRow, newRow);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+}
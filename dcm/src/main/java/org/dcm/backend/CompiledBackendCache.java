@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * A content-addressed, on-disk cache of compiled generated backends. Each entry is a directory named after
+ * the hash of everything that determines the generated code, and holds the compiled class files along with the
+ * generated source. Entries are written to a temporary directory first and then renamed into place, so that
+ * concurrent schedulers sharing a cache directory never observe a partially written entry.
+ *
+ * When there are more than maxEntries entries, the least recently used ones are evicted.
+ */
+class CompiledBackendCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledBackendCache.class);
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final String SOURCE_FILE_NAME = "GeneratedBackend.java";
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String GENERATOR_PACKAGE_PATH =
+            CompiledBackendCache.class.getPackageName().replace('.', '/') + "/";
+    private static final Supplier<Optional<String>> GENERATOR_FINGERPRINT =
+            Suppliers.memoize(CompiledBackendCache::computeGeneratorFingerprint);
+    private final Path directory;
+    private final int maxEntries;
+
+    CompiledBackendCache(final Path directory, final int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the directory holding the cached entry for `key`, if one exists
+     */
+    Optional<Path> lookup(final String key) {
+        final Path entry = directory.resolve(key);
+        if (!Files.isRegularFile(entry.resolve(SOURCE_FILE_NAME))) {
+            return Optional.empty();
+        }
+        try {
+            // Tracks recency for eviction
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException e) {
+            LOG.warn("Could not update the access time of cache entry {}", entry, e);
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * Stores a compiled backend under `key`. Failures are logged and otherwise ignored, since the
+     * backend can always be compiled again.
+     *
+     * @param source the generated source
+     * @param classFiles the compiled class files, keyed by binary class name
+     */
+    void store(final String key, final String source, final Map<String, byte[]> classFiles) {
+        final Path temporaryEntry;
+        try {
+            Files.createDirectories(directory);
+            temporaryEntry = Files.createDirectory(directory.resolve(TEMP_PREFIX + UUID.randomUUID()));
+        } catch (final IOException e) {
+            LOG.warn("Could not create a cache entry in {}", directory, e);
+            return;
+        }
+        try {
+            for (final Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                Files.write(temporaryEntry.resolve(classFile.getKey() + CLASS_FILE_SUFFIX), classFile.getValue());
+            }
+            // Written last, since its presence marks the entry as complete
+            Files.writeString(temporaryEntry.resolve(SOURCE_FILE_NAME), source);
+        } catch (final IOException e) {
+            LOG.warn("Could not write cache entry {}", temporaryEntry, e);
+            delete(temporaryEntry);
+            return;
+        }
+        commit(key, temporaryEntry);
+    }
+
+    /**
+     * @return the generated source held by a cache entry
+     */
+    static String readSource(final Path entry) {
+        try {
+            return Files.readString(entry.resolve(SOURCE_FILE_NAME));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the class files held by a cache entry, keyed by binary class name
+     */
+    static Map<String, byte[]> readClassFiles(final Path entry) {
+        final Map<String, byte[]> classFiles = new HashMap<>();
+        try (final Stream<Path> files = Files.list(entry)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final String fileName = file.getFileName().toString();
+                if (fileName.endsWith(CLASS_FILE_SUFFIX)) {
+                    classFiles.put(fileName.substring(0, fileName.length() - CLASS_FILE_SUFFIX.length()),
+                                   Files.readAllBytes(file));
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classFiles;
+    }
+
+    /**
+     * Identifies the code generator. Generated code depends on every class in this package (the solver, the IR,
+     * the IR visitors and the runtime helpers the generated code calls), so all of their class files are hashed,
+     * whether they are loaded from a directory or from a jar.
+     *
+     * @return the fingerprint, or empty if the class files cannot be found or read
+     */
+    static Optional<String> generatorFingerprint() {
+        return GENERATOR_FINGERPRINT.get();
+    }
+
+    private static Optional<String> computeGeneratorFingerprint() {
+        final CodeSource codeSource = CompiledBackendCache.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            LOG.warn("Could not locate the code generator's class files");
+            return Optional.empty();
+        }
+        final Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            final Path location = Path.of(codeSource.getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                final List<Path> classFiles;
+                try (final Stream<Path> files = Files.walk(location.resolve(GENERATOR_PACKAGE_PATH))) {
+                    classFiles = files.filter(p -> p.toString().endsWith(CLASS_FILE_SUFFIX))
+                                      .sorted()
+                                      .collect(Collectors.toList());
+                }
+                for (final Path classFile : classFiles) {
+                    hasher.putString(location.relativize(classFile).toString(), StandardCharsets.UTF_8);
+                    hasher.putBytes(Files.readAllBytes(classFile));
+                }
+            } else {
+                try (final JarFile jar = new JarFile(location.toFile())) {
+                    final List<JarEntry> classFiles = jar.stream()
+                            .filter(e -> e.getName().startsWith(GENERATOR_PACKAGE_PATH)
+                                         && e.getName().endsWith(CLASS_FILE_SUFFIX))
+                            .sorted(Comparator.comparing(JarEntry::getName))
+                            .collect(Collectors.toList());
+                    for (final JarEntry classFile : classFiles) {
+                        hasher.putString(classFile.getName(), StandardCharsets.UTF_8);
+                        try (final InputStream in = jar.getInputStream(classFile)) {
+                            hasher.putBytes(in.readAllBytes());
+                        }
+                    }
+                }
+            }
+        } catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+            LOG.warn("Could not read the code generator's class files from {}", codeSource.getLocation(), e);
+            return Optional.empty();
+        }
+        return Optional.of(hasher.hash().toString());
+    }
+
+    /**
+     * Moves a fully written temporary entry into place under `key`, and evicts old entries.
+     */
+    private void commit(final String key, final Path temporaryEntry) {
+        final Path entry = directory.resolve(key);
+        try {
+            Files.move(temporaryEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            // Either someone else committed the same entry first, or we cannot rename atomically.
+            // In both cases, keep whatever is already there.
+            delete(temporaryEntry);
+            if (!Files.isDirectory(entry)) {
+                LOG.warn("Could not commit cache entry {}", entry, e);
+            }
+            return;
+        }
+        evict();
+    }
+
+    private void evict() {
+        final List<Path> entries;
+        try (final Stream<Path> files = Files.list(directory)) {
+            entries = files.filter(Files::isDirectory)
+                           .filter(p -> !p.getFileName().toString().startsWith(TEMP_PREFIX))
+                           .sorted(Comparator.comparing(CompiledBackendCache::lastModified).reversed())
+                           .collect(Collectors.toList());
+        } catch (final IOException e) {
+            LOG.warn("Could not list cache directory {}", directory, e);
+            return;
+        }
+        for (int i = maxEntries; i < entries.size(); i++) {
+            LOG.info("Evicting compiled backend cache entry {}", entries.get(i));
+            delete(entries.get(i));
+        }
+    }
+
+    private static FileTime lastModified(final Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (final IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void delete(final Path path) {
+        try (final Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (final IOException e) {
+                    LOG.warn("Could not delete {}", p, e);
+                }
+            });
+        } catch (final IOException e) {
+            LOG.warn("Could not delete {}", path, e);
+        }
+    }
+}
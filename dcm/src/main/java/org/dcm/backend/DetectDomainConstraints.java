@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import org.dcm.IRColumn;
+import org.dcm.IRTable;
+import org.dcm.compiler.monoid.BinaryOperatorPredicate;
+import org.dcm.compiler.monoid.ColumnIdentifier;
+import org.dcm.compiler.monoid.Expr;
+import org.dcm.compiler.monoid.GroupByComprehension;
+import org.dcm.compiler.monoid.MonoidComprehension;
+import org.dcm.compiler.monoid.MonoidLiteral;
+import org.dcm.compiler.monoid.Qualifier;
+import org.dcm.compiler.monoid.TableRowGenerator;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Detects constraint views that only restrict controllable columns of a single table to values that are known
+ * before solving, like:
+ *
+ *   select * from T where T.controllable__c in (select name from U) and T.controllable__d = 'x'
+ *
+ * Such a view can be enforced entirely through the domains of the corresponding variables.
+ */
+class DetectDomainConstraints {
+
+    /**
+     * Restricts a controllable column either to the values of an input column, or to a single literal.
+     */
+    static final class Restriction {
+        private final IRColumn column;
+        @Nullable private final IRColumn valuesColumn;
+        @Nullable private final Object literal;
+
+        private Restriction(final IRColumn column, @Nullable final IRColumn valuesColumn,
+                            @Nullable final Object literal) {
+            this.column = column;
+            this.valuesColumn = valuesColumn;
+            this.literal = literal;
+        }
+
+        IRColumn getColumn() {
+            return column;
+        }
+
+        Optional<IRColumn> getValuesColumn() {
+            return Optional.ofNullable(valuesColumn);
+        }
+
+        Optional<Object> getLiteral() {
+            return Optional.ofNullable(literal);
+        }
+    }
+
+    /**
+     * @return the restrictions that are equivalent to the given constraint view, if there are any
+     */
+    static Optional<List<Restriction>> apply(final MonoidComprehension comprehension) {
+        if (comprehension instanceof GroupByComprehension || comprehension.getHead() == null
+            || !comprehension.getHead().getSelectExprs().stream().allMatch(e -> e instanceof ColumnIdentifier)) {
+            return Optional.empty();
+        }
+        @Nullable IRTable table = null;
+        final List<Qualifier> predicates = new ArrayList<>();
+        for (final Qualifier qualifier : comprehension.getQualifiers()) {
+            if (qualifier instanceof TableRowGenerator) {
+                if (table != null) {
+                    return Optional.empty();
+                }
+                table = ((TableRowGenerator) qualifier).getTable();
+            } else {
+                predicates.add(qualifier);
+            }
+        }
+        if (table == null || table.isViewTable() || table.isAliasedTable() || predicates.isEmpty()) {
+            return Optional.empty();
+        }
+        final List<Restriction> restrictions = new ArrayList<>();
+        for (final Qualifier predicate : predicates) {
+            if (!addRestrictions(predicate, table, restrictions)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(restrictions);
+    }
+
+    private static boolean addRestrictions(final Expr expr, final IRTable table, final List<Restriction> acc) {
+        if (!(expr instanceof BinaryOperatorPredicate)) {
+            return false;
+        }
+        final BinaryOperatorPredicate predicate = (BinaryOperatorPredicate) expr;
+        switch (predicate.getOperator()) {
+            case AND:
+                return addRestrictions(predicate.getLeft(), table, acc)
+                        && addRestrictions(predicate.getRight(), table, acc);
+            case IN: {
+                final Optional<IRColumn> column = controllableColumn(predicate.getLeft(), table);
+                final Optional<IRColumn> values = inputColumn(predicate.getRight());
+                if (column.isEmpty() || values.isEmpty() || column.get().getType() != values.get().getType()) {
+                    return false;
+                }
+                acc.add(new Restriction(column.get(), values.get(), null));
+                return true;
+            }
+            case EQUAL: {
+                final boolean columnOnLeft = predicate.getLeft() instanceof ColumnIdentifier;
+                final Optional<IRColumn> column = controllableColumn(columnOnLeft ? predicate.getLeft()
+                                                                                 : predicate.getRight(), table);
+                final Expr other = columnOnLeft ? predicate.getRight() : predicate.getLeft();
+                if (column.isEmpty() || !(other instanceof MonoidLiteral)) {
+                    return false;
+                }
+                final Object value = ((MonoidLiteral) other).getValue();
+                final boolean typesMatch = column.get().getType() == IRColumn.FieldType.STRING
+                                            ? value instanceof String : value instanceof Number;
+                if (!typesMatch) {
+                    return false;
+                }
+                acc.add(new Restriction(column.get(), null, value));
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A controllable column of the table, of a type that the solver encodes as-is.
+     */
+    private static Optional<IRColumn> controllableColumn(final Expr expr, final IRTable table) {
+        if (!(expr instanceof ColumnIdentifier)) {
+            return Optional.empty();
+        }
+        final IRColumn column = ((ColumnIdentifier) expr).getField();
+        return column.isControllable() && hasDomainType(column) && column.getIRTable().equals(table)
+                ? Optional.of(column) : Optional.empty();
+    }
+
+    /**
+     * The selected column of an uncorrelated sub-query of the form "select c from U", where U is an input table.
+     */
+    private static Optional<IRColumn> inputColumn(final Expr expr) {
+        if (!(expr instanceof MonoidComprehension) || expr instanceof GroupByComprehension) {
+            return Optional.empty();
+        }
+        final MonoidComprehension subquery = (MonoidComprehension) expr;
+        if (subquery.getHead() == null || subquery.getHead().getSelectExprs().size() != 1
+            || subquery.getQualifiers().size() != 1
+            || !(subquery.getQualifiers().get(0) instanceof TableRowGenerator)
+            || !(subquery.getHead().getSelectExprs().get(0) instanceof ColumnIdentifier)) {
+            return Optional.empty();
+        }
+        final IRTable table = ((TableRowGenerator) subquery.getQualifiers().get(0)).getTable();
+        final IRColumn column = ((ColumnIdentifier) subquery.getHead().getSelectExprs().get(0)).getField();
+        return !table.isViewTable() && !table.isAliasedTable() && !column.isControllable()
+                && hasDomainType(column) && column.getIRTable().equals(table)
+                ? Optional.of(column) : Optional.empty();
+    }
+
+    static boolean hasDomainType(final IRColumn column) {
+        return column.getType() == IRColumn.FieldType.INT || column.getType() == IRColumn.FieldType.STRING;
+    }
+}
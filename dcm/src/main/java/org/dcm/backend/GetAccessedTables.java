@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import org.dcm.IRTable;
+import org.dcm.compiler.monoid.ColumnIdentifier;
+import org.dcm.compiler.monoid.Expr;
+import org.dcm.compiler.monoid.Head;
+import org.dcm.compiler.monoid.MonoidVisitor;
+import org.dcm.compiler.monoid.TableRowGenerator;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashSet;
+
+
+/**
+ * A visitor that returns the set of tables accessed by a comprehension, including within sub-queries, and
+ * whether any controllable column is accessed along the way.
+ */
+class GetAccessedTables extends MonoidVisitor<Void, Void> {
+    private final LinkedHashSet<IRTable> tables = new LinkedHashSet<>();
+    private boolean usesControllable = false;
+
+    @Nullable
+    @Override
+    protected Void visitHead(final Head node, @Nullable final Void context) {
+        for (final Expr expr: node.getSelectExprs()) {
+            visit(expr, context);
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    protected Void visitTableRowGenerator(final TableRowGenerator node, @Nullable final Void context) {
+        tables.add(node.getTable());
+        return super.visitTableRowGenerator(node, context);
+    }
+
+    @Nullable
+    @Override
+    protected Void visitColumnIdentifier(final ColumnIdentifier node, @Nullable final Void context) {
+        if (node.getField().isControllable()) {
+            usesControllable = true;
+        }
+        return super.visitColumnIdentifier(node, context);
+    }
+
+    LinkedHashSet<IRTable> getTables() {
+        return tables;
+    }
+
+    boolean usesControllableFields() {
+        return usesControllable;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Compiles generated sources and loads the resulting classes without going through the filesystem.
+ * Class files are kept as byte arrays, so that concurrent compilations never collide with each other.
+ */
+class InMemoryCompiler {
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryCompiler.class);
+
+    private InMemoryCompiler() {
+    }
+
+    /**
+     * Compiles a single compilation unit.
+     *
+     * @return the class files produced by the compiler, keyed by binary class name
+     */
+    static Map<String, byte[]> compile(final JavaFileObject compilationUnit) {
+        // This step requires an SDK, and a JRE will not suffice
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final Map<String, ByteArrayOutputStream> classFiles = new LinkedHashMap<>();
+        try (final StandardJavaFileManager standardFileManager =
+                     compiler.getStandardFileManager(diagnostics, null, null);
+             final JavaFileManager fileManager = new ClassFileCollector(standardFileManager, classFiles)) {
+            final Boolean call = compiler.getTask(null, fileManager, diagnostics, null, null,
+                                                  Collections.singleton(compilationUnit)).call();
+            if (!call) {
+                LOG.error("Compilation failed");
+                for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    LOG.error("{}", diagnostic);
+                }
+                throw new RuntimeException("Compilation of generated code failed");
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final Map<String, byte[]> ret = new LinkedHashMap<>(classFiles.size());
+        classFiles.forEach((name, bytes) -> ret.put(name, bytes.toByteArray()));
+        return ret;
+    }
+
+    /**
+     * @return a class loader that defines classes from the given class files
+     */
+    static ClassLoader newClassLoader(final Map<String, byte[]> classFiles) {
+        return new ByteArrayClassLoader(classFiles, InMemoryCompiler.class.getClassLoader());
+    }
+
+    /**
+     * Redirects class file outputs to in-memory buffers.
+     */
+    private static final class ClassFileCollector extends ForwardingJavaFileManager<JavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> classFiles;
+
+        private ClassFileCollector(final JavaFileManager fileManager,
+                                   final Map<String, ByteArrayOutputStream> classFiles) {
+            super(fileManager);
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                                   final JavaFileObject.Kind kind,
+                                                   @Nullable final FileObject sibling) throws IOException {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            classFiles.put(className, buffer);
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension),
+                                            kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return buffer;
+                }
+            };
+        }
+    }
+
+    private static final class ByteArrayClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classFiles;
+
+        private ByteArrayClassLoader(final Map<String, byte[]> classFiles, final ClassLoader parent) {
+            super(parent);
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        protected Class<?> findClass(final String name) throws ClassNotFoundException {
+            final byte[] bytes = classFiles.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
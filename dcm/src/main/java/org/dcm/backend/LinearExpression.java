@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import com.google.ortools.sat.IntVar;
+import com.google.ortools.sat.LinearExpr;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable linear expression over IntVars, plus a constant. Generated code builds sums, differences and
+ * scalings of variables with it, and only turns them into an IntVar (see Ops.toIntVar()) when the expression is
+ * consumed by something other than another linear expression, a comparison or the objective. This avoids
+ * creating an auxiliary variable and an equality constraint for every intermediate arithmetic result.
+ */
+public final class LinearExpression {
+    private final IntVar[] variables;
+    private final int[] coefficients;
+    private final long constant;
+
+    private LinearExpression(final IntVar[] variables, final int[] coefficients, final long constant) {
+        this.variables = variables;
+        this.coefficients = coefficients;
+        this.constant = constant;
+    }
+
+    static LinearExpression of(final IntVar variable) {
+        return new LinearExpression(new IntVar[]{variable}, new int[]{1}, 0);
+    }
+
+    static LinearExpression of(final long constant) {
+        return new LinearExpression(new IntVar[0], new int[0], constant);
+    }
+
+    static LinearExpression sum(final IntVar[] variables) {
+        final int[] coefficients = new int[variables.length];
+        Arrays.fill(coefficients, 1);
+        return new LinearExpression(variables, coefficients, 0);
+    }
+
+    /**
+     * Adds up any number of expressions, sizing the result once rather than copying it for every term.
+     */
+    static LinearExpression sum(final List<LinearExpression> terms) {
+        int size = 0;
+        long constant = 0;
+        for (final LinearExpression term : terms) {
+            size += term.variables.length;
+            constant += term.constant;
+        }
+        final IntVar[] variables = new IntVar[size];
+        final int[] coefficients = new int[size];
+        int offset = 0;
+        for (final LinearExpression term : terms) {
+            System.arraycopy(term.variables, 0, variables, offset, term.variables.length);
+            System.arraycopy(term.coefficients, 0, coefficients, offset, term.coefficients.length);
+            offset += term.variables.length;
+        }
+        return new LinearExpression(variables, coefficients, constant);
+    }
+
+    static LinearExpression scalProd(final IntVar[] variables, final int[] coefficients) {
+        return new LinearExpression(variables, coefficients, 0);
+    }
+
+    public LinearExpression plus(final LinearExpression other) {
+        final int size = variables.length;
+        final IntVar[] newVariables = Arrays.copyOf(variables, size + other.variables.length);
+        final int[] newCoefficients = Arrays.copyOf(coefficients, size + other.coefficients.length);
+        System.arraycopy(other.variables, 0, newVariables, size, other.variables.length);
+        System.arraycopy(other.coefficients, 0, newCoefficients, size, other.coefficients.length);
+        return new LinearExpression(newVariables, newCoefficients, constant + other.constant);
+    }
+
+    public LinearExpression minus(final LinearExpression other) {
+        return plus(other.times(-1));
+    }
+
+    public LinearExpression times(final long factor) {
+        final int[] newCoefficients = new int[coefficients.length];
+        for (int i = 0; i < coefficients.length; i++) {
+            newCoefficients[i] = Math.toIntExact(coefficients[i] * factor);
+        }
+        return new LinearExpression(variables, newCoefficients, constant * factor);
+    }
+
+    IntVar[] getVariables() {
+        return variables;
+    }
+
+    int[] getCoefficients() {
+        return coefficients;
+    }
+
+    long getConstant() {
+        return constant;
+    }
+
+    /**
+     * @return the variable part of this expression, without the constant
+     */
+    LinearExpr toLinearExpr() {
+        return LinearExpr.scalProd(variables, coefficients);
+    }
+}
@@ -8,37 +8,45 @@ package org.dcm.backend;
 
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 import com.google.ortools.sat.CpModel;
 import com.google.ortools.sat.IntVar;
 import com.google.ortools.sat.IntervalVar;
 import com.google.ortools.sat.LinearExpr;
 import com.google.ortools.sat.Literal;
 import com.google.ortools.util.Domain;
-import org.apache.commons.lang3.ArrayUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class Ops {
+    private static final int MIN_CANDIDATE_NODES = 64;
     private final CpModel model;
     private final StringEncoding encoder;
     private final IntVar trueVar;
     private final IntVar falseVar;
     private final boolean configUseFullReifiedConstraintsForJoinPreferences;
+    private final boolean configUseBinPackingForCapacityConstraints;
 
 
     public Ops(final CpModel model, final StringEncoding encoding,
                final boolean configUseFullReifiedConstraintsForJoinPreferences) {
+        this(model, encoding, configUseFullReifiedConstraintsForJoinPreferences, false);
+    }
+
+    public Ops(final CpModel model, final StringEncoding encoding,
+               final boolean configUseFullReifiedConstraintsForJoinPreferences,
+               final boolean configUseBinPackingForCapacityConstraints) {
         this.model = model;
         this.encoder = encoding;
         this.trueVar = model.newConstant(1);
         this.falseVar = model.newConstant(0);
         this.configUseFullReifiedConstraintsForJoinPreferences = configUseFullReifiedConstraintsForJoinPreferences;
+        this.configUseBinPackingForCapacityConstraints = configUseBinPackingForCapacityConstraints;
     }
 
     public int sum(final List<Integer> data) {
@@ -49,17 +57,40 @@ public class Ops {
         return ret;
     }
 
+    public int sum(final int[] data) {
+        int ret = 0;
+        for (final int d: data) {
+            ret += d;
+        }
+        return ret;
+    }
+
+    public long sum(final long[] data) {
+        long ret = 0;
+        for (final long d: data) {
+            ret += d;
+        }
+        return ret;
+    }
+
     public IntVar sumV(final List<IntVar> data) {
+        return sumV(data.toArray(new IntVar[0]));
+    }
+
+    public IntVar sumV(final IntVar[] data) {
         final IntVar ret = model.newIntVar(Integer.MIN_VALUE, Integer.MAX_VALUE, "");
-        model.addEquality(ret, LinearExpr.sum(data.toArray(new IntVar[0])));
+        model.addEquality(ret, LinearExpr.sum(data));
         return ret;
     }
 
     // TODO: add test case to OpsTests
     public IntVar scalProd(final List<IntVar> variables, final List<Integer> coefficients) {
+        return scalProd(variables.toArray(new IntVar[0]), coefficients.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public IntVar scalProd(final IntVar[] variables, final int[] coefficients) {
         final IntVar ret = model.newIntVar(Integer.MIN_VALUE, Integer.MAX_VALUE, "");
-        model.addEquality(ret, LinearExpr.scalProd(variables.toArray(new IntVar[0]),
-                                                   coefficients.stream().mapToInt(Integer::intValue).toArray()));
+        model.addEquality(ret, LinearExpr.scalProd(variables, coefficients));
         return ret;
     }
 
@@ -85,13 +116,25 @@ public class Ops {
         return Collections.max(data);
     }
 
+    public int maxVInteger(final int[] data) {
+        return Ints.max(data);
+    }
+
     public long maxVLong(final List<Long> data) {
         return Collections.max(data);
     }
 
+    public long maxVLong(final long[] data) {
+        return Longs.max(data);
+    }
+
     public IntVar maxVIntVar(final List<IntVar> data) {
+        return maxVIntVar(data.toArray(new IntVar[0]));
+    }
+
+    public IntVar maxVIntVar(final IntVar[] data) {
         final IntVar ret = model.newIntVar(Integer.MIN_VALUE, Integer.MAX_VALUE, "");
-        model.addMaxEquality(ret, data.toArray(new IntVar[0]));
+        model.addMaxEquality(ret, data);
         return ret;
     }
 
@@ -99,13 +142,25 @@ public class Ops {
         return Collections.min(data);
     }
 
+    public int minVInteger(final int[] data) {
+        return Ints.min(data);
+    }
+
     public long minVLong(final List<Long> data) {
         return Collections.min(data);
     }
 
+    public long minVLong(final long[] data) {
+        return Longs.min(data);
+    }
+
     public IntVar minVIntVar(final List<IntVar> data) {
+        return minVIntVar(data.toArray(new IntVar[0]));
+    }
+
+    public IntVar minVIntVar(final IntVar[] data) {
         final IntVar ret = model.newIntVar(Integer.MIN_VALUE, Integer.MAX_VALUE, "");
-        model.addMinEquality(ret, data.toArray(new IntVar[0]));
+        model.addMinEquality(ret, data);
         return ret;
     }
 
@@ -171,6 +226,50 @@ public class Ops {
         return ret;
     }
 
+    public LinearExpression linear(final IntVar var) {
+        return LinearExpression.of(var);
+    }
+
+    public LinearExpression linear(final long constant) {
+        return LinearExpression.of(constant);
+    }
+
+    public LinearExpression linearSum(final IntVar[] data) {
+        return LinearExpression.sum(data);
+    }
+
+    public LinearExpression linearSum(final LinearExpression... terms) {
+        return LinearExpression.sum(Arrays.asList(terms));
+    }
+
+    public LinearExpression linearScalProd(final IntVar[] variables, final int[] coefficients) {
+        return LinearExpression.scalProd(variables, coefficients);
+    }
+
+    /**
+     * Materializes a linear expression as a variable. A single variable is returned as is.
+     */
+    public IntVar toIntVar(final LinearExpression expr) {
+        final IntVar[] variables = expr.getVariables();
+        final int[] coefficients = expr.getCoefficients();
+        if (variables.length == 1 && coefficients[0] == 1 && expr.getConstant() == 0) {
+            return variables[0];
+        }
+        // ret = sum(coefficients * variables) + constant, i.e., sum(coefficients * variables) - ret = -constant
+        final IntVar ret = model.newIntVar(Integer.MIN_VALUE, Integer.MAX_VALUE, "");
+        final IntVar[] allVariables = Arrays.copyOf(variables, variables.length + 1);
+        final int[] allCoefficients = Arrays.copyOf(coefficients, coefficients.length + 1);
+        allVariables[variables.length] = ret;
+        allCoefficients[coefficients.length] = -1;
+        model.addLinearExpressionInDomain(LinearExpr.scalProd(allVariables, allCoefficients),
+                                          Domain.fromValues(new long[]{-expr.getConstant()}));
+        return ret;
+    }
+
+    public void maximize(final List<LinearExpression> objectives) {
+        model.maximize(LinearExpression.sum(objectives).toLinearExpr());
+    }
+
     public boolean eq(final boolean left, final boolean right) {
         return right == left;
     }
@@ -328,6 +427,48 @@ public class Ops {
         return bool;
     }
 
+    public IntVar eq(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), 0, 0, false);
+    }
+
+    public IntVar ne(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), 0, 0, true);
+    }
+
+    public IntVar lt(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), Long.MIN_VALUE, -1, false);
+    }
+
+    public IntVar leq(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), Long.MIN_VALUE, 0, false);
+    }
+
+    public IntVar gt(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), 1, Long.MAX_VALUE, false);
+    }
+
+    public IntVar geq(final LinearExpression left, final LinearExpression right) {
+        return reifyInRange(left.minus(right), 0, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Returns a boolean variable that is true iff expr lies within [lower, upper] (or outside it, if negated).
+     * Long.MIN_VALUE and Long.MAX_VALUE stand for unbounded ends of the range.
+     */
+    private IntVar reifyInRange(final LinearExpression expr, final long lower, final long upper,
+                                final boolean negated) {
+        // Move the constant over to the range
+        final long constant = expr.getConstant();
+        final long shiftedLower = lower == Long.MIN_VALUE ? lower : lower - constant;
+        final long shiftedUpper = upper == Long.MAX_VALUE ? upper : upper - constant;
+        final Domain domain = Domain.fromFlatIntervals(new long[]{shiftedLower, shiftedUpper});
+        final IntVar bool = model.newBoolVar("");
+        final Literal inRange = negated ? bool.not() : bool;
+        model.addLinearExpressionInDomain(expr.toLinearExpr(), domain).onlyEnforceIf(inRange);
+        model.addLinearExpressionInDomain(expr.toLinearExpr(), domain.complement()).onlyEnforceIf(inRange.not());
+        return bool;
+    }
+
     public boolean in(final String left, final List<String> right) {
         return right.contains(left);
     }
@@ -341,27 +482,23 @@ public class Ops {
     }
 
     public IntVar inString(final IntVar left, final List<String> right) {
-        final IntVar bool = model.newBoolVar("");
-        final Domain domain = Domain.fromValues(right.stream().mapToLong(encoder::toLong).toArray());
-        model.addLinearExpressionInDomain(left, domain).onlyEnforceIf(bool);
-        model.addLinearExpressionInDomain(left, domain.complement()).onlyEnforceIf(bool.not());
-        return bool;
+        return inLong(left, right.stream().mapToLong(encoder::toLong).toArray());
     }
 
     public IntVar inLong(final IntVar left, final List<Long> right) {
+        return inLong(left, right.stream().mapToLong(encoder::toLong).toArray());
+    }
+
+    public IntVar inLong(final IntVar left, final long[] right) {
         final IntVar bool = model.newBoolVar("");
-        final Domain domain = Domain.fromValues(right.stream().mapToLong(encoder::toLong).toArray());
+        final Domain domain = Domain.fromValues(right);
         model.addLinearExpressionInDomain(left, domain).onlyEnforceIf(bool);
         model.addLinearExpressionInDomain(left, domain.complement()).onlyEnforceIf(bool.not());
         return bool;
     }
 
     public IntVar inInteger(final IntVar left, final List<Integer> right) {
-        final IntVar bool = model.newBoolVar("");
-        final Domain domain = Domain.fromValues(right.stream().mapToLong(encoder::toLong).toArray());
-        model.addLinearExpressionInDomain(left, domain).onlyEnforceIf(bool);
-        model.addLinearExpressionInDomain(left, domain.complement()).onlyEnforceIf(bool.not());
-        return bool;
+        return inLong(left, right.stream().mapToLong(encoder::toLong).toArray());
     }
 
     public IntVar inIntVar(final IntVar left, final List<IntVar> right) {
@@ -464,12 +601,33 @@ public class Ops {
 
     public void capacityConstraint(final List<IntVar> varsToAssign, final long[] domainArr,
                                    final List<List<Integer>> demands, final List<List<Integer>> capacities) {
+        capacityConstraint(varsToAssign.toArray(IntVar[]::new), domainArr, toIntArrays(demands),
+                           toIntArrays(capacities));
+    }
+
+    public void capacityConstraint(final IntVar[] varsToAssign, final long[] domainArr,
+                                   final int[][] demands, final int[][] capacities) {
         final int scale = 1000;
-        Preconditions.checkArgument(demands.size() == capacities.size());
+        Preconditions.checkArgument(demands.length == capacities.length);
+        for (final int[] vec : capacities) {
+            Preconditions.checkArgument(domainArr.length == vec.length);
+        }
+        for (final int[] vec : demands) {
+            Preconditions.checkArgument(varsToAssign.length == vec.length);
+        }
+        if (domainArr.length == 0) {
+            throw new RuntimeException("Empty domain for capacity constraint " + Arrays.deepToString(demands) + " "
+                                        + Arrays.deepToString(capacities));
+        }
+        if (configUseBinPackingForCapacityConstraints) {
+            binPackingCapacityConstraint(varsToAssign, domainArr, demands, capacities);
+            return;
+        }
 
-        final IntVar[] taskToNodeAssignment = varsToAssign.toArray(IntVar[]::new);
+        final IntVar[] taskToNodeAssignment = varsToAssign;
         final int numTasks = taskToNodeAssignment.length;
-        final IntervalVar[] tasksIntervals = new IntervalVar[numTasks + capacities.get(0).size()];
+        final int numNodes = domainArr.length;
+        final IntervalVar[] tasksIntervals = new IntervalVar[numTasks + numNodes];
 
         final Domain domainT = Domain.fromValues(domainArr);
         final Domain intervalRange = Domain.fromFlatIntervals(new long[] {domainT.min() + 1, domainT.max() + 1});
@@ -488,66 +646,53 @@ public class Ops {
             tasksIntervals[i] = model.newFixedInterval(domainArr[nodeIndex], 1, "");
         }
 
-        // Convert to list of arrays
-        final List<int[]> nodeCapacities =
-                capacities.stream().map(vec -> vec.stream().mapToInt(Integer::intValue).toArray())
-                        .collect(Collectors.toList());
-        final List<Integer> maxCapacities = nodeCapacities.stream().map(Ints::max)
-                .collect(Collectors.toList());
-        final int numResources = demands.size();
-
-        // For each resource, create dummy demands to accommodate heterogeneous capacities
-        final List<List<Integer>> updatedDemands = new ArrayList<>(demands.size());
+        final int numResources = demands.length;
+        final int[] maxCapacities = new int[numResources];
         for (int i = 0; i < numResources; i++) {
-            final List<Integer> demand = new ArrayList<>(demands.get(i));
-            final int maxCapacity = maxCapacities.get(i);
-            for (final int value : nodeCapacities.get(i)) {
-                demand.add(maxCapacity - value);
-            }
-            updatedDemands.add(demand);
+            maxCapacities[i] = Ints.max(capacities[i]);
         }
-        updatedDemands.forEach(
-                vec -> Preconditions.checkArgument(vec.size() == (numTasks + capacities.get(0).size()))
-        );
 
-        // Scale demands by max-capacities. This normalizes all resource capacities/demands into the same range (0-100)
-        final List<int[]> taskDemands = new ArrayList<>(maxCapacities.size());
-        for (int i = 0; i < maxCapacities.size(); i++) {
-            final int capacity = maxCapacities.get(i);
-            final int[] scaledDemands = updatedDemands.get(i)
-                    .stream().mapToInt(e -> ((e * scale) / capacity))
-                    .toArray();
-            taskDemands.add(scaledDemands);
+        // For each resource, create dummy demands to accommodate heterogeneous capacities, and scale all
+        // demands by max-capacities. This normalizes all resource capacities/demands into the same range (0-100)
+        final int[][] taskDemands = new int[numResources][numTasks + numNodes];
+        for (int i = 0; i < numResources; i++) {
+            final int maxCapacity = maxCapacities[i];
+            for (int task = 0; task < numTasks; task++) {
+                taskDemands[i][task] = (demands[i][task] * scale) / maxCapacity;
+            }
+            for (int node = 0; node < numNodes; node++) {
+                taskDemands[i][numTasks + node] = ((maxCapacity - capacities[i][node]) * scale) / maxCapacity;
+            }
         }
 
         // 2. Capacity constraints
         for (int i = 0; i < numResources; i++) {
-            model.addCumulative(tasksIntervals, taskDemands.get(i), model.newConstant(scale));
+            model.addCumulative(tasksIntervals, taskDemands[i], model.newConstant(scale));
         }
 
         // Cumulative score
-        final IntVar[] maximumLoads = new IntVar[maxCapacities.size()];
+        final IntVar[] maximumLoads = new IntVar[numResources];
         for (int i = 0; i < numResources; i++) {
             final IntVar max = model.newIntVar(0, scale, "");
-            model.addCumulative(tasksIntervals, taskDemands.get(i), max);
+            model.addCumulative(tasksIntervals, taskDemands[i], max);
             maximumLoads[i] = max;
         }
         model.minimize(LinearExpr.sum(maximumLoads));
 
         // Prefer less loaded nodes
-        final int[] nodeIdToLoad = new int[domainArr.length];
-        for (int node = 0; node < domainArr.length; node++) {
+        final int[] nodeIdToLoad = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
             int incidentLoadOnNode = 0;
             for (int task = 0; task < numTasks; task++) {
                 for (int resource = 0; resource < numResources; resource++) {
                     incidentLoadOnNode +=
-                            (capacities.get(resource).get(node) - (taskDemands.get(resource)[task] * 100))
-                                    / capacities.get(resource).get(node);
+                            (capacities[resource][node] - (taskDemands[resource][task] * 100))
+                                    / capacities[resource][node];
                 }
             }
             nodeIdToLoad[node] = incidentLoadOnNode;
         }
-        final long[] domainSortedByLoad = IntStream.range(0, domainArr.length)
+        final long[] domainSortedByLoad = IntStream.range(0, numNodes)
                 .boxed()
                 .sorted(Comparator.comparingInt(idx -> -nodeIdToLoad[idx]))
                 .mapToLong(idx -> domainArr[idx])
@@ -564,7 +709,7 @@ public class Ops {
             for (final IntVar assignmentVar: taskToNodeAssignment) {
                 final IntVar boolVar;
                 if (configUseFullReifiedConstraintsForJoinPreferences) {
-                    boolVar = inLong(assignmentVar, Arrays.asList(ArrayUtils.toObject(subArray)));
+                    boolVar = inLong(assignmentVar, subArray);
                 } else {
                     boolVar = model.newBoolVar("");
                     model.addLinearExpressionInDomain(assignmentVar, Domain.fromValues(subArray))
@@ -581,4 +726,165 @@ public class Ops {
         model.addBoolOr(bools.toArray(new IntVar[0])).onlyEnforceIf(enforcement);;
         model.maximize(enforcement);
     }
+
+    /**
+     * Encodes a capacity constraint as a bin-packing problem. The max(2 * numTasks, {@value MIN_CANDIDATE_NODES})
+     * nodes with the most spare capacity are candidates: every task gets one boolean per candidate node it fits on
+     * by itself, and every candidate node gets one linear constraint per resource. This keeps the part of the model
+     * that grows with the number of nodes small.
+     *
+     * Other constraints may rule out every candidate for a task, or the candidates may not have enough capacity
+     * for all tasks. So that this never loses feasible assignments, a task may instead overflow to the remaining
+     * nodes. Their capacity is enforced with the cumulative encoding over tasks that overflow, and overflowing is
+     * penalized in the objective, which makes the candidates a soft preference.
+     */
+    private void binPackingCapacityConstraint(final IntVar[] varsToAssign, final long[] domainArr,
+                                              final int[][] demands, final int[][] capacities) {
+        final int scale = 1000;
+        final int numTasks = varsToAssign.length;
+        final int numNodes = domainArr.length;
+        final int numResources = demands.length;
+        final int numCandidates = Math.min(numNodes, Math.max(numTasks * 2, MIN_CANDIDATE_NODES));
+
+        // Rank nodes by their spare capacity, normalized across resources like in the cumulative encoding
+        final int[] maxCapacities = new int[numResources];
+        for (int i = 0; i < numResources; i++) {
+            maxCapacities[i] = Ints.max(capacities[i]);
+        }
+        final long[] nodeScores = new long[numNodes];
+        final int[] maxBaselines = new int[numResources];
+        for (int node = 0; node < numNodes; node++) {
+            for (int i = 0; i < numResources; i++) {
+                nodeScores[node] += ((long) capacities[i][node] * scale) / maxCapacities[i];
+                maxBaselines[i] = Math.max(maxBaselines[i], ((maxCapacities[i] - capacities[i][node]) * scale)
+                                                            / maxCapacities[i]);
+            }
+        }
+        final int[] nodesByCapacity = IntStream.range(0, numNodes)
+                .boxed()
+                .sorted(Comparator.comparingLong(idx -> -nodeScores[idx]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final int[] overflowNodes = Arrays.copyOfRange(nodesByCapacity, numCandidates, numNodes);
+        final Domain overflowDomain = Domain.fromValues(Arrays.stream(overflowNodes)
+                                                              .mapToLong(node -> domainArr[node])
+                                                              .toArray());
+
+        // 1. Each task is assigned to exactly one of its candidate nodes, or overflows to the remaining nodes.
+        //    A node's booleans and the tasks they belong to are collected for the per-node capacity constraints.
+        final VectorBuilders.IntVars[] boolsPerNode = new VectorBuilders.IntVars[numNodes];
+        final VectorBuilders.Ints[] tasksPerNode = new VectorBuilders.Ints[numNodes];
+        final IntVar[] overflows = new IntVar[overflowNodes.length == 0 ? 0 : numTasks];
+        for (int task = 0; task < numTasks; task++) {
+            final VectorBuilders.IntVars bools = new VectorBuilders.IntVars(numCandidates + 1);
+            for (int j = 0; j < numCandidates; j++) {
+                final int node = nodesByCapacity[j];
+                if (!fits(demands, capacities, task, node)) {
+                    continue;
+                }
+                final IntVar bool = model.newBoolVar("");
+                model.addLinearExpressionInDomain(varsToAssign[task],
+                                                  Domain.fromValues(new long[]{domainArr[node]})).onlyEnforceIf(bool);
+                if (boolsPerNode[node] == null) {
+                    boolsPerNode[node] = new VectorBuilders.IntVars();
+                    tasksPerNode[node] = new VectorBuilders.Ints();
+                }
+                boolsPerNode[node].add(bool);
+                tasksPerNode[node].add(task);
+                bools.add(bool);
+            }
+            if (overflows.length > 0) {
+                overflows[task] = model.newBoolVar("");
+                model.addLinearExpressionInDomain(varsToAssign[task], overflowDomain).onlyEnforceIf(overflows[task]);
+                bools.add(overflows[task]);
+            }
+            // Infeasible if the task does not fit on any node
+            model.addLinearExpressionInDomain(LinearExpr.sum(bools.toArray()), Domain.fromValues(new long[]{1}));
+        }
+
+        // 2. Capacity constraints for the candidates, and the normalized maximum load of every resource over them.
+        //    Nodes that are not candidates contribute to the maximum load only through their current load.
+        final IntVar[] maximumLoads = new IntVar[numResources];
+        for (int i = 0; i < numResources; i++) {
+            maximumLoads[i] = model.newIntVar(maxBaselines[i], scale, "");
+        }
+        for (int node = 0; node < numNodes; node++) {
+            if (boolsPerNode[node] == null) {
+                continue;
+            }
+            final IntVar[] bools = boolsPerNode[node].toArray();
+            final int[] tasks = tasksPerNode[node].toArray();
+            for (int i = 0; i < numResources; i++) {
+                final int maxCapacity = maxCapacities[i];
+                final int[] nodeDemands = new int[tasks.length];
+                final int[] scaledDemands = new int[tasks.length + 1];
+                for (int k = 0; k < tasks.length; k++) {
+                    nodeDemands[k] = demands[i][tasks[k]];
+                    scaledDemands[k] = (demands[i][tasks[k]] * scale) / maxCapacity;
+                }
+                model.addLinearExpressionInDomain(LinearExpr.scalProd(bools, nodeDemands),
+                                                  Domain.fromFlatIntervals(new long[]{0, capacities[i][node]}));
+
+                // sum(scaledDemands * bools) + baseline <= maximumLoad
+                final int baseline = ((maxCapacity - capacities[i][node]) * scale) / maxCapacity;
+                final IntVar[] boolsAndLoad = Arrays.copyOf(bools, bools.length + 1);
+                boolsAndLoad[bools.length] = maximumLoads[i];
+                scaledDemands[tasks.length] = -1;
+                model.addLinearExpressionInDomain(LinearExpr.scalProd(boolsAndLoad, scaledDemands),
+                                                  Domain.fromFlatIntervals(new long[]{Long.MIN_VALUE, -baseline}));
+            }
+        }
+        if (overflows.length == 0) {
+            model.minimize(LinearExpr.sum(maximumLoads));
+            return;
+        }
+
+        // 3. Capacity constraints for the remaining nodes, over the tasks that overflow to them. Each task is an
+        //    interval of size 1 that starts at its node, and is only present if the task overflows. Every node
+        //    has a fixed interval that takes up the capacity it does not have.
+        final Domain intervalRange = Domain.fromFlatIntervals(new long[]{overflowDomain.min() + 1,
+                                                                         overflowDomain.max() + 1});
+        final IntervalVar[] intervals = new IntervalVar[numTasks + overflowNodes.length];
+        for (int task = 0; task < numTasks; task++) {
+            intervals[task] = model.newOptionalIntervalVar(varsToAssign[task], model.newConstant(1),
+                                                           model.newIntVarFromDomain(intervalRange, ""),
+                                                           overflows[task], "");
+        }
+        for (int k = 0; k < overflowNodes.length; k++) {
+            intervals[numTasks + k] = model.newFixedInterval(domainArr[overflowNodes[k]], 1, "");
+        }
+        for (int i = 0; i < numResources; i++) {
+            final int[] intervalDemands = new int[intervals.length];
+            System.arraycopy(demands[i], 0, intervalDemands, 0, numTasks);
+            for (int k = 0; k < overflowNodes.length; k++) {
+                intervalDemands[numTasks + k] = maxCapacities[i] - capacities[i][overflowNodes[k]];
+            }
+            model.addCumulative(intervals, intervalDemands, model.newConstant(maxCapacities[i]));
+        }
+
+        // Overflowing costs as much as a fully loaded node, so candidates are preferred
+        final IntVar[] objectiveVars = Arrays.copyOf(maximumLoads, numResources + numTasks);
+        System.arraycopy(overflows, 0, objectiveVars, numResources, numTasks);
+        final int[] objectiveWeights = new int[objectiveVars.length];
+        Arrays.fill(objectiveWeights, 0, numResources, 1);
+        Arrays.fill(objectiveWeights, numResources, objectiveWeights.length, scale);
+        model.minimize(LinearExpr.scalProd(objectiveVars, objectiveWeights));
+    }
+
+    private static boolean fits(final int[][] demands, final int[][] capacities, final int task, final int node) {
+        for (int i = 0; i < demands.length; i++) {
+            if (demands[i][task] > capacities[i][node]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[][] toIntArrays(final List<List<Integer>> vectors) {
+        final int[][] arrays = new int[vectors.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = vectors.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
 }
\ No newline at end of file
@@ -7,11 +7,11 @@
 package org.dcm.backend;
 
 import com.google.common.base.CaseFormat;
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.ortools.sat.CpModel;
 import com.google.ortools.sat.CpSolver;
 import com.google.ortools.sat.CpSolverStatus;
@@ -20,10 +20,12 @@ import com.google.ortools.util.Domain;
 import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
 import com.squareup.javapoet.WildcardTypeName;
 import org.dcm.IRColumn;
 import org.dcm.IRContext;
@@ -36,6 +38,7 @@ import org.dcm.compiler.monoid.ExistsPredicate;
 import org.dcm.compiler.monoid.Expr;
 import org.dcm.compiler.monoid.GroupByComprehension;
 import org.dcm.compiler.monoid.GroupByQualifier;
+import org.dcm.compiler.monoid.Head;
 import org.dcm.compiler.monoid.IsNotNullPredicate;
 import org.dcm.compiler.monoid.IsNullPredicate;
 import org.dcm.compiler.monoid.JoinPredicate;
@@ -55,34 +58,29 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.annotation.processing.Generated;
 import javax.lang.model.element.Modifier;
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.IOException;
-import java.io.StringWriter;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -94,9 +92,10 @@ import java.util.stream.Stream;
  */
 public class OrToolsSolver implements ISolverBackend {
     public static final String OR_TOOLS_LIB_ENV = "OR_TOOLS_LIB";
+    public static final String COMPILED_BACKEND_CACHE_DIR_ENV = "DCM_COMPILED_BACKEND_CACHE_DIR";
+    private static final int MAX_CACHED_BACKENDS = 32;
     private static final int NUM_THREADS_DEFAULT = 4;
     private static final int MAX_TIME_IN_SECONDS = 1;
-    private static final String GENERATED_BACKEND_CLASS_FILE_PATH = "/tmp";
     private static final Logger LOG = LoggerFactory.getLogger(OrToolsSolver.class);
     private static final String GENERATED_BACKEND_NAME = "GeneratedBackend";
     private static final String GENERATED_FIELD_NAME_PREFIX = "GenField";
@@ -112,15 +111,29 @@ public class OrToolsSolver implements ISolverBackend {
     private final AtomicInteger generatedFieldNameCounter = new AtomicInteger(0);
     private final AtomicInteger intermediateViewCounter = new AtomicInteger(0);
     private final AtomicInteger subqueryCounter = new AtomicInteger(0);
+    private final AtomicInteger hashIndexCounter = new AtomicInteger(0);
     private final Map<String, Map<String, String>> tableToFieldToType = new HashMap<>();
     private final Map<String, String> viewTupleTypeParameters = new HashMap<>();
-    private final Map<String, String> viewGroupByTupleTypeParameters = new HashMap<>();
+    private final Map<String, String> viewTupleTypes = new HashMap<>();
+    private final Map<String, String> viewGroupByTupleTypes = new HashMap<>();
+    private final Map<String, Set<String>> viewNonNullFields = new HashMap<>();
+    private final Map<String, String> viewResultSetTypes = new HashMap<>();
+    private final Set<String> cachedViews = new HashSet<>();
+    private final Map<IRColumn, List<CodeBlock>> columnDomains = new HashMap<>();
+    // Expressions whose values are consumed linearly, and can therefore be generated as LinearExpressions
+    private final Set<Expr> linearContexts = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Generated variables and expressions that are LinearExpressions rather than IntVars
+    private final Set<String> linearResults = new HashSet<>();
     private final TupleGen tupleGen = new TupleGen();
     private final OutputIR outputIR = new OutputIR();
     private final int configNumThreads;
     private final int configMaxTimeInSeconds;
     private final boolean configTryScalarProductEncoding;
     private final boolean configUseFullReifiedConstraintsForJoinPreferences;
+    private final boolean configReuseInputOnlyViews;
+    private final boolean configUseSolutionHints;
+    private final boolean configUseBinPackingForCapacityConstraints;
+    @Nullable private final CompiledBackendCache compiledBackendCache;
 
     static {
         Preconditions.checkNotNull(System.getenv(OR_TOOLS_LIB_ENV));
@@ -132,11 +145,20 @@ public class OrToolsSolver implements ISolverBackend {
 
     private OrToolsSolver(final int configNumThreads, final int configMaxTimeInSeconds,
                           final boolean configTryScalarProductEncoding,
-                          final boolean configUseFullReifiedConstraintsForJoinPreferences) {
+                          final boolean configUseFullReifiedConstraintsForJoinPreferences,
+                          final boolean configReuseInputOnlyViews,
+                          final boolean configUseSolutionHints,
+                          final boolean configUseBinPackingForCapacityConstraints,
+                          @Nullable final String compiledBackendCacheDirectory) {
         this.configNumThreads = configNumThreads;
         this.configMaxTimeInSeconds = configMaxTimeInSeconds;
         this.configTryScalarProductEncoding = configTryScalarProductEncoding;
         this.configUseFullReifiedConstraintsForJoinPreferences = configUseFullReifiedConstraintsForJoinPreferences;
+        this.configReuseInputOnlyViews = configReuseInputOnlyViews;
+        this.configUseSolutionHints = configUseSolutionHints;
+        this.configUseBinPackingForCapacityConstraints = configUseBinPackingForCapacityConstraints;
+        this.compiledBackendCache = compiledBackendCacheDirectory == null ? null :
+                new CompiledBackendCache(Path.of(compiledBackendCacheDirectory), MAX_CACHED_BACKENDS);
     }
 
     public static class Builder {
@@ -144,6 +166,10 @@ public class OrToolsSolver implements ISolverBackend {
         private int maxTimeInSeconds = MAX_TIME_IN_SECONDS;
         private boolean tryScalarProductEncoding = true;
         private boolean useFullReifiedConstraintsForJoinPreferences = false;
+        private boolean reuseInputOnlyViews = false;
+        private boolean useSolutionHints = false;
+        private boolean useBinPackingForCapacityConstraints = false;
+        @Nullable private String compiledBackendCacheDirectory = System.getenv(COMPILED_BACKEND_CACHE_DIR_ENV);
 
         /**
          * Number of solver threads. Corresponds to CP-SAT's setNumSearchWorkers parameter.
@@ -186,9 +212,63 @@ public class OrToolsSolver implements ISolverBackend {
             return this;
         }
 
+        /**
+         * Configures whether the result sets of non-constraint views that do not access any controllable columns
+         * are kept across solver invocations, and only recomputed when the data of a table they read changes.
+         * This requires Model.enableIncrementalUpdates(): without it, every call to updateData() re-fetches
+         * every table, so the views are recomputed on every invocation anyway.
+         * @param reuseInputOnlyViews true to reuse the result sets of input-only views. Defaults to false.
+         */
+        public Builder setReuseInputOnlyViews(final boolean reuseInputOnlyViews) {
+            this.reuseInputOnlyViews = reuseInputOnlyViews;
+            return this;
+        }
+
+        /**
+         * Configures whether the solver is given a hint for every controllable variable, so that re-optimizing
+         * a mostly unchanged assignment finds a feasible solution almost immediately and spends the time budget
+         * improving it. Variables are hinted with the current value of their column when it is not null, and
+         * otherwise with the value assigned to the same row by the previous solve (see SolutionHints).
+         * @param useSolutionHints true to hint the solver with current or previous values. Defaults to false.
+         */
+        public Builder setUseSolutionHints(final boolean useSolutionHints) {
+            this.useSolutionHints = useSolutionHints;
+            return this;
+        }
+
+        /**
+         * Configures how capacity_constraint() is encoded. The default encoding uses cumulative constraints over
+         * every node in the domain. The bin-packing encoding instead introduces one boolean per task and candidate
+         * node, where candidates are the nodes with the most spare capacity that the task fits on, and scales to
+         * clusters with thousands of nodes. A task may still overflow past its candidates to any other node, through
+         * an optional interval in a cumulative constraint over those nodes, so no feasible assignment is lost. Each
+         * overflowing task is penalized in the objective as much as a fully loaded node, so candidates are preferred.
+         * @param useBinPackingForCapacityConstraints true to use the bin-packing encoding. Defaults to false.
+         */
+        public Builder setUseBinPackingForCapacityConstraints(final boolean useBinPackingForCapacityConstraints) {
+            this.useBinPackingForCapacityConstraints = useBinPackingForCapacityConstraints;
+            return this;
+        }
+
+        /**
+         * Directory in which compiled backends are cached across processes. A cached backend is used whenever
+         * the schema, the views and the solver configuration are the same as those it was generated from,
+         * skipping code generation and compilation entirely. Only the {@value MAX_CACHED_BACKENDS} most recently
+         * used backends are kept.
+         * @param compiledBackendCacheDirectory cache directory, or null to disable caching. Defaults to the
+         *                                      value of the {@value COMPILED_BACKEND_CACHE_DIR_ENV} environment
+         *                                      variable, if set.
+         */
+        public Builder setCompiledBackendCacheDirectory(@Nullable final String compiledBackendCacheDirectory) {
+            this.compiledBackendCacheDirectory = compiledBackendCacheDirectory;
+            return this;
+        }
+
         public OrToolsSolver build() {
             return new OrToolsSolver(numThreads, maxTimeInSeconds, tryScalarProductEncoding,
-                                     useFullReifiedConstraintsForJoinPreferences);
+                                     useFullReifiedConstraintsForJoinPreferences, reuseInputOnlyViews,
+                                     useSolutionHints, useBinPackingForCapacityConstraints,
+                                     compiledBackendCacheDirectory);
         }
     }
 
@@ -215,9 +295,32 @@ public class OrToolsSolver implements ISolverBackend {
         if (generatedBackend != null) {
             return Collections.emptyList();
         }
+        @Nullable final String cacheKey = compiledBackendCache == null ? null :
+                cacheKey(context, nonConstraintViews, constraintViews, objectiveFunctions);
+        if (compiledBackendCache != null && cacheKey != null) {
+            final Optional<Path> cachedEntry = compiledBackendCache.lookup(cacheKey);
+            if (cachedEntry.isPresent()) {
+                LOG.info("Using cached compiled backend {}", cachedEntry.get());
+                loadBackend(CompiledBackendCache.readClassFiles(cachedEntry.get()));
+                return Collections.singletonList(CompiledBackendCache.readSource(cachedEntry.get()));
+            }
+        }
 
         final MethodSpec.Builder output = MethodSpec.methodBuilder("solve");
 
+        // Constraint views that only restrict controllable columns to values known before solving are
+        // enforced through the domains of the corresponding variables instead
+        final Map<String, MonoidComprehension> remainingConstraintViews = new LinkedHashMap<>();
+        constraintViews.forEach((name, comprehension) -> {
+            final Optional<List<DetectDomainConstraints.Restriction>> restrictions =
+                    DetectDomainConstraints.apply(comprehension);
+            if (restrictions.isPresent()) {
+                restrictions.get().forEach(r -> addColumnDomain(r.getColumn(), domainValues(r)));
+            } else {
+                remainingConstraintViews.put(name, comprehension);
+            }
+        });
+
         addInitializer(output);
         try {
             addArrayDeclarations(output, context);
@@ -233,9 +336,13 @@ public class OrToolsSolver implements ISolverBackend {
                     translationContext.enterScope(outerBlock);
                     final OutputIR.Block block = addView(name, rewrittenComprehension, false, translationContext);
                     translationContext.leaveScope();
-                    output.addCode(block.toString());
+                    if (configReuseInputOnlyViews) {
+                        output.addCode(maybeCacheView(name, rewrittenComprehension, block));
+                    } else {
+                        output.addCode(block.toString());
+                    }
                 });
-        constraintViews
+        remainingConstraintViews
                 .forEach((name, comprehension) -> {
                     final List<MonoidFunction> capacityConstraints = DetectCapacityConstraints.apply(comprehension);
                     if (capacityConstraints.isEmpty()) {
@@ -260,17 +367,22 @@ public class OrToolsSolver implements ISolverBackend {
         objectiveFunctions
                 .forEach((name, comprehension) -> {
                     final MonoidComprehension rewrittenComprehension = rewritePipeline(comprehension);
+                    // Objectives are summed up, so a scalar objective can be generated as a linear expression
+                    if (!(rewrittenComprehension instanceof GroupByComprehension)) {
+                        Preconditions.checkNotNull(rewrittenComprehension.getHead());
+                        linearContexts.addAll(rewrittenComprehension.getHead().getSelectExprs());
+                    }
                     final TranslationContext objFunctionContext = new TranslationContext(false);
                     final OutputIR.Block outerBlock = outputIR.newBlock("outer");
                     objFunctionContext.enterScope(outerBlock);
                     final String exprStr = exprToStr(rewrittenComprehension, objFunctionContext);
                     objFunctionContext.leaveScope();
                     output.addCode(outerBlock.toString());
-                    output.addStatement("final $T $L = $L", IntVar.class, name, exprStr);
+                    output.addStatement("final $T $L = $L", LinearExpression.class, name, toLinear(exprStr));
                 });
         if (!objectiveFunctions.isEmpty()) {
             final String objectiveFunctionSum = String.join(", ", objectiveFunctions.keySet());
-            output.addStatement("model.maximize(o.sumV($T.of($L)))", List.class, objectiveFunctionSum);
+            output.addStatement("o.maximize($T.of($L))", List.class, objectiveFunctionSum);
         }
 
         addSolvePhase(output, context);
@@ -284,10 +396,90 @@ public class OrToolsSolver implements ISolverBackend {
                 .addSuperinterface(IGeneratedBackend.class)
                 .addMethod(solveMethod)
                 .addMethod(INT_VAR_NO_BOUNDS);
+        if (!cachedViews.isEmpty()) {
+            addViewCache(backendClassBuilder);
+        }
+        if (configUseSolutionHints) {
+            backendClassBuilder.addField(FieldSpec.builder(SolutionHints.class, "hints",
+                                                           Modifier.PRIVATE, Modifier.FINAL)
+                                                  .initializer("new $T()", SolutionHints.class)
+                                                  .build());
+        }
         tupleGen.getAllTupleTypes().forEach(backendClassBuilder::addType); // Add tuple types
 
         final TypeSpec spec = backendClassBuilder.build();
-        return compile(spec);
+        return compile(spec, cacheKey);
+    }
+
+    /**
+     * Computes a key that identifies the generated backend for the given inputs: the schema of all tables,
+     * the views, the solver configuration, and the code generator itself.
+     *
+     * @return the key, or null if the code generator's class files cannot be found to be hashed
+     */
+    @Nullable
+    private String cacheKey(final IRContext context,
+                            final Map<String, MonoidComprehension> nonConstraintViews,
+                            final Map<String, MonoidComprehension> constraintViews,
+                            final Map<String, MonoidComprehension> objectiveFunctions) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        final Optional<String> generatorFingerprint = CompiledBackendCache.generatorFingerprint();
+        if (generatorFingerprint.isEmpty()) {
+            LOG.warn("Could not fingerprint the code generator, not caching compiled backend");
+            return null;
+        }
+        hasher.putString(generatorFingerprint.get(), StandardCharsets.UTF_8);
+        hasher.putString(String.format("%s %s %s %s %s %s %s", configNumThreads, configMaxTimeInSeconds,
+                                       configTryScalarProductEncoding,
+                                       configUseFullReifiedConstraintsForJoinPreferences,
+                                       configReuseInputOnlyViews, configUseSolutionHints,
+                                       configUseBinPackingForCapacityConstraints), StandardCharsets.UTF_8);
+        context.getTables().stream()
+               .sorted(Comparator.comparing(IRTable::getAliasedName))
+               .forEach(table -> {
+                   hasher.putString(String.format("|%s %s %s", table.getName(), table.getAliasedName(),
+                                                  table.isViewTable()), StandardCharsets.UTF_8);
+                   // Nullability determines the generated tuple fields and IS NULL checks (see isNonNull())
+                   table.getIRColumns().forEach((name, column) ->
+                       hasher.putString(String.format("|%s %s %s %s", name, column.getType(), column.isControllable(),
+                                                      column.getJooqField() != null
+                                                      && column.getJooqField().getDataType().nullable()),
+                                        StandardCharsets.UTF_8));
+                   if (!table.isViewTable()) {
+                       table.getPrimaryKey().ifPresent(pk -> pk.getPrimaryKeyFields().forEach(
+                           column -> hasher.putString("|pk " + column.getName(), StandardCharsets.UTF_8)));
+                       table.getForeignKeys().forEach(fk -> fk.getFields().forEach((child, parent) ->
+                           hasher.putString(String.format("|fk %s %s.%s", child.getName(),
+                                                          parent.getIRTable().getName(), parent.getName()),
+                                            StandardCharsets.UTF_8)));
+                   }
+               });
+        for (final Map<String, MonoidComprehension> views : List.of(nonConstraintViews, constraintViews,
+                                                                     objectiveFunctions)) {
+            hasher.putString("|views", StandardCharsets.UTF_8);
+            views.forEach((name, comprehension) -> {
+                // Literal types are not part of the comprehension's string representation
+                final StringBuilder literalTypes = new StringBuilder();
+                new MonoidVisitor<Void, Void>() {
+                    @Nullable
+                    @Override
+                    protected Void visitHead(final Head node, @Nullable final Void c) {
+                        node.getSelectExprs().forEach(e -> visit(e, c));
+                        return null;
+                    }
+
+                    @Nullable
+                    @Override
+                    protected Void visitMonoidLiteral(final MonoidLiteral node, @Nullable final Void c) {
+                        literalTypes.append(node.getValue().getClass().getSimpleName()).append(' ');
+                        return null;
+                    }
+                }.visit(comprehension);
+                hasher.putString(String.format("|%s %s %s", name, comprehension, literalTypes),
+                                 StandardCharsets.UTF_8);
+            });
+        }
+        return hasher.hash().toString();
     }
 
     /**
@@ -320,16 +512,10 @@ public class OrToolsSolver implements ISolverBackend {
 
             // We now construct the actual result set that hosts the aggregated tuples by group. This is done
             // in two steps...
-            final int groupByQualifiersSize = groupByQualifier.getColumnIdentifiers().size();
-            final String groupByTupleTypeParameters = viewGroupByTupleTypeParameters.get(intermediateView);
-            final String headItemsTupleTypeParamters = viewTupleTypeParameters.get(intermediateView);
+            final String groupByTupleType = viewGroupByTupleTypes.get(intermediateView);
+            final String headItemsTupleType = viewTupleTypes.get(intermediateView);
             assert inner.getHead() != null;
 
-            // when duplicates appear for viewToFieldIndex, we increment the fieldIndex counter but do not add a new
-            // entry. This means that the highest fieldIndex (and not the size of the map) is equal to tuple size.
-            // The indices are 0-indexed.
-            final int innerTupleSize = Collections.max(viewToFieldIndex.get(intermediateView.toUpperCase(Locale.US))
-                                                                       .values()) + 1;
             // (1) Create the result set
             block.addBody(CodeBlock.builder()
                                  .add("\n")
@@ -340,36 +526,32 @@ public class OrToolsSolver implements ISolverBackend {
             );
 
             if (!isConstraint) {
-                final int selectExprSize = inner.getHead().getSelectExprs().size();
-                final TypeSpec typeSpec = tupleGen.getTupleType(selectExprSize);
+                final String tupleType = tupleType(inner.getHead().getSelectExprs());
                 final String viewTupleGenericParameters =
                         generateTupleGenericParameters(inner.getHead().getSelectExprs());
                 viewTupleTypeParameters.put(tableNameStr(viewName), viewTupleGenericParameters);
+                viewResultSetTypes.put(viewName, String.format("List<%s>", tupleType));
                 block.addBody(
-                    statement("final $T<$N<$L>> $L = new $T<>($L.size())", List.class, typeSpec,
-                                                     viewTupleGenericParameters, tableNameStr(viewName),
-                                                     ArrayList.class, intermediateView)
+                    statement("final $T<$L> $L = new $T<>($L.size())", List.class, tupleType,
+                                                     tableNameStr(viewName), ArrayList.class, intermediateView)
                 );
             }
 
             // (2) Loop over the result set collected from the inner comprehension
             final OutputIR.ForBlock forBlock = outputIR.newForBlock(viewName,
-                    CodeBlock.of("for (final $T<Tuple$L<$L>, List<Tuple$L<$L>>> entry: $L.entrySet())",
-                                            Map.Entry.class, groupByQualifiersSize, groupByTupleTypeParameters,
-                                            innerTupleSize, headItemsTupleTypeParamters, intermediateView)
+                    CodeBlock.of("for (final $T<$L, List<$L>> entry: $L.entrySet())",
+                                            Map.Entry.class, groupByTupleType, headItemsTupleType, intermediateView)
             );
 
             forBlock.addHeader(
                 CodeBlock.builder()
-                         .addStatement("final Tuple$L<$L> group = entry.getKey()", groupByQualifiersSize,
-                                                                                   groupByTupleTypeParameters)
-                         .addStatement("final List<Tuple$L<$L>> data = entry.getValue()", innerTupleSize,
-                                                                                  headItemsTupleTypeParamters)
+                         .addStatement("final $L group = entry.getKey()", groupByTupleType)
+                         .addStatement("final List<$L> data = entry.getValue()", headItemsTupleType)
                          .build()
             );
 
             final OutputIR.ForBlock dataForBlock = outputIR.newForBlock(viewName,
-                        CodeBlock.of("for (final Tuple$L<$L> t: data)", innerTupleSize, headItemsTupleTypeParamters),
+                        CodeBlock.of("for (final $L t: data)", headItemsTupleType),
                         "data.size()"
             );
             forBlock.addBody(dataForBlock);
@@ -388,14 +570,11 @@ public class OrToolsSolver implements ISolverBackend {
 
             // If this is not a constraint, we simply add a to a result set
             if (!isConstraint) {
-                final TypeSpec typeSpec = tupleGen.getTupleType(inner.getHead().getSelectExprs().size());
-                final String viewTupleGenericParameters =
-                        generateTupleGenericParameters(inner.getHead().getSelectExprs());
+                final String tupleType = tupleType(inner.getHead().getSelectExprs());
                 final String tupleResult = inner.getHead().getSelectExprs().stream()
                                                  .map(e -> exprToStr(e, true, groupContext, context))
                                                  .collect(Collectors.joining(", "));
-                forBlock.addBody(statement("final $1N<$2L> t = new $1N<>($3L)",
-                                            typeSpec, viewTupleGenericParameters, tupleResult));
+                forBlock.addBody(statement("final $1L t = new $1L($2L)", tupleType, tupleResult));
 
                 // Record field name indices for view
                 // TODO: wrap this block into a helper.
@@ -419,6 +598,89 @@ public class OrToolsSolver implements ISolverBackend {
         return buildInnerComprehension(viewName, comprehension, null, isConstraint, context);
     }
 
+    /**
+     * Wraps the block computing a non-constraint view in a lambda whose result is cached by the generated backend,
+     * if the view does not access any controllable columns, and only reads tables and views that can be cached.
+     * The cached result set is reused as long as the tables it was computed from are at the same data version,
+     * and the cached views it was computed from are the same lists of tuples.
+     *
+     * @param viewName name of the view
+     * @param comprehension comprehension corresponding to `viewName`
+     * @param block the block computing the view's result set
+     * @return the code for the view
+     */
+    private String maybeCacheView(final String viewName, final MonoidComprehension comprehension,
+                                  final OutputIR.Block block) {
+        final GetAccessedTables visitor = new GetAccessedTables();
+        visitor.visit(comprehension);
+        final boolean readsOnlyInputs = visitor.getTables().stream()
+                                           .allMatch(t -> !t.isViewTable() || cachedViews.contains(t.getName()));
+        final String resultSetType = viewResultSetTypes.get(viewName);
+        if (visitor.usesControllableFields() || !readsOnlyInputs || resultSetType == null) {
+            return block.toString();
+        }
+        cachedViews.add(viewName.toUpperCase(Locale.US));
+        final String resultSetName = tableNameStr(viewName);
+        final String inputs = visitor.getTables().stream()
+                                     .map(t -> t.isViewTable() ? tableNameStr(t.getName())
+                                                 : String.format("context.getTable(\"%s\").getDataVersion()",
+                                                                 t.getName()))
+                                     .distinct()
+                                     .collect(Collectors.joining(", "));
+        return CodeBlock.builder()
+                 .add("\n/* Result set of $L is reused while its inputs are unchanged */\n", viewName)
+                 .addStatement("final $T<$L> $LSupplier = () -> {\n$>$L\nreturn $L;\n$<}",
+                               Supplier.class, resultSetType, resultSetName, block.toString(), resultSetName)
+                 .addStatement("final $L $L = cachedView($S, new Object[]{$L}, $LSupplier)",
+                               resultSetType, resultSetName, viewName, inputs, resultSetName)
+                 .build()
+                 .toString();
+    }
+
+    /**
+     * Adds the fields and methods used by the generated backend to cache the result sets of views
+     * across invocations of solve().
+     */
+    private void addViewCache(final TypeSpec.Builder backendClassBuilder) {
+        final TypeVariableName typeT = TypeVariableName.get("T");
+        backendClassBuilder
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(Map.class, String.class, Object[].class),
+                                        "viewCacheInputs", Modifier.PRIVATE, Modifier.FINAL)
+                               .initializer("new $T<>()", HashMap.class)
+                               .build())
+            .addField(FieldSpec.builder(ParameterizedTypeName.get(Map.class, String.class, Object.class),
+                                        "viewCache", Modifier.PRIVATE, Modifier.FINAL)
+                               .initializer("new $T<>()", HashMap.class)
+                               .build())
+            .addMethod(MethodSpec.methodBuilder("cachedView")
+                           .addModifiers(Modifier.PRIVATE)
+                           .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                                                        .addMember("value", "$S", "unchecked")
+                                                        .build())
+                           .addTypeVariable(typeT)
+                           .addParameter(String.class, "viewName", Modifier.FINAL)
+                           .addParameter(Object[].class, "inputs", Modifier.FINAL)
+                           .addParameter(ParameterizedTypeName.get(ClassName.get(Supplier.class), typeT),
+                                         "compute", Modifier.FINAL)
+                           .returns(typeT)
+                           .addStatement("final Object[] previousInputs = viewCacheInputs.get(viewName)")
+                           .beginControlFlow("if (previousInputs != null && previousInputs.length == inputs.length)")
+                           .addStatement("boolean unchanged = true")
+                           .beginControlFlow("for (int i = 0; i < inputs.length; i++)")
+                           .addStatement("unchanged &= previousInputs[i] instanceof Long\n" +
+                                         "? previousInputs[i].equals(inputs[i]) : previousInputs[i] == inputs[i]")
+                           .endControlFlow()
+                           .beginControlFlow("if (unchanged)")
+                           .addStatement("return (T) viewCache.get(viewName)")
+                           .endControlFlow()
+                           .endControlFlow()
+                           .addStatement("final T result = compute.get()")
+                           .addStatement("viewCacheInputs.put(viewName, inputs)")
+                           .addStatement("viewCache.put(viewName, result)")
+                           .addStatement("return result")
+                           .build());
+    }
+
     /**
      * Converts a comprehension into a set of nested for loops that return a "result set". The result set
      * is represented as a list of tuples.
@@ -448,13 +710,13 @@ public class OrToolsSolver implements ISolverBackend {
                 "Generic parameters list for " + comprehension + " was empty");
         viewTupleTypeParameters.put(viewName, headItemsListTupleGenericParameters);
 
-        final int tupleSize = headItemsList.size();
+        final String tupleType = tupleType(headItemsList);
+        viewTupleTypes.put(viewName, tupleType);
         final String resultSetNameStr = nonConstraintViewName(viewName);
 
         // For non-constraints, create a Map<> or a List<> to collect the result-set (depending on
         // whether the query is a group by or not)
-        final OutputIR.Block resultSetDeclBlock = maybeAddMapOrListForResultSet(viewName, tupleSize,
-                                                                     headItemsListTupleGenericParameters,
+        final OutputIR.Block resultSetDeclBlock = maybeAddMapOrListForResultSet(viewName, tupleType,
                                                                      resultSetNameStr, groupByQualifier, isConstraint);
 
         // Separate out qualifiers into variable and non-variable types.
@@ -463,7 +725,7 @@ public class OrToolsSolver implements ISolverBackend {
         populateQualifiersByVarType(comprehension, varQualifiers, nonVarQualifiers, true);
 
         // Start control flows to create nested for loops
-        final OutputIR.Block forLoopsBlock = addNestedForLoops(viewName, nonVarQualifiers);
+        final OutputIR.Block forLoopsBlock = addNestedForLoops(viewName, nonVarQualifiers, block);
 
         // Filter out nested for loops using an if(predicate) statement
         context.enterScope(forLoopsBlock);
@@ -486,9 +748,8 @@ public class OrToolsSolver implements ISolverBackend {
             // If filter predicate is true, then retrieve expressions to collect into result set. Note, this does not
             // evaluate things like functions (sum etc.). These are not aggregated as part of the inner expressions.
 
-            final OutputIR.Block resultSetAddBlock = addToResultSet(viewName, tupleSize, headItemsStr,
-                                                               headItemsListTupleGenericParameters,
-                                                               resultSetNameStr, groupByQualifier);
+            final OutputIR.Block resultSetAddBlock = addToResultSet(viewName, tupleType, headItemsStr,
+                                                                    resultSetNameStr, groupByQualifier);
             forLoopsBlock.addBody(resultSetAddBlock);
         } else {
             final List<CodeBlock> addRowConstraintBlock = addRowConstraint(varQualifiers, nonVarQualifiers, context);
@@ -581,6 +842,13 @@ public class OrToolsSolver implements ISolverBackend {
                 .toUpperCase(Locale.US);
         viewToFieldIndex.computeIfAbsent(viewName.toUpperCase(Locale.US), (k) -> new HashMap<>())
                         .compute(fieldName, (k, v) -> fieldIndexCounter.getAndIncrement());
+        final Set<String> nonNullFields = viewNonNullFields.computeIfAbsent(viewName.toUpperCase(Locale.US),
+                                                                            (k) -> new HashSet<>());
+        if (isNonNull(argument)) {
+            nonNullFields.add(fieldName);
+        } else {
+            nonNullFields.remove(fieldName);
+        }
         return fieldName;
     }
 
@@ -588,29 +856,22 @@ public class OrToolsSolver implements ISolverBackend {
      * If required, returns a block of code representing maps or lists created to host the result-sets returned
      * by a view.
      */
-    private OutputIR.Block maybeAddMapOrListForResultSet(final String viewName, final int tupleSize,
-                                                         final String headItemsListTupleGenericParameters,
+    private OutputIR.Block maybeAddMapOrListForResultSet(final String viewName, final String tupleType,
                                                          final String viewRecords,
                                                          @Nullable final GroupByQualifier groupByQualifier,
                                                          final boolean isConstraint) {
         final OutputIR.Block block = outputIR.newBlock(viewName + "CreateResultSet");
-        final TypeSpec tupleSpec = tupleGen.getTupleType(tupleSize);
         if (groupByQualifier != null) {
             // Create group by tuple
-            final int numberOfGroupColumns = groupByQualifier.getColumnIdentifiers().size();
-            final String groupByTupleGenericParameters =
-                    generateTupleGenericParameters(groupByQualifier.getColumnIdentifiers());
-            final TypeSpec groupTupleSpec = tupleGen.getTupleType(numberOfGroupColumns);
-            viewGroupByTupleTypeParameters.put(viewName, groupByTupleGenericParameters);
-            block.addHeader(statement("final Map<$N<$L>, $T<$N<$L>>> $L = new $T<>()",
-                                        groupTupleSpec, groupByTupleGenericParameters,
-                                        List.class, tupleSpec, headItemsListTupleGenericParameters,
-                                        viewRecords, HashMap.class));
+            final String groupTupleType = tupleType(groupByQualifier.getColumnIdentifiers());
+            viewGroupByTupleTypes.put(viewName, groupTupleType);
+            block.addHeader(statement("final Map<$L, $T<$L>> $L = new $T<>()",
+                                        groupTupleType, List.class, tupleType, viewRecords, HashMap.class));
         } else {
             if (!isConstraint) {
-                block.addHeader(statement("final $T<$N<$L>> $L = new $T<>()",
-                                          List.class, tupleSpec, headItemsListTupleGenericParameters,
-                                          viewRecords, ArrayList.class));
+                viewResultSetTypes.put(viewName, String.format("List<%s>", tupleType));
+                block.addHeader(statement("final $T<$L> $L = new $T<>()",
+                                          List.class, tupleType, viewRecords, ArrayList.class));
             }
         }
         return block;
@@ -631,14 +892,93 @@ public class OrToolsSolver implements ISolverBackend {
     }
 
     /**
-     * Returns a block of code representing nested for loops for a view
+     * Returns a block of code representing nested for loops for a view.
+     *
+     * If an inner table is equi-joined with an outer one on non-controllable columns, we build a hash index over
+     * the inner table's join column in `block` and only iterate over the matching rows of the inner table. The
+     * join predicates used this way are removed from `nonVarQualifiers`, because they no longer need to be
+     * checked within the loop.
      */
     private OutputIR.Block addNestedForLoops(final String viewName,
-                                             final QualifiersByType nonVarQualifiers) {
-        final List<CodeBlock> loopStatements = forLoopsFromTableRowGenerators(nonVarQualifiers.tableRowGenerators);
+                                             final QualifiersByType nonVarQualifiers,
+                                             final OutputIR.Block block) {
+        final List<TableRowGenerator> tableRowGenerators = nonVarQualifiers.tableRowGenerators;
+        final List<CodeBlock> loopStatements = forLoopsFromTableRowGenerators(tableRowGenerators);
+        final Set<String> outerTables = new HashSet<>();
+        for (int i = 0; i < tableRowGenerators.size(); i++) {
+            final IRTable innerTable = tableRowGenerators.get(i).getTable();
+            if (i > 0) {
+                final Optional<JoinPredicate> hashJoin = nonVarQualifiers.joinPredicates.stream()
+                        .filter(p -> isHashJoinable(p, outerTables, innerTable))
+                        .findFirst();
+                if (hashJoin.isPresent()) {
+                    loopStatements.set(i, hashJoinLoop(hashJoin.get(), innerTable, block));
+                    nonVarQualifiers.joinPredicates.remove(hashJoin.get());
+                }
+            }
+            outerTables.add(innerTable.getAliasedName());
+        }
         return outputIR.newForBlock(viewName, loopStatements);
     }
 
+    /**
+     * Whether a join predicate is an equality between a non-controllable column of `innerTable` and a
+     * non-controllable column of the same type from one of `outerTables`.
+     */
+    private boolean isHashJoinable(final JoinPredicate predicate, final Set<String> outerTables,
+                                   final IRTable innerTable) {
+        if (predicate.getOperator() != BinaryOperatorPredicate.Operator.EQUAL
+            || !(predicate.getLeft() instanceof ColumnIdentifier)
+            || !(predicate.getRight() instanceof ColumnIdentifier)) {
+            return false;
+        }
+        final ColumnIdentifier left = (ColumnIdentifier) predicate.getLeft();
+        final ColumnIdentifier right = (ColumnIdentifier) predicate.getRight();
+        if (left.getField().isControllable() || right.getField().isControllable()
+            || !inferType(left).equals(inferType(right))) {
+            return false;
+        }
+        final String inner = innerTable.getAliasedName();
+        return (left.getTableName().equals(inner) && outerTables.contains(right.getTableName()))
+            || (right.getTableName().equals(inner) && outerTables.contains(left.getTableName()));
+    }
+
+    /**
+     * Adds a hash index over the inner table's join column to `block`, and returns a for loop over the rows of
+     * the inner table that match the outer table's current row.
+     */
+    private CodeBlock hashJoinLoop(final JoinPredicate predicate, final IRTable innerTable,
+                                   final OutputIR.Block block) {
+        final ColumnIdentifier left = (ColumnIdentifier) predicate.getLeft();
+        final ColumnIdentifier right = (ColumnIdentifier) predicate.getRight();
+        final boolean leftIsInner = left.getTableName().equals(innerTable.getAliasedName());
+        final ColumnIdentifier innerColumn = leftIsInner ? left : right;
+        final ColumnIdentifier outerColumn = leftIsInner ? right : left;
+        final String indexName = "hashIndex" + hashIndexCounter.getAndIncrement();
+        final String rowStr = indexName + "Row";
+        final String keyType = inferType(innerColumn);
+        final String innerKeyStr = fieldNameStrWithIter(innerColumn.getField().getIRTable().getName(),
+                                                        innerColumn.getField().getName(), rowStr);
+        final String outerKeyStr = fieldNameStrWithIter(outerColumn.getField().getIRTable().getName(),
+                                                        outerColumn.getField().getName(),
+                                                        iterStr(outerColumn.getTableName()));
+        final String innerNumRowsStr = tableNumRowsStr(innerTable.getName());
+        block.addBody(CodeBlock.builder()
+                .add("\n/* Hash index over $L.$L */\n", innerTable.getAliasedName(), innerColumn.getField().getName())
+                .addStatement("final $T<$L, $T<Integer>> $L = new $T<>($L)", Map.class, keyType, List.class,
+                              indexName, HashMap.class, innerNumRowsStr)
+                .beginControlFlow("for (int $1L = 0; $1L < $2L; $1L++)", rowStr, innerNumRowsStr)
+                .addStatement("final $L $LKey = $L", keyType, indexName, innerKeyStr)
+                .beginControlFlow("if ($LKey != null)", indexName)
+                .addStatement("$1L.computeIfAbsent($1LKey, (k) -> new $2T<>()).add($3L)", indexName, ArrayList.class,
+                              rowStr)
+                .endControlFlow()
+                .endControlFlow()
+                .build());
+        return CodeBlock.of("for (final int $L: $L.getOrDefault($L, $T.emptyList()))",
+                            iterStr(innerTable.getAliasedName()), indexName, outerKeyStr, Collections.class);
+    }
+
     /**
      * Returns a block of code representing an if statement that evaluates constant predicates to determine
      * whether a result-set or constraint applies to a row within a view
@@ -692,26 +1032,23 @@ public class OrToolsSolver implements ISolverBackend {
      * TODO: this overlaps with newly added logic to extract vectors from tuples. They currently perform redundant
      *  work that results in additional lists and passes over the data being created.
      */
-    private OutputIR.Block addToResultSet(final String viewName, final int tupleSize,
-                                          final String headItemsStr, final String headItemsListTupleGenericParameters,
-                                          final String viewRecords, @Nullable final GroupByQualifier groupByQualifier) {
+    private OutputIR.Block addToResultSet(final String viewName, final String tupleType,
+                                          final String headItemsStr, final String viewRecords,
+                                          @Nullable final GroupByQualifier groupByQualifier) {
         final OutputIR.Block block = outputIR.newBlock(viewName + "AddToResultSet");
         // Create a tuple for the result set
-        block.addBody(statement("final Tuple$1L<$2L> t = new Tuple$1L<>(\n    $3L\n    )",
-                                 tupleSize, headItemsListTupleGenericParameters, headItemsStr));
+        block.addBody(statement("final $1L t = new $1L(\n    $2L\n    )", tupleType, headItemsStr));
 
         // Update result set
         if (groupByQualifier != null) {
-            final int numberOfGroupByColumns = groupByQualifier.getColumnIdentifiers().size();
             // Comma separated list of field accesses to construct a group string
             final String groupString = groupByQualifier.getColumnIdentifiers().stream()
                     .map(e -> fieldNameStrWithIter(e.getTableName(), e.getField().getName()))
                     .collect(Collectors.joining(",     \n"));
 
             // Organize the collected tuples from the nested for loops by groupByTuple
-            block.addBody(statement("final Tuple$1L<$2L> groupByTuple = new Tuple$1L<>(\n    $3L\n    )",
-                           numberOfGroupByColumns, Objects.requireNonNull(viewGroupByTupleTypeParameters.get(viewName)),
-                           groupString));
+            block.addBody(statement("final $1L groupByTuple = new $1L(\n    $2L\n    )",
+                                    Objects.requireNonNull(viewGroupByTupleTypes.get(viewName)), groupString));
             block.addBody(statement("$L.computeIfAbsent(groupByTuple, (k) -> new $T<>()).add(t)",
                                      viewRecords, ArrayList.class));
         } else {
@@ -822,18 +1159,57 @@ public class OrToolsSolver implements ISolverBackend {
                                  List.class, recordType, recordTypeParameters, tableNameStr(table.getName()),
                                  recordType, recordTypeParameters, table.getName());
 
-            // ...3) for controllable fields, create a corresponding array of IntVars.
+            // ...3) for controllable fields, create a corresponding array of IntVars. Foreign keys restrict
+            // the domains of these variables, along with any constraint views that were folded into them.
+            table.getForeignKeys().forEach(e -> {
+                if (e.hasConstraint()) {
+                    e.getFields().forEach((child, parent) -> {
+                        if (child.isControllable()) {
+                            addColumnDomain(child, columnValues(parent));
+                        }
+                    });
+                }
+            });
+            final boolean addHints = configUseSolutionHints && hasControllableColumns(table);
+            if (addHints) {
+                // Rows are matched against the previous solve's rows using their non-controllable columns
+                final String keyFields = table.getIRColumns().entrySet().stream()
+                        .filter(e -> !e.getValue().isControllable())
+                        .map(e -> CodeBlock.of("$S", e.getKey()).toString())
+                        .collect(Collectors.joining(", "));
+                output.addStatement("final $T<$T<Object>> $L = $T.rowKeys($L$L)", List.class, List.class,
+                                    hintKeysStr(table.getName()), SolutionHints.class,
+                                    tableNameStr(table.getName()), keyFields.isEmpty() ? "" : ", " + keyFields);
+            }
             for (final Map.Entry<String, IRColumn> fieldEntrySet : table.getIRColumns().entrySet()) {
                 final String fieldName = fieldEntrySet.getKey();
                 final IRColumn field = fieldEntrySet.getValue();
                 if (field.isControllable()) {
                     final String variableName = fieldNameStr(table.getName(), fieldName);
+                    final List<CodeBlock> domains = columnDomains.getOrDefault(field, Collections.emptyList());
+                    if (!domains.isEmpty()) {
+                        final CodeBlock domain = domains.stream()
+                                .map(values -> CodeBlock.of("$T.fromValues($L)", Domain.class, values))
+                                .reduce((left, right) -> CodeBlock.of("$L\n.intersectionWith($L)", left, right))
+                                .orElseThrow();
+                        output.addStatement("final $T $LDomain = $L", Domain.class, variableName, domain);
+                    }
                     output.addStatement("final $T[] $L = new $T[$L]", IntVar.class, variableName, IntVar.class,
                                                                        tableNumRowsStr(table.getName()))
                             .beginControlFlow("for (int i = 0; i < $L; i++)",
-                                              tableNumRowsStr(table.getName()))
-                            .addStatement("$L[i] = $N(model, $S)", variableName, INT_VAR_NO_BOUNDS, fieldName)
-                            .endControlFlow();
+                                              tableNumRowsStr(table.getName()));
+                    if (domains.isEmpty()) {
+                        output.addStatement("$L[i] = $N(model, $S)", variableName, INT_VAR_NO_BOUNDS, fieldName);
+                    } else {
+                        output.addStatement("$L[i] = model.newIntVarFromDomain($LDomain, $S)", variableName,
+                                            variableName, fieldName);
+                    }
+                    if (addHints) {
+                        output.addStatement("hints.hint(model, encoder, $L[i], $S, $L.get(i), $L.get(i).get($S))",
+                                            variableName, table.getName() + "." + fieldName,
+                                            hintKeysStr(table.getName()), tableNameStr(table.getName()), fieldName);
+                    }
+                    output.endControlFlow();
                 }
             }
         }
@@ -875,43 +1251,39 @@ public class OrToolsSolver implements ISolverBackend {
                     }
                 }
             });
+        }
 
-            //..5) introduce foreign-key constraints
-            table.getForeignKeys().forEach(e -> {
-                if (e.hasConstraint()) {
-                    final AtomicInteger fieldIndex = new AtomicInteger(0);
-                    e.getFields().forEach((child, parent) -> {
-                        if (!child.isControllable()) {
-                            return;
-                        }
-                        output.addCode("\n");
-                        output.addCode("/* Foreign key constraints: $L.$L -> $L.$L */\n",
-                                child.getIRTable().getName(), child.getName(),
-                                parent.getIRTable().getName(), parent.getName());
-                        output.beginControlFlow("for (int i = 0; i < $L; i++)",
-                                tableNumRowsStr(table.getName()));
-                        final String fkChildStr =
-                                fieldNameStrWithIter(child.getIRTable().getName(), child.getName(), "i");
-                        final String snippet = Joiner.on('\n').join(
-                                "final long[] domain$L = context.getTable($S).getCurrentData()",
-                                "                        .getValues($S, $L.class)",
-                                "                        .stream()",
-                                "                        .mapToLong(encoder::toLong).toArray()"
-                        );
+        output.addStatement(printTime("Array declarations"));
+    }
 
-                        output.addStatement(snippet,
-                               fieldIndex.get(), parent.getIRTable().getName(), parent.getName().toUpperCase(Locale.US),
-                               toJavaClass(parent.getType()));
-                        output.addStatement("model.addLinearExpressionInDomain($L, $T.fromValues(domain$L))",
-                                fkChildStr, Domain.class, fieldIndex.get());
-                        output.endControlFlow();
-                        fieldIndex.incrementAndGet();
-                    });
-                }
-            });
+    private void addColumnDomain(final IRColumn column, final CodeBlock values) {
+        columnDomains.computeIfAbsent(column, k -> new ArrayList<>()).add(values);
+    }
+
+    /**
+     * @return an expression for the encoded values of a domain restriction
+     */
+    private static CodeBlock domainValues(final DetectDomainConstraints.Restriction restriction) {
+        if (restriction.getValuesColumn().isPresent()) {
+            return columnValues(restriction.getValuesColumn().get());
         }
+        final Object literal = restriction.getLiteral().orElseThrow();
+        return literal instanceof String
+                ? CodeBlock.of("new long[]{encoder.toLong($S)}", ((String) literal).replace("'", ""))
+                : CodeBlock.of("new long[]{$LL}", ((Number) literal).longValue());
+    }
 
-        output.addStatement(printTime("Array declarations"));
+    /**
+     * @return an expression for the encoded, non-null values of an input column
+     */
+    private static CodeBlock columnValues(final IRColumn column) {
+        return CodeBlock.of("context.getTable($S).getCurrentData()\n" +
+                            "        .getValues($S, $L.class)\n" +
+                            "        .stream()\n" +
+                            "        .filter($T::nonNull)\n" +
+                            "        .mapToLong(encoder::toLong).toArray()",
+                            column.getIRTable().getName(), column.getName().toUpperCase(Locale.US),
+                            toJavaClass(column.getType()), Objects.class);
     }
 
     private static String toJavaClass(final IRColumn.FieldType type) {
@@ -948,8 +1320,9 @@ public class OrToolsSolver implements ISolverBackend {
                .addStatement("final long startTime = $T.nanoTime()", System.class)
                .addStatement("final $T model = new $T()", CpModel.class, CpModel.class)
                .addStatement("final $1T encoder = new $1T()", StringEncoding.class)
-               .addStatement("final $1T o = new $1T(model, encoder, $2L)", Ops.class,
-                             configUseFullReifiedConstraintsForJoinPreferences)
+               .addStatement("final $1T o = new $1T(model, encoder, $2L, $3L)", Ops.class,
+                             configUseFullReifiedConstraintsForJoinPreferences,
+                             configUseBinPackingForCapacityConstraints)
                .addCode("\n");
     }
 
@@ -1001,6 +1374,10 @@ public class OrToolsSolver implements ISolverBackend {
                                 output.addStatement("obj[0] = solver.value($L[i])",
                                         fieldNameStr(tableName, field.getName()));
                             }
+                            if (configUseSolutionHints) {
+                                output.addStatement("hints.record($S, $L.get(i), obj[0])",
+                                                    tableName + "." + field.getName(), hintKeysStr(tableName));
+                            }
                             output.addStatement("tmp$L.get(i).from(obj, $S)", i, field.getName());
                             output.endControlFlow();
                             output.addStatement("result.put(context.getTable($S), tmp$L)", tableName, i);
@@ -1009,6 +1386,9 @@ public class OrToolsSolver implements ISolverBackend {
                 );
             }
         }
+        if (configUseSolutionHints) {
+            output.addStatement("hints.completeSolve()");
+        }
         output.addStatement("return result");
         output.endControlFlow();
         output.addStatement("throw new $T($S + status)", ModelException.class, "Could not solve ");
@@ -1018,6 +1398,14 @@ public class OrToolsSolver implements ISolverBackend {
         return CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, tableName);
     }
 
+    private static String hintKeysStr(final String tableName) {
+        return tableNameStr(tableName) + "HintKeys";
+    }
+
+    private static boolean hasControllableColumns(final IRTable table) {
+        return table.getIRColumns().values().stream().anyMatch(IRColumn::isControllable);
+    }
+
     private static String fieldNameStr(final String tableName, final String fieldName) {
         return String.format("%s%s", CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, tableName),
                                      CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, fieldName));
@@ -1054,50 +1442,30 @@ public class OrToolsSolver implements ISolverBackend {
         return String.format("%s", CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, tableName));
     }
 
-    // TODO: need to perform compilation entirely in memory
-    private List<String> compile(final TypeSpec spec) {
+    private List<String> compile(final TypeSpec spec, @Nullable final String cacheKey) {
         final JavaFile javaFile = JavaFile.builder("org.dcm.backend", spec).build();
-        LOG.info("Generating Java or-tools code: {}\n", javaFile.toString());
-
-        // Compile Java code. This steps requires an SDK, and a JRE will not suffice
-        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-        final Iterable<? extends JavaFileObject> compilationUnit = Collections.singleton(javaFile.toJavaFileObject());
-
-        try {
-            // Invoke SDK compiler
-            final Path path = Path.of("/tmp/compilerOutput");
-            final BufferedWriter fileWriter = Files.newBufferedWriter(path);
-            final Boolean call = compiler.getTask(fileWriter, fileManager, null,
-                    ImmutableList.of("-verbose", "-d", "/tmp/"), null, compilationUnit)
-                    .call();
-            if (!call) {
-                final List<String> strings = Files.readAllLines(path);
-                LOG.error("Compilation failed");
-                for (final String line: strings) {
-                    LOG.error("{}", line);
-                }
-                throw new RuntimeException();
-            }
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+        final String source = javaFile.toString();
+        LOG.info("Generating Java or-tools code: {}\n", source);
+        final Map<String, byte[]> classFiles = InMemoryCompiler.compile(javaFile.toJavaFileObject());
+        if (compiledBackendCache != null && cacheKey != null) {
+            compiledBackendCache.store(cacheKey, source, classFiles);
         }
+        loadBackend(classFiles);
+        return Collections.singletonList(source);
+    }
 
-        // Once compiled, load the generated class, save an instance of it to the generatedBackend method
-        // which we will invoke whenever we run the solver, and return the generated Java source to the caller.
+    /**
+     * Loads the compiled backend, and saves an instance of it to the generatedBackend field
+     * which we will invoke whenever we run the solver.
+     */
+    private void loadBackend(final Map<String, byte[]> classFiles) {
         try {
-            final File classesDir = new File(GENERATED_BACKEND_CLASS_FILE_PATH);
-            // Load and instantiate compiled class.
-            final URLClassLoader classLoader = URLClassLoader.newInstance(new URL[]{classesDir.toURI().toURL()});
-            // Loading the class
+            final ClassLoader classLoader = InMemoryCompiler.newClassLoader(classFiles);
             final Class<?> cls = Class.forName(String.format("org.dcm.backend.%s", GENERATED_BACKEND_NAME), true,
                                                classLoader);
             final Constructor<?> declaredConstructor = cls.getDeclaredConstructor();
             generatedBackend = (IGeneratedBackend) declaredConstructor.newInstance();
-            final StringWriter writer = new StringWriter();
-            javaFile.writeTo(writer);
-            return Collections.singletonList(writer.toString());
-        } catch (final IOException | ClassNotFoundException | InstantiationException
+        } catch (final ClassNotFoundException | InstantiationException
                       | InvocationTargetException | NoSuchMethodException | IllegalAccessException e) {
             throw new RuntimeException(e);
         }
@@ -1137,6 +1505,40 @@ public class OrToolsSolver implements ISolverBackend {
         return inferType(expr);
     }
 
+    /**
+     * Returns the name of the tuple type that holds the given expressions. Fields that can never be null are
+     * stored unboxed.
+     */
+    private String tupleType(final List<? extends Expr> exprs) {
+        final List<String> fieldTypes = exprs.stream()
+                                             .map(e -> TupleGen.fieldType(inferType(e), isNonNull(e)))
+                                             .collect(Collectors.toList());
+        return tupleGen.getTupleType(fieldTypes).name;
+    }
+
+    /**
+     * Whether an expression is known to never evaluate to null. Columns are non-null if the database says so,
+     * or if they are computed by a view from non-null expressions.
+     */
+    private boolean isNonNull(final Expr expr) {
+        if (expr instanceof MonoidLiteral || expr instanceof BinaryOperatorPredicate
+            || expr instanceof UnaryOperator || expr instanceof IsNullPredicate
+            || expr instanceof IsNotNullPredicate || expr instanceof MonoidFunction) {
+            // These are evaluated to primitives in the generated code
+            return true;
+        }
+        if (expr instanceof ColumnIdentifier) {
+            final IRColumn field = ((ColumnIdentifier) expr).getField();
+            final String tableName = field.getIRTable().getName();
+            if (viewToFieldIndex.containsKey(tableName)) {
+                return viewNonNullFields.getOrDefault(tableName, Collections.emptySet()).contains(field.getName());
+            }
+            return !field.getIRTable().isViewTable() && field.getJooqField() != null
+                    && !field.getJooqField().getDataType().nullable();
+        }
+        return false;
+    }
+
     private void populateQualifiersByVarType(final MonoidComprehension comprehension, final QualifiersByType var,
                                              final QualifiersByType nonVar, final boolean skipAggregates) {
         comprehension.getQualifiers().forEach(
@@ -1190,9 +1592,11 @@ public class OrToolsSolver implements ISolverBackend {
                     context.enterScope(forBlock);
                     final String variableToAssignTo = exprToStr(columnArg, context);
                     context.leaveScope();
-                    final String parameter = extractListFromLoop(variableToAssignTo, context.currentScope(),
-                                                                forBlock,
-                                                                inferType(columnArg));
+                    // The domain is always passed as an array of encoded longs
+                    final String type = inferType(columnArg);
+                    final String arrayType = i == 1 && type.equals("Integer") ? "Long" : type;
+                    final String parameter = extractArrayFromLoop(variableToAssignTo, context.currentScope(),
+                                                                  forBlock, arrayType);
 
                     if (i == 0) { // vars
                         vars.add(parameter);
@@ -1212,9 +1616,8 @@ public class OrToolsSolver implements ISolverBackend {
         final String domainParameterStr = domain.iterator().next();
         final String demandsParameterStr = String.join(", ", demands);
         final String capacitiesParameterStr = String.join(", ", capacities);
-        block.addBody(CodeBlock.of("o.capacityConstraint($L, $L, $T.of($L), $T.of($L));",
-                                  varsParameterStr, domainParameterStr,
-                                  List.class, demandsParameterStr, List.class, capacitiesParameterStr));
+        block.addBody(CodeBlock.of("o.capacityConstraint($L, $L, new int[][]{$L}, new int[][]{$L});",
+                                  varsParameterStr, domainParameterStr, demandsParameterStr, capacitiesParameterStr));
         return block;
     }
 
@@ -1248,7 +1651,7 @@ public class OrToolsSolver implements ISolverBackend {
             // represented as a scalar product in or-tools
             if (node.getFunction().equals(MonoidFunction.Function.SUM)) {
                 return maybeOptimizeSumIntoScalarProduct(node.getArgument().get(0), context.currentScope(),
-                                                         forLoop, context);
+                                                         forLoop, context, linearContexts.contains(node));
             }
 
             context.enterScope(forLoop);
@@ -1259,8 +1662,13 @@ public class OrToolsSolver implements ISolverBackend {
             final String argumentType = inferType(node.getArgument().get(0));
             final boolean argumentIsIntVar = argumentType.equals("IntVar");
 
-            final String listOfProcessedItem =
-                    extractListFromLoop(processedArgument, context.currentScope(), forLoop, argumentType);
+            // Aggregates over numbers and variables take arrays, the remaining functions take lists
+            final boolean takesArray = node.getFunction() != MonoidFunction.Function.ALL_EQUAL
+                                        && node.getFunction() != MonoidFunction.Function.INCREASING
+                                        && hasArrayType(argumentType);
+            final String listOfProcessedItem = takesArray
+                    ? extractArrayFromLoop(processedArgument, context.currentScope(), forLoop, argumentType)
+                    : extractListFromLoop(processedArgument, context.currentScope(), forLoop, argumentType);
             String function;
             switch (node.getFunction()) {
                 case SUM:
@@ -1314,6 +1722,9 @@ public class OrToolsSolver implements ISolverBackend {
             final String type = inferType(node.getArgument());
             final String processedArgument = visit(node.getArgument(), context);
             Preconditions.checkArgument(!type.equals("IntVar"));
+            if (isNonNull(node.getArgument())) {
+                return apply("false", context);
+            }
             return apply(String.format("%s == null", processedArgument), context);
         }
 
@@ -1325,6 +1736,9 @@ public class OrToolsSolver implements ISolverBackend {
             final String type = inferType(node.getArgument());
             final String processedArgument = visit(node.getArgument(), context);
             Preconditions.checkArgument(!type.equals("IntVar"));
+            if (isNonNull(node.getArgument())) {
+                return apply("true", context);
+            }
             return apply(String.format("%s != null", processedArgument), context);
         }
 
@@ -1336,6 +1750,11 @@ public class OrToolsSolver implements ISolverBackend {
                 case NOT:
                     return apply(String.format("o.not(%s)", visit(node.getArgument(), context)), context);
                 case MINUS:
+                    if (inferType(node.getArgument()).equals("IntVar")) {
+                        linearContexts.add(node.getArgument());
+                        final String argument = Objects.requireNonNull(visit(node.getArgument(), context));
+                        return applyLinear(node, String.format("%s.times(-1)", toLinear(argument)), context);
+                    }
                     return apply(String.format("o.mult(-1, %s)", visit(node.getArgument(), context)), context);
                 case PLUS:
                     return apply(Objects.requireNonNull(visit(node.getArgument(), context)), context);
@@ -1349,13 +1768,53 @@ public class OrToolsSolver implements ISolverBackend {
         protected String visitBinaryOperatorPredicate(final BinaryOperatorPredicate node,
                                                       @Nullable final TranslationContext context) {
             Preconditions.checkNotNull(context);
+            final BinaryOperatorPredicate.Operator op = node.getOperator();
+            final String leftType = inferType(node.getLeft());
+            final String rightType = inferType(node.getRight());
+            final boolean isLinearOperation = isLinearOperation(op, leftType, rightType);
+            if (isLinearOperation && op == BinaryOperatorPredicate.Operator.ADD) {
+                // A chain of additions is summed in one go, instead of copying a growing expression per term
+                final List<Expr> addends = new ArrayList<>();
+                collectAddends(node, addends);
+                if (addends.size() > 2) {
+                    linearContexts.addAll(addends);
+                    final String terms = addends.stream()
+                            .map(addend -> toLinear(Objects.requireNonNull(visit(addend, context),
+                                                                           "Expr was null: " + addend)))
+                            .collect(Collectors.joining(", "));
+                    return applyLinear(node, String.format("o.linearSum(%s)", terms), context);
+                }
+            }
+            if (isLinearOperation) {
+                // Arithmetic on the operands can be passed on as linear expressions
+                linearContexts.add(node.getLeft());
+                linearContexts.add(node.getRight());
+            }
             final String left = Objects.requireNonNull(visit(node.getLeft(), context),
                                                        "Expr was null: " + node.getLeft());
             final String right = Objects.requireNonNull(visit(node.getRight(), context),
                                                         "Expr was null: " + node.getRight());
-            final BinaryOperatorPredicate.Operator op = node.getOperator();
-            final String leftType = inferType(node.getLeft());
-            final String rightType = inferType(node.getRight());
+
+            if (isLinearOperation) {
+                final String linearLeft = toLinear(left);
+                final String linearRight = toLinear(right);
+                switch (op) {
+                    case ADD:
+                        return applyLinear(node, String.format("%s.plus(%s)", linearLeft, linearRight), context);
+                    case SUBTRACT:
+                        return applyLinear(node, String.format("%s.minus(%s)", linearLeft, linearRight), context);
+                    case MULTIPLY:
+                        return leftType.equals("IntVar")
+                                ? applyLinear(node, String.format("%s.times(%s)", linearLeft, right), context)
+                                : applyLinear(node, String.format("%s.times(%s)", linearRight, left), context);
+                    default:
+                        // Comparisons only need to be generated over linear expressions if an operand is one
+                        if (linearResults.contains(left) || linearResults.contains(right)) {
+                            return apply(String.format("o.%s(%s, %s)", comparisonFunction(op), linearLeft,
+                                                       linearRight), context);
+                        }
+                }
+            }
 
             if (leftType.equals("IntVar") || rightType.equals("IntVar")) {
                 // We need to generate an IntVar.
@@ -1574,7 +2033,7 @@ public class OrToolsSolver implements ISolverBackend {
          * @return An intermediate variable name
          */
         protected String apply(final String expression, final TranslationContext context) {
-            return context.declareVariable(expression);
+            return propagateLinear(expression, context.declareVariable(expression));
         }
 
         /**
@@ -1587,7 +2046,49 @@ public class OrToolsSolver implements ISolverBackend {
          * @return An intermediate variable name
          */
         protected String apply(final String expression, final OutputIR.Block block, final TranslationContext context) {
-            return context.declareVariable(expression, block);
+            return propagateLinear(expression, context.declareVariable(expression, block));
+        }
+
+        /**
+         * Generates a linear expression for `node`, and materializes it as an IntVar unless `node` is consumed
+         * linearly.
+         *
+         * @param node the expression being translated
+         * @param linearExpression code that yields a LinearExpression for `node`
+         * @param context current context for translation
+         * @return An intermediate variable name
+         */
+        private String applyLinear(final Expr node, final String linearExpression,
+                                   final TranslationContext context) {
+            if (linearContexts.contains(node)) {
+                linearResults.add(linearExpression);
+                return apply(linearExpression, context);
+            }
+            return apply(String.format("o.toIntVar(%s)", linearExpression), context);
+        }
+
+        /**
+         * Flattens a tree of linear additions into its operands, from left to right.
+         */
+        private void collectAddends(final Expr expr, final List<Expr> addends) {
+            if (expr instanceof BinaryOperatorPredicate) {
+                final BinaryOperatorPredicate predicate = (BinaryOperatorPredicate) expr;
+                if (predicate.getOperator() == BinaryOperatorPredicate.Operator.ADD
+                        && isLinearOperation(predicate.getOperator(), inferType(predicate.getLeft()),
+                                             inferType(predicate.getRight()))) {
+                    collectAddends(predicate.getLeft(), addends);
+                    collectAddends(predicate.getRight(), addends);
+                    return;
+                }
+            }
+            addends.add(expr);
+        }
+
+        private String propagateLinear(final String expression, final String variableName) {
+            if (linearResults.contains(expression)) {
+                linearResults.add(variableName);
+            }
+            return variableName;
         }
 
         /**
@@ -1607,11 +2108,13 @@ public class OrToolsSolver implements ISolverBackend {
          * @param outerBlock the block within which the sum is being computed
          * @param forLoop the for loop block within which the arguments for the sum are extracted
          * @param context the current translation context
+         * @param linear whether the sum is consumed linearly, and can be returned as a LinearExpression
          * @return A variable that yields the result of the sum
          */
         private String maybeOptimizeSumIntoScalarProduct(final Expr node, final OutputIR.Block outerBlock,
                                                          final OutputIR.Block forLoop,
-                                                         final TranslationContext context) {
+                                                         final TranslationContext context,
+                                                         final boolean linear) {
             if (configTryScalarProductEncoding && node instanceof BinaryOperatorPredicate) {
                 final BinaryOperatorPredicate operation = (BinaryOperatorPredicate) node;
                 final BinaryOperatorPredicate.Operator op = operation.getOperator();
@@ -1622,10 +2125,12 @@ public class OrToolsSolver implements ISolverBackend {
                 // TODO: The multiply may not necessarily be the top level operation.
                 if (op.equals(BinaryOperatorPredicate.Operator.MULTIPLY)) {
                     if (leftType.equals("IntVar") && !rightType.equals("IntVar")) {
-                        return createTermsForScalarProduct(left, right, context, outerBlock, forLoop, rightType);
+                        return createTermsForScalarProduct(left, right, context, outerBlock, forLoop, rightType,
+                                                           linear);
                     }
                     if (rightType.equals("IntVar") && !leftType.equals("IntVar")) {
-                        return createTermsForScalarProduct(right, left, context, outerBlock, forLoop, leftType);
+                        return createTermsForScalarProduct(right, left, context, outerBlock, forLoop, leftType,
+                                                           linear);
                     }
                 }
             }
@@ -1634,9 +2139,13 @@ public class OrToolsSolver implements ISolverBackend {
             final String processedArgument = Objects.requireNonNull(visit(node, context.withEnterFunctionContext()));
             context.leaveScope();
             final String argumentType = inferType(node);
+            final String listOfProcessedItem = hasArrayType(argumentType)
+                    ? extractArrayFromLoop(processedArgument, context.currentScope(), forLoop, argumentType)
+                    : extractListFromLoop(processedArgument, context.currentScope(), forLoop, argumentType);
+            if (linear && argumentType.equals("IntVar")) {
+                return linearResult(CodeBlock.of("o.linearSum($L)", listOfProcessedItem).toString());
+            }
             final String function = argumentType.equals("IntVar") ? "sumV" : "sum";
-            final String listOfProcessedItem =
-                    extractListFromLoop(processedArgument, context.currentScope(), forLoop, argumentType);
             return CodeBlock.of("o.$L($L)", function, listOfProcessedItem).toString();
         }
 
@@ -1647,16 +2156,28 @@ public class OrToolsSolver implements ISolverBackend {
         private String createTermsForScalarProduct(final Expr variables, final Expr coefficients,
                                                    final TranslationContext context, final OutputIR.Block outerBlock,
                                                    final OutputIR.Block forLoop,
-                                                   final String coefficientsType) {
+                                                   final String coefficientsType,
+                                                   final boolean linear) {
             context.enterScope(forLoop);
             final String variablesItem = Objects.requireNonNull(visit(variables, context.withEnterFunctionContext()));
             final String coefficientsItem = Objects.requireNonNull(visit(coefficients,
                                                                          context.withEnterFunctionContext()));
             context.leaveScope();
+            if (!coefficientsType.equals("Integer")) {
+                final String listOfVariablesItem =
+                        extractListFromLoop(variablesItem, outerBlock, forLoop, "IntVar");
+                final String listOfCoefficientsItem =
+                        extractListFromLoop(coefficientsItem, outerBlock, forLoop, coefficientsType);
+                return CodeBlock.of("o.scalProd($L, $L)", listOfVariablesItem, listOfCoefficientsItem).toString();
+            }
             final String listOfVariablesItem =
-                    extractListFromLoop(variablesItem, outerBlock, forLoop, "IntVar");
+                    extractArrayFromLoop(variablesItem, outerBlock, forLoop, "IntVar");
             final String listOfCoefficientsItem =
-                    extractListFromLoop(coefficientsItem, outerBlock, forLoop, coefficientsType);
+                    extractArrayFromLoop(coefficientsItem, outerBlock, forLoop, coefficientsType);
+            if (linear) {
+                return linearResult(CodeBlock.of("o.linearScalProd($L, $L)", listOfVariablesItem,
+                                                 listOfCoefficientsItem).toString());
+            }
             return CodeBlock.of("o.scalProd($L, $L)", listOfVariablesItem, listOfCoefficientsItem).toString();
         }
     }
@@ -1703,6 +2224,117 @@ public class OrToolsSolver implements ISolverBackend {
     }
 
 
+    /**
+     * Like extractListFromLoop(), but collects the variable into a primitive array (or an array of IntVars)
+     * instead of a list of boxed values. Strings are collected in their encoded form.
+     *
+     * @param variableToExtract a variable name from within a block to extract out of a loop
+     * @param outerBlock the block outside the loop where the extracted array will be built
+     * @param innerBlock the block from which we want to extract an array of `variableToExtract` instances
+     * @param variableType the type of `variableToExtract`
+     * @return an expression that yields the extracted array
+     */
+    private String extractArrayFromLoop(final String variableToExtract, final OutputIR.Block outerBlock,
+                                        final OutputIR.Block innerBlock, final String variableType) {
+        final String arrayName = "arrayOf" + variableToExtract;
+        final Class<?> builderType;
+        final String element;
+        switch (variableType) {
+            case "Integer":
+                builderType = VectorBuilders.Ints.class;
+                element = variableToExtract;
+                break;
+            case "Long":
+                builderType = VectorBuilders.Longs.class;
+                element = variableToExtract;
+                break;
+            case "String":
+                builderType = VectorBuilders.Longs.class;
+                element = String.format("encoder.toLong(%s)", variableToExtract);
+                break;
+            case "IntVar":
+                builderType = VectorBuilders.IntVars.class;
+                element = variableToExtract;
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot extract an array of type " + variableType);
+        }
+        final String maybeGuessSize = innerBlock instanceof OutputIR.ForBlock ?
+                ((OutputIR.ForBlock) innerBlock).getSize() : "";
+        final boolean wasAdded = outerBlock.addHeader(statement("final $1T $2L = new $1T($3L)",
+                builderType, arrayName, maybeGuessSize));
+        if (wasAdded) {
+            innerBlock.addBody(statement("$L.add($L)", arrayName, element));
+        }
+        return arrayName + ".toArray()";
+    }
+
+    private String linearResult(final String expression) {
+        linearResults.add(expression);
+        return expression;
+    }
+
+    /**
+     * @return code that yields a LinearExpression for the given variable, constant or linear expression
+     */
+    private String toLinear(final String expression) {
+        return linearResults.contains(expression) ? expression : String.format("o.linear(%s)", expression);
+    }
+
+    /**
+     * Whether an operation over IntVars can be expressed as a linear expression (or a comparison of two).
+     */
+    private static boolean isLinearOperation(final BinaryOperatorPredicate.Operator op, final String leftType,
+                                             final String rightType) {
+        final Set<String> numericTypes = Set.of("IntVar", "Integer", "Long");
+        final boolean leftIsVar = leftType.equals("IntVar");
+        final boolean rightIsVar = rightType.equals("IntVar");
+        if (!numericTypes.contains(leftType) || !numericTypes.contains(rightType) || !(leftIsVar || rightIsVar)) {
+            return false;
+        }
+        switch (op) {
+            case ADD:
+            case SUBTRACT:
+            case EQUAL:
+            case NOT_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+                return true;
+            case MULTIPLY:
+                return leftIsVar != rightIsVar;
+            default:
+                return false;
+        }
+    }
+
+    private static String comparisonFunction(final BinaryOperatorPredicate.Operator op) {
+        switch (op) {
+            case EQUAL:
+                return "eq";
+            case NOT_EQUAL:
+                return "ne";
+            case LESS_THAN:
+                return "lt";
+            case LESS_THAN_OR_EQUAL:
+                return "leq";
+            case GREATER_THAN:
+                return "gt";
+            case GREATER_THAN_OR_EQUAL:
+                return "geq";
+            default:
+                throw new IllegalArgumentException("Not a comparison: " + op);
+        }
+    }
+
+    /**
+     * Whether aggregates over values of this type have array-based implementations in Ops.
+     */
+    private static boolean hasArrayType(final String variableType) {
+        return variableType.equals("Integer") || variableType.equals("Long") || variableType.equals("IntVar");
+    }
+
     private static class ContainsMonoidFunction extends MonoidVisitor<Boolean, Void> {
         boolean found = false;
 
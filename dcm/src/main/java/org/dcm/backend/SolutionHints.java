@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.IntVar;
+import org.jooq.Record;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Used by generated backends to hint CP-SAT with a known assignment for controllable columns, so that the solver
+ * starts its search from a (likely) feasible solution.
+ *
+ * A variable is hinted with the current value of its column if that value is not null. Otherwise, it is hinted with
+ * the value that the previous successful solve assigned to the same row. Rows are matched across solves by the values
+ * of their non-controllable columns. Values are kept in their decoded form, because string encodings are not stable
+ * across solves.
+ */
+public class SolutionHints {
+    // Column (TABLE.FIELD) -> row key -> value assigned by the solver
+    private Map<String, Map<List<Object>, Object>> previousSolution = new HashMap<>();
+    private Map<String, Map<List<Object>, Object>> currentSolution = new HashMap<>();
+
+    /**
+     * @return the key of every row, made up of the values of the given (non-controllable) fields
+     */
+    public static List<List<Object>> rowKeys(final List<? extends Record> rows, final String... fields) {
+        final List<List<Object>> keys = new ArrayList<>(rows.size());
+        for (final Record row : rows) {
+            final List<Object> key = new ArrayList<>(fields.length);
+            for (final String field : fields) {
+                key.add(row.get(field));
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Hints a variable with the current value of its column, or the value from the previous solve, if any.
+     */
+    public void hint(final CpModel model, final StringEncoding encoder, final IntVar var, final String column,
+                     final List<Object> rowKey, @Nullable final Object currentValue) {
+        Object value = currentValue;
+        if (value == null) {
+            final Map<List<Object>, Object> previousValues = previousSolution.get(column);
+            value = previousValues == null ? null : previousValues.get(rowKey);
+        }
+        if (value instanceof String) {
+            model.addHint(var, encoder.toLong((String) value));
+        } else if (value instanceof Number) {
+            model.addHint(var, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            model.addHint(var, (Boolean) value ? 1 : 0);
+        }
+    }
+
+    /**
+     * Records the value assigned to a row by the current solve.
+     */
+    public void record(final String column, final List<Object> rowKey, @Nullable final Object value) {
+        currentSolution.computeIfAbsent(column, k -> new HashMap<>()).put(rowKey, value);
+    }
+
+    /**
+     * Makes the values recorded by the current solve available as hints for the next one.
+     */
+    public void completeSolve() {
+        previousSolution = currentSolution;
+        currentSolution = new HashMap<>();
+    }
+}
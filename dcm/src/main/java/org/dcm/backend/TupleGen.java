@@ -6,12 +6,16 @@
 
 package org.dcm.backend;
 
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.javapoet.TypeVariableName;
 
 import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -19,27 +23,52 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 class TupleGen {
-    private final Map<Integer, TypeSpec> tuples = new ConcurrentHashMap<>();
+    private static final Map<String, String> PRIMITIVE_TYPES = Map.of("Integer", "int",
+                                                                      "Long", "long",
+                                                                      "Boolean", "boolean",
+                                                                      "Float", "float");
+    private final Map<List<String>, TypeSpec> tuples = new ConcurrentHashMap<>();
 
     Collection<TypeSpec> getAllTupleTypes() {
         return tuples.values();
     }
 
-    TypeSpec getTupleType(final int numRecords) {
-        return tuples.computeIfAbsent(numRecords, this::tupleGen);
+    /**
+     * Returns a tuple type whose fields have the given Java types, creating it if required.
+     */
+    TypeSpec getTupleType(final List<String> fieldTypes) {
+        return tuples.computeIfAbsent(List.copyOf(fieldTypes), this::tupleGen);
     }
 
     /**
-     * Create a tuple type with 'numFields' entries. Results in a generic "plain old java object"
-     * with a getter per field.
+     * Returns the Java type to use for a tuple field holding values of a (boxed) type. Values that can never
+     * be null are stored unboxed.
      */
-    TypeSpec tupleGen(final int numFields) {
-        final TypeSpec.Builder classBuilder = TypeSpec.classBuilder("Tuple" + numFields)
+    static String fieldType(final String type, final boolean nonNull) {
+        return nonNull ? PRIMITIVE_TYPES.getOrDefault(type, type) : type;
+    }
+
+    /**
+     * Create a tuple type with one field per entry in 'fieldTypes'. Results in a "plain old java object"
+     * with a getter per field, named after the types of its fields. Primitive fields are hashed and
+     * compared without boxing.
+     */
+    TypeSpec tupleGen(final List<String> fieldTypes) {
+        final int numFields = fieldTypes.size();
+        final String className = String.format("Tuple%d_%s", numFields, String.join("_", fieldTypes));
+        final TypeSpec.Builder classBuilder = TypeSpec.classBuilder(className)
                 .addModifiers(Modifier.FINAL, Modifier.PRIVATE, Modifier.STATIC);
         final MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
                 .addModifiers(Modifier.PRIVATE);
+        final MethodSpec.Builder hashCode = MethodSpec.methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addStatement("int result = 1");
+        final List<CodeBlock> fieldComparisons = new ArrayList<>(numFields);
         for (int i = 0; i < numFields; i++) {
-            final TypeVariableName type = TypeVariableName.get("T" + i);
+            final String fieldType = fieldTypes.get(i);
+            final TypeName type = typeName(fieldType);
             // Add parameter to constructor
             constructor.addParameter(type, "t" + i, Modifier.FINAL)
                     .addStatement("this.$1L = $1L", "t" + i); // assign parameters to fields
@@ -51,9 +80,18 @@ class TupleGen {
                     .build();
 
             // Add field and getter to class
-            classBuilder.addTypeVariable(type)
-                    .addField(type, "t" + i, Modifier.PRIVATE, Modifier.FINAL)
+            classBuilder.addField(type, "t" + i, Modifier.PRIVATE, Modifier.FINAL)
                     .addMethod(getter);
+
+            if (type.isPrimitive()) {
+                hashCode.addStatement("result = 31 * result + $T.hashCode(t$L)", type.box(), i);
+                fieldComparisons.add(type.equals(TypeName.FLOAT)
+                                        ? CodeBlock.of("$T.compare(this.t$L, that.t$L) == 0", Float.class, i, i)
+                                        : CodeBlock.of("this.t$L == that.t$L", i, i));
+            } else {
+                hashCode.addStatement("result = 31 * result + $T.hashCode(t$L)", Objects.class, i);
+                fieldComparisons.add(CodeBlock.of("$T.equals(this.t$L, that.t$L)", Objects.class, i, i));
+            }
         }
 
         final String commaSeparatedParameters = IntStream.range(0, numFields)
@@ -70,12 +108,7 @@ class TupleGen {
                 .returns(String.class)
                 .addStatement("return String.format(($S), $L)", formatString, commaSeparatedParameters)
                 .build();
-        final MethodSpec hashCodeMethod = MethodSpec.methodBuilder("hashCode")
-                .addAnnotation(Override.class)
-                .addModifiers(Modifier.PUBLIC)
-                .returns(int.class)
-                .addStatement("return $T.hash($L)", Objects.class, commaSeparatedParameters)
-                .build();
+        final MethodSpec hashCodeMethod = hashCode.addStatement("return result").build();
         final MethodSpec.Builder equals = MethodSpec.methodBuilder("equals")
                 .addAnnotation(Override.class)
                 .addModifiers(Modifier.PUBLIC)
@@ -84,16 +117,12 @@ class TupleGen {
                 .beginControlFlow("if (other == this)")
                 .addStatement("return true")
                 .endControlFlow()
-                .beginControlFlow("if (!(other instanceof Tuple$L))", numFields)
+                .beginControlFlow("if (!(other instanceof $L))", className)
                 .addStatement("return false")
                 .endControlFlow()
-                .addStatement("final Tuple$1L that = (Tuple$1L) other", numFields)
+                .addStatement("final $1L that = ($1L) other", className)
                 .addCode("return ");
-
-        final String returnValue = IntStream.range(0, numFields)
-                .mapToObj(i -> String.format("this.value%s().equals(that.value%s())", i, i))
-                .collect(Collectors.joining(" && "));
-        equals.addCode("$L;\n", returnValue);
+        equals.addCode("$L;\n", CodeBlock.join(fieldComparisons, " && "));
         final MethodSpec equalsMethod = equals.build();
         return classBuilder.addMethod(constructor.build())
                 .addMethod(toStringMethod)
@@ -101,4 +130,20 @@ class TupleGen {
                 .addMethod(equalsMethod)
                 .build();
     }
+
+    private static TypeName typeName(final String type) {
+        switch (type) {
+            case "int":
+                return TypeName.INT;
+            case "long":
+                return TypeName.LONG;
+            case "boolean":
+                return TypeName.BOOLEAN;
+            case "float":
+                return TypeName.FLOAT;
+            default:
+                // Reference types are emitted by their simple names, which the generated class imports
+                return TypeVariableName.get(type);
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm.backend;
+
+import com.google.ortools.sat.IntVar;
+
+import java.util.Arrays;
+
+/**
+ * Growable arrays used by generated code to collect the arguments of aggregates within loops, without boxing
+ * them into lists. When the loop's size is known up front and every iteration adds an element, toArray()
+ * returns the backing array as is.
+ */
+public final class VectorBuilders {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private VectorBuilders() {
+    }
+
+    public static final class Ints {
+        private int[] values;
+        private int size = 0;
+
+        public Ints() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Ints(final int capacity) {
+            this.values = new int[capacity];
+        }
+
+        public void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        public int[] toArray() {
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    }
+
+    public static final class Longs {
+        private long[] values;
+        private int size = 0;
+
+        public Longs() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Longs(final int capacity) {
+            this.values = new long[capacity];
+        }
+
+        public void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        public long[] toArray() {
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    }
+
+    public static final class IntVars {
+        private IntVar[] values;
+        private int size = 0;
+
+        public IntVars() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public IntVars(final int capacity) {
+            this.values = new IntVar[capacity];
+        }
+
+        public void add(final IntVar value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        public IntVar[] toArray() {
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class IRColumnTest {
+
+    @Test
+    public void testRenderedValues() {
+        final IRColumn intColumn = new IRColumn(null, null, IRColumn.FieldType.INT, "c1");
+        intColumn.setValues(Arrays.asList(1, null, 3L));
+        assertEquals(List.of("1", "null", "3"), intColumn.getValues());
+
+        final IRColumn stringColumn = new IRColumn(null, null, IRColumn.FieldType.STRING, "c2");
+        stringColumn.setValues(Arrays.asList("a", "b", "a", null));
+        assertEquals(List.of("\"a\"", "\"b\"", "\"a\"", "\"null\""), stringColumn.getValues());
+
+        final IRColumn boolColumn = new IRColumn(null, null, IRColumn.FieldType.BOOL, "c3");
+        boolColumn.setValues(List.of(true, false));
+        assertEquals(List.of("true", "false"), boolColumn.getValues());
+    }
+
+    @Test
+    public void testUpdatesReplaceValues() {
+        final IRColumn column = new IRColumn(null, null, IRColumn.FieldType.INT, "c1");
+        column.setValues(List.of(1, 2, 3, 4));
+        assertEquals(List.of("1", "2", "3", "4"), column.getValues());
+
+        // The string rendering is recomputed after an update
+        column.setValues(List.of(5));
+        assertEquals(List.of("5"), column.getValues());
+
+        column.setValues(List.of());
+        assertEquals(List.of(), column.getValues());
+    }
+
+    @Test
+    public void testDecimalsKeepTheirPrecision() {
+        final BigDecimal value = new BigDecimal("0.1000000000000000000001");
+        final IRColumn column = new IRColumn(null, DSL.field("c1", SQLDataType.DECIMAL(30, 22)),
+                                             IRColumn.FieldType.FLOAT, "c1");
+        column.setValues(Arrays.asList(value, null));
+        assertEquals(List.of("0.1000000000000000000001", "null"), column.getValues());
+    }
+}
@@ -11,24 +11,37 @@ import com.google.common.collect.Sets;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import org.dcm.backend.MinizincSolver;
 import org.dcm.backend.OrToolsSolver;
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.jooq.DSLContext;
 import org.jooq.Record;
 import org.jooq.Result;
 import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static org.jooq.impl.DSL.using;
@@ -106,6 +119,544 @@ public class ModelTest {
         assertEquals(2, fetch.get(3).get("CONTROLLABLE__C3"));
     }
 
+    @ParameterizedTest
+    @MethodSource("solvers")
+    public void incrementalUpdateTest(final SolverConfig solver) {
+        final String modelName = "incrementalUpdateTest";
+        // Otherwise, changes are never tracked and every table is re-fetched in full
+        assertTrue(H2Transactions.isSupported());
+
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, c2 integer, controllable__c3 integer, primary key (c1))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c3_equals_c2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c3 = c2;"
+        );
+
+        final Model model = buildModel(conn, solver, views, modelName);
+        model.enableIncrementalUpdates();
+
+        conn.execute("insert into t1 values (1, 10, 0)");
+        conn.execute("insert into t1 values (2, 20, 0)");
+        conn.execute("insert into t1 values (3, 30, 0)");
+
+        model.updateData();
+        final Result<? extends Record> first = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(3, first.size());
+        assertEquals(Set.of(10, 20, 30), Set.copyOf(first.getValues("CONTROLLABLE__C3")));
+
+        // only these changes should be applied on the next refresh
+        conn.execute("update t1 set c2 = 25 where c1 = 2");
+        conn.execute("delete from t1 where c1 = 3");
+        conn.execute("insert into t1 values (4, 40, 0)");
+        conn.execute("update t1 set c1 = 5 where c1 = 1");
+
+        model.updateData();
+        final Result<? extends Record> second = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(3, second.size());
+        assertEquals(Set.of(5, 2, 4), Set.copyOf(second.getValues("C1")));
+        assertEquals(Set.of(10, 25, 40), Set.copyOf(second.getValues("CONTROLLABLE__C3")));
+
+        // changes that are rolled back should never be seen
+        assertThrows(IllegalStateException.class, () -> conn.transaction(configuration -> {
+            DSL.using(configuration).execute("insert into t1 values (7, 70, 0)");
+            DSL.using(configuration).execute("update t1 set c2 = 45 where c1 = 4");
+            DSL.using(configuration).execute("delete from t1 where c1 = 2");
+            throw new IllegalStateException("rollback");
+        }));
+        model.updateData();
+        final Result<? extends Record> afterRollback = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(Set.of(5, 2, 4), Set.copyOf(afterRollback.getValues("C1")));
+        assertEquals(Set.of(10, 25, 40), Set.copyOf(afterRollback.getValues("CONTROLLABLE__C3")));
+
+        // reverting to full re-fetches should see the same data
+        model.disableIncrementalUpdates();
+        conn.execute("insert into t1 values (6, 60, 0)");
+        model.updateData();
+        final Result<? extends Record> third = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(Set.of(10, 25, 40, 60), Set.copyOf(third.getValues("CONTROLLABLE__C3")));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void reuseInputOnlyViewsTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, controllable__c2 integer, primary key (c1))");
+        conn.execute("create table t2(c1 integer, c2 integer, primary key (c1))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW large_t2 AS " +
+                "SELECT c1 FROM t2 WHERE c2 > 5;" +
+
+                "CREATE VIEW constraint_in_large_t2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c2 in (select c1 from large_t2);"
+        );
+
+        final OrToolsSolver orToolsSolver = new OrToolsSolver.Builder().setReuseInputOnlyViews(true).build();
+        final Model model = Model.buildModel(conn, orToolsSolver, views);
+        model.enableIncrementalUpdates();
+
+        conn.execute("insert into t2 values (1, 10)");
+        conn.execute("insert into t2 values (2, 1)");
+        conn.execute("insert into t2 values (3, 10)");
+        conn.execute("insert into t1 values (1, 0)");
+        conn.execute("insert into t1 values (2, 0)");
+        model.updateData();
+        final Result<? extends Record> first = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(2, first.size());
+        first.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of(1, 3).contains(v)));
+
+        // t2 is unchanged, so large_t2 is reused
+        conn.execute("insert into t1 values (3, 0)");
+        model.updateData();
+        final Result<? extends Record> second = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(3, second.size());
+        second.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of(1, 3).contains(v)));
+
+        // t2 changed, so large_t2 has to be recomputed
+        conn.execute("update t2 set c2 = 10 where c1 = 2");
+        conn.execute("delete from t2 where c1 = 1");
+        model.updateData();
+        final Result<? extends Record> third = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(3, third.size());
+        third.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of(2, 3).contains(v)));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void solutionHintsTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, controllable__c2 varchar(36), primary key (c1))");
+        conn.execute("create table t2(name varchar(36), primary key (name))");
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c2 in (select name from t2);"
+        );
+
+        final OrToolsSolver orToolsSolver = new OrToolsSolver.Builder().setUseSolutionHints(true).build();
+        final Model model = Model.buildModel(conn, orToolsSolver, views);
+        for (int i = 1; i <= 5; i++) {
+            conn.execute(String.format("insert into t2 values ('n%s')", i));
+        }
+        // Hints from current values, including ones that violate the constraints, and no hints for null values
+        conn.execute("insert into t1 values (1, 'n4')");
+        conn.execute("insert into t1 values (2, 'n7')");
+        conn.execute("insert into t1 values (3, null)");
+        model.updateData();
+        final Result<? extends Record> first = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(3, first.size());
+        first.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of("n1", "n2", "n3", "n4", "n5").contains(v)));
+
+        // Hints from the previous solution, for rows that are matched and rows that are new
+        conn.execute("update t1 set controllable__c2 = null");
+        conn.execute("insert into t1 values (4, null)");
+        conn.execute("delete from t2 where name = 'n4'");
+        model.updateData();
+        final Result<? extends Record> second = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(4, second.size());
+        second.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of("n1", "n2", "n3", "n5").contains(v)));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void variableDomainsTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table t2(c1 integer, primary key (c1))");
+        conn.execute("create table t3(c1 integer, name varchar(36), primary key (c1))");
+        conn.execute("create table t1(c1 integer, controllable__c2 integer, controllable__c3 varchar(36), " +
+                     "primary key (c1), foreign key (controllable__c2) references t2(c1))");
+
+        // Both views only restrict the values of controllable columns, and are folded into the variable domains
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c2 in (select c1 from t3);" +
+
+                "CREATE VIEW constraint_c3 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c3 = 'n2' and controllable__c3 in (select name from t3);"
+        );
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+        for (int i = 1; i <= 3; i++) {
+            conn.execute(String.format("insert into t2 values (%d)", i));
+            conn.execute(String.format("insert into t3 values (%d, 'n%d')", i + 1, i + 1));
+        }
+        conn.execute("insert into t1 values (1, null, null)");
+        conn.execute("insert into t1 values (2, null, null)");
+        model.updateData();
+        final Result<? extends Record> results = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(2, results.size());
+        results.getValues("CONTROLLABLE__C2").forEach(v -> assertTrue(Set.of(2, 3).contains(v)));
+        results.getValues("CONTROLLABLE__C3").forEach(v -> assertEquals("n2", v));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void compiledBackendCacheTest(@TempDir final Path cacheDir) throws IOException {
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, controllable__c2 integer, primary key (c1))");
+        conn.execute("insert into t1 values (1, 0)");
+        conn.execute("insert into t1 values (2, 0)");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c2 = c1 + 5;"
+        );
+        final List<String> otherViews = toListOfViews("" +
+                "CREATE VIEW constraint_c2 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c2 = c1 + 6;"
+        );
+
+        for (int i = 0; i < 2; i++) {
+            final OrToolsSolver orToolsSolver = new OrToolsSolver.Builder()
+                    .setCompiledBackendCacheDirectory(cacheDir.toString()).build();
+            final Model model = Model.buildModel(conn, orToolsSolver, views);
+            model.updateData();
+            final Result<? extends Record> results = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+            assertEquals(Set.of(6, 7), Set.copyOf(results.getValues("CONTROLLABLE__C2")));
+            // The second model re-uses the entry compiled for the first one
+            try (final Stream<Path> entries = Files.list(cacheDir)) {
+                assertEquals(1, entries.count());
+            }
+        }
+
+        final OrToolsSolver orToolsSolver = new OrToolsSolver.Builder()
+                .setCompiledBackendCacheDirectory(cacheDir.toString()).build();
+        final Model model = Model.buildModel(conn, orToolsSolver, otherViews);
+        model.updateData();
+        final Result<? extends Record> results = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(Set.of(7, 8), Set.copyOf(results.getValues("CONTROLLABLE__C2")));
+        try (final Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(2, entries.count());
+        }
+
+        // Only the nullability of a column differs, which changes the generated tuple types
+        final DSLContext nonNullConn = setup();
+        nonNullConn.execute("create table t1(c1 integer, controllable__c2 integer not null, primary key (c1))");
+        nonNullConn.execute("insert into t1 values (1, 0)");
+        final OrToolsSolver nonNullSolver = new OrToolsSolver.Builder()
+                .setCompiledBackendCacheDirectory(cacheDir.toString()).build();
+        final Model nonNullModel = Model.buildModel(nonNullConn, nonNullSolver, views);
+        nonNullModel.updateData();
+        final Result<? extends Record> nonNullResults =
+                nonNullModel.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(Set.of(6), Set.copyOf(nonNullResults.getValues("CONTROLLABLE__C2")));
+        try (final Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(3, entries.count());
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void concurrentCompilationTest() throws InterruptedException, ExecutionException {
+        final int numModels = 4;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numModels);
+        try {
+            final List<Future<Set<Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < numModels; i++) {
+                final int offset = i;
+                futures.add(executorService.submit(() -> {
+                    final DSLContext conn = setup();
+                    conn.execute("create table t1(c1 integer, controllable__c2 integer, primary key (c1))");
+                    conn.execute("insert into t1 values (1, 0)");
+                    // Each model generates a different backend, all of which share a class name
+                    final List<String> views = toListOfViews("" +
+                            "CREATE VIEW constraint_c2 AS " +
+                            "SELECT * FROM t1 " +
+                            "where controllable__c2 = c1 + " + offset + ";"
+                    );
+                    final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+                    model.updateData();
+                    return Set.copyOf(model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1")
+                                           .getValues("CONTROLLABLE__C2"));
+                }));
+            }
+            for (int i = 0; i < numModels; i++) {
+                assertEquals(Set.of(1 + i), futures.get(i).get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void groupByNullableAndNonNullColumnsTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, c2 integer not null, c3 integer, " +
+                     "controllable__c4 integer, primary key (c1))");
+        conn.execute("insert into t1 values (1, 1, 10, 0)");
+        conn.execute("insert into t1 values (2, 1, null, 0)");
+        conn.execute("insert into t1 values (3, 2, 30, 0)");
+        conn.execute("insert into t1 values (4, 2, 30, 0)");
+
+        // c2 is stored unboxed in the generated tuples, while c3 is not
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW groups AS " +
+                "SELECT c2, c3, count(c1) as total FROM t1 " +
+                "WHERE c2 is not null and c3 is not null " +
+                "GROUP BY c2, c3;" +
+
+                "CREATE VIEW constraint_c4 AS " +
+                "SELECT * FROM t1 JOIN groups " +
+                "     ON t1.c2 = groups.c2 " +
+                "WHERE controllable__c4 = groups.total;"
+        );
+
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+        model.updateData();
+        final Result<? extends Record> results = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(4, results.size());
+        for (final Record record : results) {
+            final int c1 = record.get("C1", Integer.class);
+            assertEquals(c1 <= 2 ? 1 : 2, record.get("CONTROLLABLE__C4", Integer.class));
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void fetchValuesAcrossRoundsTest() {
+        final DSLContext conn = setup();
+        // c6 holds values outside of the int range, and is not tied to the controllable column
+        conn.execute("create table t1(c1 integer, c2 varchar(10), c3 boolean, c4 integer, " +
+                     "controllable__c5 integer, c6 bigint, primary key (c1))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c5 AS " +
+                "SELECT * FROM t1 " +
+                "where controllable__c5 = c1 + 1;"
+        );
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+
+        conn.execute("insert into t1 values (1, 'a', true, null, 0, 10000000000)");
+        conn.execute("insert into t1 values (2, null, false, 5, 0, null)");
+        model.updateData();
+        final Result<? extends Record> first = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(2, first.size());
+        for (final Record record : first) {
+            final int c1 = record.get("C1", Integer.class);
+            assertEquals(c1 == 2 ? 5 : null, record.get("C4"));
+            assertEquals(c1 == 2 ? null : "a", record.get("C2"));
+            assertEquals(c1 != 2, record.get("C3"));
+            assertEquals(c1 == 2 ? null : 10000000000L, record.get("C6"));
+            assertEquals(c1 + 1, record.get("CONTROLLABLE__C5"));
+        }
+
+        // Fewer rows than the previous round
+        conn.execute("delete from t1 where c1 = 1");
+        model.updateData();
+        final Result<? extends Record> second = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(1, second.size());
+        assertEquals(3, second.get(0).get("CONTROLLABLE__C5"));
+
+        // More rows than the previous round
+        for (int i = 3; i < 40; i++) {
+            conn.execute(String.format("insert into t1 values (%d, 'b', true, %d, 0, %d)", i, i, 10000000000L * i));
+        }
+        model.updateData();
+        final Result<? extends Record> third = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(38, third.size());
+        for (final Record record : third) {
+            assertEquals(record.get("C1", Integer.class) + 1, record.get("CONTROLLABLE__C5"));
+            if (record.get("C1", Integer.class) > 2) {
+                assertEquals(10000000000L * record.get("C1", Integer.class), record.get("C6"));
+            }
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void parallelFetchTest() {
+        // Each table is fetched over its own pooled connection
+        final JdbcConnectionPool pool =
+                JdbcConnectionPool.create("jdbc:h2:mem:parallelFetchTest;DB_CLOSE_DELAY=-1", "", "");
+        try {
+            final DSLContext conn = using(pool, SQLDialect.H2);
+            conn.execute("create table t1(c1 integer, controllable__c2 integer, primary key (c1))");
+            conn.execute("create table t2(c1 integer, c2 integer, primary key (c1))");
+            conn.execute("create table t3(c1 integer, c2 integer, primary key (c1))");
+
+            final List<String> views = toListOfViews("" +
+                    "CREATE VIEW constraint_c2 AS " +
+                    "SELECT * FROM t1 " +
+                    "where controllable__c2 in (select c2 from t2) " +
+                    "and controllable__c2 not in (select c2 from t3);"
+            );
+            final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+            model.enableParallelFetch(3);
+
+            conn.execute("insert into t1 values (1, 0)");
+            conn.execute("insert into t1 values (2, 0)");
+            conn.execute("insert into t2 values (1, 10)");
+            conn.execute("insert into t2 values (2, 20)");
+            conn.execute("insert into t3 values (1, 10)");
+            model.updateData();
+            assertEquals(Set.of("T1", "T2", "T3"), model.getLastFetchTimesNanos().keySet());
+            final Result<? extends Record> first = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+            assertEquals(List.of(20, 20), first.getValues("CONTROLLABLE__C2"));
+
+            conn.execute("delete from t3");
+            conn.execute("insert into t3 values (1, 20)");
+            model.updateData();
+            final Result<? extends Record> second = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+            assertEquals(List.of(10, 10), second.getValues("CONTROLLABLE__C2"));
+            model.disableParallelFetch();
+        } finally {
+            pool.dispose();
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void keyedWriteBackTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table parent(id integer, primary key (id))");
+        // The updated column lets us check which rows were written to
+        conn.execute("create table child(c1 integer, c2 varchar(10), controllable__pid integer, " +
+                     "updated boolean default false on update true, primary key (c1), " +
+                     "foreign key (controllable__pid) references parent(id))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_pid AS " +
+                "SELECT * FROM child " +
+                "where controllable__pid = c1;"
+        );
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+
+        for (int i = 1; i <= 4; i++) {
+            conn.execute(String.format("insert into parent values (%d)", i));
+        }
+        conn.execute("insert into child(c1, c2, controllable__pid) values (1, 'a', 1)");
+        conn.execute("insert into child(c1, c2, controllable__pid) values (2, 'b', 1)");
+        conn.execute("insert into child(c1, c2, controllable__pid) values (3, 'c', 1)");
+        model.updateData();
+        model.solveModel();
+
+        final Result<Record> rows = conn.selectFrom("child").orderBy(DSL.field("c1")).fetch();
+        assertEquals(3, rows.size());
+        for (final Record row : rows) {
+            final int c1 = row.get("C1", Integer.class);
+            assertEquals(c1, row.get("CONTROLLABLE__PID", Integer.class));
+            assertEquals(List.of("a", "b", "c").get(c1 - 1), row.get("C2"));
+            // Only rows whose controllable columns changed are written back
+            assertEquals(c1 != 1, row.get("UPDATED"));
+        }
+
+        // Solving again leaves the table untouched
+        conn.execute("update child set updated = false");
+        model.updateData();
+        model.solveModel();
+        assertEquals(0, conn.fetchCount(conn.selectFrom("child").where("updated = true")));
+        assertEquals(3, conn.fetchCount(conn.selectFrom("child")));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void keylessWriteBackWithForeignKeysTest() {
+        final DSLContext conn = setup();
+        // Without a primary key, rows of parent are matched by id and updated in place
+        conn.execute("create table parent(id integer not null, controllable__c2 integer, unique (id))");
+        conn.execute("create table child(c1 integer, pid integer, primary key (c1), " +
+                     "foreign key (pid) references parent(id))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c2 AS " +
+                "SELECT * FROM parent " +
+                "where controllable__c2 = id;"
+        );
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+
+        for (int i = 1; i <= 3; i++) {
+            conn.execute(String.format("insert into parent values (%d, 0)", i));
+            conn.execute(String.format("insert into child values (%d, %d)", i, i));
+        }
+        model.updateData();
+        model.solveModel();
+
+        final Result<Record> rows = conn.selectFrom("parent").fetch();
+        assertEquals(3, rows.size());
+        rows.forEach(row -> assertEquals(row.get("ID"), row.get("CONTROLLABLE__C2")));
+        assertEquals(3, conn.fetchCount(conn.selectFrom("child")));
+
+        // The foreign key is still enforced
+        assertThrows(DataAccessException.class, () -> conn.execute("insert into child values (4, 4)"));
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = OrToolsSolver.OR_TOOLS_LIB_ENV, matches = ".*libjniortools.*")
+    public void keylessWriteBackWithIdenticalRowsTest() {
+        final DSLContext conn = setup();
+        conn.execute("create table slots(id integer, primary key (id))");
+        conn.execute("create table t(c1 integer, controllable__c2 integer)");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_domain AS " +
+                "SELECT * FROM t " +
+                "where controllable__c2 in (select id from slots);" +
+
+                "CREATE VIEW constraint_distinct AS " +
+                "SELECT * FROM t " +
+                "group by c1 having all_different(controllable__c2) = true;"
+        );
+        final Model model = Model.buildModel(conn, new OrToolsSolver.Builder().build(), views);
+
+        for (int i = 1; i <= 3; i++) {
+            conn.execute(String.format("insert into slots values (%d)", i));
+            conn.execute("insert into t values (1, 1)");
+        }
+        conn.execute("insert into t values (2, 1)");
+        model.updateData();
+        model.solveModel();
+
+        // The identical rows are assigned different values, so they are replaced rather than updated in place
+        assertEquals(List.of(1, 2, 3), conn.select(DSL.field("controllable__c2", Integer.class))
+                                           .from(DSL.table("t"))
+                                           .where(DSL.field("c1").eq(1))
+                                           .orderBy(DSL.field("controllable__c2"))
+                                           .fetch(0, Integer.class));
+        assertEquals(4, conn.fetchCount(conn.selectFrom("t")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("solvers")
+    public void equiJoinWithDuplicateAndNullKeysTest(final SolverConfig solver) {
+        final String modelName = "equiJoinWithDuplicateAndNullKeysTest";
+
+        final DSLContext conn = setup();
+        conn.execute("create table t1(c1 integer, c2 integer, controllable__c3 integer, primary key (c1))");
+        conn.execute("create table t2(c1 integer, c2 integer, primary key (c1))");
+
+        final List<String> views = toListOfViews("" +
+                "CREATE VIEW constraint_c3_from_t2 AS " +
+                "SELECT * FROM t1 JOIN t2 " +
+                "     ON t1.c2 = t2.c2 " +
+                "where t1.controllable__c3 = t2.c1;"
+        );
+
+        final Model model = buildModel(conn, solver, views, modelName);
+
+        conn.execute("insert into t2 values (10, 1)");
+        conn.execute("insert into t2 values (20, 2)");
+        conn.execute("insert into t2 values (30, null)");
+        conn.execute("insert into t1 values (1, 2, 0)");
+        conn.execute("insert into t1 values (2, 1, 0)");
+        conn.execute("insert into t1 values (3, null, 0)");
+        conn.execute("insert into t1 values (4, 2, 0)");
+
+        model.updateData();
+        final Result<? extends Record> fetch = model.solveModelWithoutTableUpdates(Set.of("T1")).get("T1");
+        assertEquals(4, fetch.size());
+        assertEquals(20, fetch.get(0).get("CONTROLLABLE__C3"));
+        assertEquals(10, fetch.get(1).get("CONTROLLABLE__C3"));
+        assertEquals(20, fetch.get(3).get("CONTROLLABLE__C3"));
+    }
+
     @ParameterizedTest
     @MethodSource("solvers")
     public void solveModelWithUpdateTest(final SolverConfig solver) {
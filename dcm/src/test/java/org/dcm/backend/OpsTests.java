@@ -10,6 +10,7 @@ import com.google.ortools.sat.CpModel;
 import com.google.ortools.sat.CpSolver;
 import com.google.ortools.sat.CpSolverStatus;
 import com.google.ortools.sat.IntVar;
+import com.google.ortools.util.Domain;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
@@ -18,6 +19,7 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -210,6 +212,116 @@ public class OpsTests {
         assertEquals(1L, ops.minVLong(entriesLong));
     }
 
+    @Test
+    public void arrayAggregates() {
+        final VectorBuilders.Ints ints = new VectorBuilders.Ints(2);
+        final VectorBuilders.Longs longs = new VectorBuilders.Longs();
+        for (int i = 1; i <= 4; i++) {
+            ints.add(i);
+            longs.add(i);
+        }
+        assertEquals(4, ints.toArray().length);
+        assertEquals(10, ops.sum(ints.toArray()));
+        assertEquals(10L, ops.sum(longs.toArray()));
+        assertEquals(4, ops.maxVInteger(ints.toArray()));
+        assertEquals(1L, ops.minVLong(longs.toArray()));
+
+        final VectorBuilders.IntVars vars = new VectorBuilders.IntVars(8);
+        for (int i = 0; i < 4; i++) {
+            vars.add(model.newIntVar(i, i + 1, ""));
+        }
+        assertEquals(4, vars.toArray().length);
+        final IntVar sum = ops.sumV(vars.toArray());
+        final IntVar scalProd = ops.scalProd(vars.toArray(), new int[]{1, 1, 1, 1});
+        model.addEquality(sum, 10);
+        final CpSolver solver = new CpSolver();
+        final CpSolverStatus solve = solver.solve(model);
+        assertEquals(CpSolverStatus.FEASIBLE, solve);
+        assertEquals(10, solver.value(scalProd));
+    }
+
+    @Test
+    public void linearExpressions() {
+        final IntVar x = model.newIntVar(0, 10, "");
+        final IntVar y = model.newIntVar(0, 10, "");
+        final int numVariables = model.model().getVariablesCount();
+
+        // 2x - y + 3, built without any auxiliary variables
+        final LinearExpression expr = ops.linear(x).times(2).minus(ops.linear(y)).plus(ops.linear(3));
+        assertEquals(numVariables, model.model().getVariablesCount());
+
+        final IntVar eq = ops.eq(expr, ops.linear(3));
+        final IntVar leq = ops.leq(ops.linear(x).plus(ops.linear(y)), ops.linear(6));
+        final IntVar gt = ops.gt(ops.linearSum(new IntVar[]{x, y}), ops.linear(3));
+        // (2x - y + 3) + x + 1 - 3x == 4 - y
+        final LinearExpression sum = ops.linearSum(expr, ops.linear(x), ops.linear(1), ops.linear(x).times(-3));
+        assertEquals(numVariables, model.model().getVariablesCount());
+        final IntVar materialized = ops.toIntVar(expr);
+        final IntVar materializedSum = ops.toIntVar(sum);
+        assertEquals(x, ops.toIntVar(ops.linear(x)));
+        model.addEquality(eq, 1);
+        model.addEquality(leq, 1);
+        model.addEquality(gt, 1);
+        ops.maximize(List.of(ops.linear(y)));
+
+        final CpSolver solver = new CpSolver();
+        final CpSolverStatus solve = solver.solve(model);
+        assertEquals(CpSolverStatus.OPTIMAL, solve);
+        assertEquals(2, solver.value(x));
+        assertEquals(4, solver.value(y));
+        assertEquals(3, solver.value(materialized));
+        assertEquals(0, solver.value(materializedSum));
+    }
+
+    @Test
+    public void binPackingCapacityConstraint() {
+        final Ops binPackingOps = new Ops(model, encoding, false, true);
+        final IntVar[] tasks = new IntVar[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = model.newIntVar(0, 100, "");
+        }
+        final long[] nodes = {10L, 20L, 30L};
+        final int numVariables = model.model().getVariablesCount();
+
+        // Node 30 cannot host any task, and node 20 can host only one
+        binPackingOps.capacityConstraint(tasks, nodes, new int[][]{{4, 4, 4}}, new int[][]{{10, 5, 3}});
+        // One boolean per task and candidate node, and one normalized maximum load
+        assertEquals(numVariables + 3 * 2 + 1, model.model().getVariablesCount());
+
+        final CpSolver solver = new CpSolver();
+        final CpSolverStatus solve = solver.solve(model);
+        assertEquals(CpSolverStatus.OPTIMAL, solve);
+        final List<Long> assignment = Arrays.stream(tasks).map(solver::value).sorted().collect(Collectors.toList());
+        assertEquals(List.of(10L, 10L, 20L), assignment);
+    }
+
+    @Test
+    public void binPackingCapacityConstraintOverflowsCandidates() {
+        final Ops binPackingOps = new Ops(model, encoding, false, true);
+        final int numNodes = 70;
+        final long[] nodes = new long[numNodes];
+        final int[][] capacities = new int[1][numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            nodes[node] = node + 1;
+            capacities[0][node] = 100 - node;
+        }
+        final IntVar[] tasks = new IntVar[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = model.newIntVar(0, 100, "");
+            // Only the least loaded nodes are candidates, but another constraint rules all of them out
+            model.addLinearExpressionInDomain(tasks[i], Domain.fromValues(new long[]{69, 70}));
+        }
+        binPackingOps.capacityConstraint(tasks, nodes, new int[][]{{15, 15, 15}}, capacities);
+
+        final CpSolver solver = new CpSolver();
+        final CpSolverStatus solve = solver.solve(model);
+        assertEquals(CpSolverStatus.OPTIMAL, solve);
+        // Nodes 69 and 70 have a capacity of 32 and 31, so they can host two tasks each at most
+        final long[] assignment = Arrays.stream(tasks).mapToLong(solver::value).sorted().toArray();
+        assertTrue(Arrays.stream(assignment).allMatch(node -> node == 69 || node == 70));
+        assertEquals(2, Arrays.stream(assignment).distinct().count());
+    }
+
     @Test
     public void countV() {
         final long[] entries = {1L, 2L};
@@ -735,4 +847,37 @@ public class OpsTests {
         final Set<Long> collect = vars.stream().map(solver::value).collect(Collectors.toSet());
         assertFalse(collect.contains(solver.value(var)));
     }
+
+    @Test
+    public void testSolutionHints() {
+        final SolutionHints hints = new SolutionHints();
+        final List<Object> row1 = List.of(1);
+        final List<Object> row2 = List.of(2);
+        final List<Object> row3 = List.of(3);
+
+        // Only current values are hinted on the first solve
+        final IntVar[] vars = {model.newIntVar(0, 10, ""), model.newIntVar(0, 10, ""), model.newIntVar(0, 10, "")};
+        hints.hint(model, encoding, vars[0], "T.C", row1, "a");
+        hints.hint(model, encoding, vars[1], "T.C", row2, 5);
+        hints.hint(model, encoding, vars[2], "T.C", row3, null);
+        assertEquals(List.of(vars[0].getIndex(), vars[1].getIndex()),
+                     model.model().getSolutionHint().getVarsList());
+        assertEquals(List.of(encoding.toLong("a"), 5L), model.model().getSolutionHint().getValuesList());
+        hints.record("T.C", row1, "b");
+        hints.record("T.C", row3, 7L);
+        hints.completeSolve();
+
+        // Afterwards, values recorded for the same rows are used when there is no current value
+        final CpModel nextModel = new CpModel();
+        final StringEncoding nextEncoding = new StringEncoding();
+        nextEncoding.toLong("c");
+        final IntVar[] nextVars = {nextModel.newIntVar(0, 10, ""), nextModel.newIntVar(0, 10, ""),
+                                   nextModel.newIntVar(0, 10, "")};
+        hints.hint(nextModel, nextEncoding, nextVars[0], "T.C", row1, null);
+        hints.hint(nextModel, nextEncoding, nextVars[1], "T.C", row2, null);
+        hints.hint(nextModel, nextEncoding, nextVars[2], "T.C", row3, 9);
+        assertEquals(List.of(nextVars[0].getIndex(), nextVars[2].getIndex()),
+                     nextModel.model().getSolutionHint().getVarsList());
+        assertEquals(List.of(nextEncoding.toLong("b"), 9L), nextModel.model().getSolutionHint().getValuesList());
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Picks the number of pending pods to consider in each scheduling round, so that rounds complete within a
+ * target latency. The batch grows multiplicatively while rounds are fast and pods are left waiting, which
+ * yields large batches during bursts. It shrinks in proportion to the overshoot when a round is slower
+ * than the target. Batches never exceed the number of pending pods, so a quiet cluster sees small batches.
+ */
+class BatchSizeController {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSizeController.class);
+    static final int DEFAULT_BATCH_SIZE = 50;
+    private static final double GROWTH_FACTOR = 1.5;
+    private final long targetLatencyNanos;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private int batchSize;
+
+    BatchSizeController(final long targetLatencyMs, final int minBatchSize, final int maxBatchSize) {
+        Preconditions.checkArgument(targetLatencyMs > 0);
+        Preconditions.checkArgument(minBatchSize > 0 && minBatchSize <= maxBatchSize);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.batchSize = Math.max(minBatchSize, Math.min(DEFAULT_BATCH_SIZE, maxBatchSize));
+    }
+
+    /**
+     * @return the number of pods to consider in the next round, given the number of pods waiting
+     */
+    synchronized int nextBatchSize(final int pendingPods) {
+        return Math.max(minBatchSize, Math.min(batchSize, pendingPods));
+    }
+
+    /**
+     * Records the outcome of a round.
+     *
+     * @param numPods the number of pods considered in the round
+     * @param latencyNanos the time taken to refresh data and solve for the round
+     * @param pendingPods the number of pods that were waiting when the round started
+     */
+    synchronized void observe(final int numPods, final long latencyNanos, final int pendingPods) {
+        if (numPods == 0) {
+            return;
+        }
+        final int previous = batchSize;
+        // Assume that latency grows linearly with the number of pods to cap how far a single round moves the size
+        final double sizeForTarget = numPods * ((double) targetLatencyNanos / Math.max(latencyNanos, 1));
+        if (latencyNanos > targetLatencyNanos) {
+            batchSize = (int) Math.max(minBatchSize, Math.floor(sizeForTarget));
+        } else if (pendingPods > numPods) {
+            final double grown = Math.ceil(Math.max(batchSize, numPods) * GROWTH_FACTOR);
+            batchSize = (int) Math.min(maxBatchSize, Math.min(grown, Math.floor(sizeForTarget)));
+            batchSize = Math.max(batchSize, previous);
+        }
+        if (batchSize != previous) {
+            LOG.info("Batch size changed from {} to {} (round of {} pods took {}ns, {} pods pending)",
+                     previous, batchSize, numPods, latencyNanos, pendingPods);
+        }
+    }
+
+    synchronized int getBatchSize() {
+        return batchSize;
+    }
+}
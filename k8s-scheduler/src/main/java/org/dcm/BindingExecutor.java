@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.dcm.k8s.generated.Tables;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Issues the pod -> node bindings decided by the scheduler, using a fixed number of threads.
+ *
+ * Bindings to the same node are issued one at a time, in the order they were submitted, while bindings to different
+ * nodes proceed concurrently. A failed binding is retried with exponential backoff. Once it has failed maxAttempts
+ * times, the pod and node are passed to the failure handler so the pod can be scheduled again. At most
+ * maxPendingBindings bindings may be outstanding, and submitting more blocks the caller until earlier ones complete.
+ * The time from submission to completion of every binding is recorded in a timer, which reports its percentiles.
+ */
+class BindingExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(BindingExecutor.class);
+    static final int DEFAULT_CONCURRENCY = 10;
+    static final int DEFAULT_MAX_PENDING_BINDINGS = 1000;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_INITIAL_BACKOFF_MS = 100;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final BiConsumer<String, String> failureHandler;
+    private final Timer bindingLatency;
+    private final Semaphore pendingBindings;
+    private final ListeningExecutorService bindExecutor;
+    private final ListeningScheduledExecutorService retryExecutor = MoreExecutors.listeningDecorator(
+            Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("bind-retry-thread-%d").setDaemon(true).build()));
+
+    // Guarded by this. The most recent binding submitted for each node, until it completes.
+    private final Map<String, ListenableFuture<Boolean>> lastBindingPerNode = new HashMap<>();
+
+    /**
+     * @param failureHandler called with the pod and node name of every binding that could not be completed
+     */
+    BindingExecutor(final int concurrency, final int maxPendingBindings, final int maxAttempts,
+                    final long initialBackoffMs, final BiConsumer<String, String> failureHandler,
+                    final Timer bindingLatency) {
+        Preconditions.checkArgument(concurrency > 0);
+        Preconditions.checkArgument(maxPendingBindings > 0);
+        Preconditions.checkArgument(maxAttempts > 0);
+        Preconditions.checkArgument(initialBackoffMs >= 0);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.failureHandler = failureHandler;
+        this.bindingLatency = bindingLatency;
+        this.pendingBindings = new Semaphore(maxPendingBindings);
+        this.bindExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("bind-thread-%d").setDaemon(true).build()));
+    }
+
+    /**
+     * Binds every placement (a pods_to_assign record) in a batch. Blocks while too many bindings are pending.
+     * If interrupted while blocked, the placements that were not submitted yet are passed to the failure handler.
+     *
+     * @return a future that completes once every binding of the batch has either succeeded or been given up on,
+     *         holding whether each binding succeeded. It fails if bindings were still queued at shutdown().
+     */
+    ListenableFuture<List<Boolean>> bindAll(final IPodToNodeBinder binder,
+                                            final Result<? extends Record> placements) {
+        final List<ListenableFuture<Boolean>> bindings = new ArrayList<>(placements.size());
+        for (final Record placement : placements) {
+            final String namespace = placement.get(Tables.PODS_TO_ASSIGN.NAMESPACE);
+            final String podName = placement.get(Tables.PODS_TO_ASSIGN.POD_NAME);
+            final String nodeName = placement.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
+            if (!Thread.currentThread().isInterrupted()) {
+                try {
+                    pendingBindings.acquire();
+                    bindings.add(bind(binder, namespace, podName, nodeName));
+                    continue;
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            failureHandler.accept(podName, nodeName);
+            bindings.add(Futures.immediateFuture(false));
+        }
+        return Futures.allAsList(bindings);
+    }
+
+    void shutdown() throws InterruptedException {
+        bindExecutor.shutdownNow();
+        retryExecutor.shutdownNow();
+        bindExecutor.awaitTermination(100, TimeUnit.SECONDS);
+        retryExecutor.awaitTermination(100, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues a binding behind the previous binding to the same node. Expects a permit to be held, which is
+     * released once the binding completes.
+     */
+    private ListenableFuture<Boolean> bind(final IPodToNodeBinder binder, final String namespace,
+                                           final String podName, final String nodeName) {
+        final long start = System.nanoTime();
+        final SettableFuture<Boolean> binding = SettableFuture.create();
+        final ListenableFuture<Boolean> previous;
+        synchronized (this) {
+            previous = lastBindingPerNode.getOrDefault(nodeName, Futures.immediateFuture(true));
+            lastBindingPerNode.put(nodeName, binding);
+        }
+        binding.addListener(() -> {
+            synchronized (this) {
+                lastBindingPerNode.remove(nodeName, binding);
+            }
+            bindingLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            pendingBindings.release();
+        }, MoreExecutors.directExecutor());
+        previous.addListener(() -> {
+            try {
+                binding.setFuture(attempt(binder, namespace, podName, nodeName, 1));
+            } catch (final RejectedExecutionException e) {
+                // Shut down while queued behind the previous binding to the same node
+                LOG.warn("Could not bind {}/pod:{} to node:{} after shutdown. Returning it to the pending pods",
+                         namespace, podName, nodeName, e);
+                failureHandler.accept(podName, nodeName);
+                binding.setException(e);
+            }
+        }, MoreExecutors.directExecutor());
+        return binding;
+    }
+
+    private ListenableFuture<Boolean> attempt(final IPodToNodeBinder binder, final String namespace,
+                                              final String podName, final String nodeName, final int attempt) {
+        final ListenableFuture<Boolean> bound = bindExecutor.submit(() -> {
+            binder.bindOne(namespace, podName, nodeName);
+            return true;
+        });
+        return Futures.catchingAsync(bound, Exception.class, e -> {
+            if (attempt >= maxAttempts) {
+                LOG.error("Could not bind {}/pod:{} to node:{} after {} attempts. Returning it to the pending pods",
+                          namespace, podName, nodeName, attempt, e);
+                failureHandler.accept(podName, nodeName);
+                return Futures.immediateFuture(false);
+            }
+            final long backoffMs = initialBackoffMs << (attempt - 1);
+            LOG.warn("Attempt {} to bind {}/pod:{} to node:{} failed. Retrying in {}ms",
+                     attempt, namespace, podName, nodeName, backoffMs, e);
+            try {
+                return Futures.scheduleAsync(() -> attempt(binder, namespace, podName, nodeName, attempt + 1),
+                                             backoffMs, TimeUnit.MILLISECONDS, retryExecutor);
+            } catch (final RejectedExecutionException rejected) {
+                LOG.warn("Could not retry binding {}/pod:{} to node:{} after shutdown. "
+                         + "Returning it to the pending pods", namespace, podName, nodeName, rejected);
+                failureHandler.accept(podName, nodeName);
+                return Futures.immediateFailedFuture(rejected);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
@@ -34,6 +34,7 @@ class DBConnectionPool {
     private static final Settings JOOQ_SETTING = new Settings().withExecuteLogging(false);
     private final String databaseName;
     private final DataSource ds;
+    private final SpareCapacityIndex spareCapacityIndex = new SpareCapacityIndex();
 
     DBConnectionPool() {
         this.databaseName = UUID.randomUUID().toString();
@@ -81,4 +82,11 @@ class DBConnectionPool {
     DSLContext getConnectionToDb() {
         return using(ds, SQLDialect.H2, JOOQ_SETTING);
     }
+
+    /**
+     * @return the index backing the spare_capacity_per_node table of this database
+     */
+    SpareCapacityIndex getSpareCapacityIndex() {
+        return spareCapacityIndex;
+    }
 }
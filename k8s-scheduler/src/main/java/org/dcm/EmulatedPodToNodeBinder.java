@@ -9,19 +9,12 @@ package org.dcm;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import org.dcm.k8s.generated.Tables;
-import org.dcm.k8s.generated.tables.records.PodInfoRecord;
 import org.jooq.DSLContext;
-import org.jooq.Record;
-import org.jooq.Result;
-import org.jooq.Update;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -30,20 +23,26 @@ import java.util.stream.Collectors;
 public class EmulatedPodToNodeBinder implements IPodToNodeBinder {
     private static final Logger LOG = LoggerFactory.getLogger(EmulatedPodToNodeBinder.class);
     private final DBConnectionPool dbConnectionPool;
-    private final Map<String, SettableFuture<Boolean>> waitForPodBinding = new HashMap<>();
+    private final Map<String, SettableFuture<Boolean>> waitForPodBinding = new ConcurrentHashMap<>();
 
     EmulatedPodToNodeBinder(final DBConnectionPool dbConnectionPool) {
         this.dbConnectionPool = dbConnectionPool;
     }
 
-    public Update<PodInfoRecord> bindOne(final String namespace, final String podName, final String nodeName) {
+    @Override
+    public void bindOne(final String namespace, final String podName, final String nodeName) {
         LOG.info("Binding {}/pod:{} to node:{}", namespace, podName, nodeName);
 
         // Mimic a binding notification
         try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
-            return conn.update(Tables.POD_INFO)
-                    .set(Tables.POD_INFO.STATUS, "Running")
-                    .where(Tables.POD_INFO.POD_NAME.eq(podName));
+            conn.update(Tables.POD_INFO)
+                .set(Tables.POD_INFO.STATUS, "Running")
+                .where(Tables.POD_INFO.POD_NAME.eq(podName))
+                .execute();
+        }
+        final SettableFuture<Boolean> future = waitForPodBinding.remove(podName);
+        if (future != null) {
+            future.set(true);
         }
     }
 
@@ -52,29 +51,4 @@ public class EmulatedPodToNodeBinder implements IPodToNodeBinder {
         waitForPodBinding.put(podname, settableFuture);
         return settableFuture;
     }
-
-    @Override
-    public void bindManyAsnc(final Result<? extends Record> records) {
-        ForkJoinPool.commonPool().execute(
-            () -> {
-                final List<Update<PodInfoRecord>> updates = records.stream().map(record -> {
-                            final String podName = record.get(Tables.PODS_TO_ASSIGN.POD_NAME);
-                            final String namespace = record.get(Tables.PODS_TO_ASSIGN.NAMESPACE);
-                            final String nodeName = record.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
-                            LOG.info("Attempting to bind {}:{} to {} ", namespace, podName, nodeName);
-                            return bindOne(namespace, podName, nodeName);
-                        }
-                ).collect(Collectors.toList());
-                try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
-                    conn.batch(updates).execute();
-                }
-                records.forEach(record -> {
-                    final String podName = record.get(Tables.PODS_TO_ASSIGN.POD_NAME);
-                    if (waitForPodBinding.containsKey(podName)) {
-                        waitForPodBinding.get(podName).set(true);
-                    }
-                });
-            }
-        );
-    }
-}
\ No newline at end of file
+}
@@ -7,12 +7,13 @@
 package org.dcm;
 
 
-import org.jooq.Record;
-import org.jooq.Result;
-
 /**
- * An interface used by the scheduler to bind pods to nodes, either in a real cluster or in an emulated environment
+ * An interface used by the scheduler to bind pods to nodes, either in a real cluster or in an emulated environment.
+ * The scheduler issues bindings concurrently and retries them on failure (see BindingExecutor).
  */
 public interface IPodToNodeBinder {
-    void bindManyAsnc(final Result<? extends Record> records);
+    /**
+     * Binds a pod to a node, blocking until the binding is applied. Throws an exception if the binding failed.
+     */
+    void bindOne(final String namespace, final String podName, final String nodeName);
 }
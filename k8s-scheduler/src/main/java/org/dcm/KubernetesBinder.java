@@ -6,34 +6,30 @@
 
 package org.dcm;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.fabric8.kubernetes.api.model.Binding;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.ObjectReference;
+import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import org.dcm.k8s.generated.Tables;
-import org.jooq.Record;
-import org.jooq.Result;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.ThreadFactory;
+import java.net.HttpURLConnection;
 
 
 /**
  * Pod -> node binding implementation that works with a real Kubernetes cluster
  */
 class KubernetesBinder implements IPodToNodeBinder {
+    private static final Logger LOG = LoggerFactory.getLogger(KubernetesBinder.class);
     private final KubernetesClient client;
-    private final ThreadFactory namedThreadFactory =
-            new ThreadFactoryBuilder().setNameFormat("bind-thread-%d").build();
-    private final ExecutorService service = Executors.newFixedThreadPool(10, namedThreadFactory);
 
     KubernetesBinder(final KubernetesClient client) {
         this.client = client;
     }
 
+    @Override
     public void bindOne(final String namespace, final String podName, final String nodeName) {
         final Binding binding = new Binding();
         final ObjectReference target = new ObjectReference();
@@ -44,19 +40,19 @@ class KubernetesBinder implements IPodToNodeBinder {
         meta.setName(podName);
         binding.setTarget(target);
         binding.setMetadata(meta);
-        client.bindings().inNamespace(namespace).create(binding);
+        try {
+            client.bindings().inNamespace(namespace).create(binding);
+        } catch (final KubernetesClientException e) {
+            // A binding that timed out may still have been applied, in which case retrying it conflicts
+            if (e.getCode() != HttpURLConnection.HTTP_CONFLICT || !isBoundTo(namespace, podName, nodeName)) {
+                throw e;
+            }
+            LOG.info("{}/pod:{} is already bound to node:{}", namespace, podName, nodeName);
+        }
     }
 
-    @Override
-    public void bindManyAsnc(final Result<? extends Record> records) {
-        ForkJoinPool.commonPool().execute(() -> records.forEach(
-                r -> service.execute(() -> {
-                    final String podName = r.get(Tables.PODS_TO_ASSIGN.POD_NAME);
-                    final String namespace = r.get(Tables.PODS_TO_ASSIGN.NAMESPACE);
-                    final String nodeName = r.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
-                    bindOne(namespace, podName, nodeName);
-                }
-            )
-        ));
+    private boolean isBoundTo(final String namespace, final String podName, final String nodeName) {
+        final Pod pod = client.pods().inNamespace(namespace).withName(podName).get();
+        return pod != null && nodeName.equals(pod.getSpec().getNodeName());
     }
 }
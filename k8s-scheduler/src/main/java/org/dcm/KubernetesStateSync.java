@@ -7,6 +7,7 @@
 
 package org.dcm;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.fabric8.kubernetes.api.model.Node;
 import io.fabric8.kubernetes.api.model.NodeList;
@@ -35,7 +36,18 @@ class KubernetesStateSync {
     }
 
     void setupInformersAndPodEventStream(final DBConnectionPool dbConnectionPool,
-                                                       final Consumer<PodEvent> podEventNotification) {
+                                         final Consumer<PodEvent> podEventNotification) {
+        setupInformersAndPodEventStream(dbConnectionPool, podEventNotification, false);
+    }
+
+    /**
+     * @param orderedPodEvents if true, pod events are passed on from the informer's thread in the order they
+     *                         are received, rather than from a thread pool. This suits consumers that only queue
+     *                         events, like PodEventIngestionQueue.
+     */
+    void setupInformersAndPodEventStream(final DBConnectionPool dbConnectionPool,
+                                                       final Consumer<PodEvent> podEventNotification,
+                                                       final boolean orderedPodEvents) {
         final SharedIndexInformer<Node> nodeSharedIndexInformer = sharedInformerFactory
                 .sharedIndexInformerFor(Node.class, NodeList.class, 30000);
         nodeSharedIndexInformer.addEventHandler(new NodeResourceEventHandler(dbConnectionPool, service));
@@ -43,7 +55,8 @@ class KubernetesStateSync {
         // Pod informer
         final SharedIndexInformer<Pod> podInformer = sharedInformerFactory
                 .sharedIndexInformerFor(Pod.class, PodList.class, 30000);
-        podInformer.addEventHandler(new PodResourceEventHandler(podEventNotification, service));
+        podInformer.addEventHandler(new PodResourceEventHandler(podEventNotification,
+                orderedPodEvents ? MoreExecutors.newDirectExecutorService() : service));
 
         LOG.info("Instantiated node and pod informers. Starting them all now.");
     }
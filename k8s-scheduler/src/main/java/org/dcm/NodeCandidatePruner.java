@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.google.common.base.Preconditions;
+import org.dcm.k8s.generated.Tables;
+import org.dcm.k8s.generated.tables.InterPodAffinityMatches;
+import org.dcm.k8s.generated.tables.NodeInfo;
+import org.dcm.k8s.generated.tables.PodsToAssign;
+import org.dcm.k8s.generated.tables.SpareCapacityPerNode;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Picks a bounded subset of candidate nodes for the pods in pods_to_assign before invoking the solver, similar
+ * to the percentageOfNodesToScore setting of the default Kubernetes scheduler. Nodes are scored by their spare
+ * capacity (least loaded first), and each pod contributes the best scoring nodes that its node selector and the
+ * node taints allow, as well as the nodes hosting the running pods it is affine to. Pods with the same
+ * requirements contribute the same nodes, so the candidate set stays small when most pods are alike.
+ */
+class NodeCandidatePruner {
+    private final int percentageOfNodesToScore;
+    private final int minCandidateNodes;
+
+    NodeCandidatePruner(final int percentageOfNodesToScore, final int minCandidateNodes) {
+        Preconditions.checkArgument(percentageOfNodesToScore > 0 && percentageOfNodesToScore <= 100);
+        Preconditions.checkArgument(minCandidateNodes > 0);
+        this.percentageOfNodesToScore = percentageOfNodesToScore;
+        this.minCandidateNodes = minCandidateNodes;
+    }
+
+    /**
+     * @return the nodes to consider for the current pods_to_assign, ordered from the least loaded
+     */
+    Set<String> candidates(final DSLContext conn) {
+        final SpareCapacityPerNode s = Tables.SPARE_CAPACITY_PER_NODE;
+        final NodeInfo n = Tables.NODE_INFO;
+        final PodsToAssign p = Tables.PODS_TO_ASSIGN;
+
+        // Score eligible nodes by the average fraction of their resources that remain unallocated
+        final List<String> nodesByScore = new ArrayList<>();
+        final Map<String, Double> scores = new HashMap<>();
+        for (final Record node : conn.select(s.NAME, s.CPU_REMAINING, s.MEMORY_REMAINING, s.PODS_REMAINING,
+                                             n.CPU_ALLOCATABLE, n.MEMORY_ALLOCATABLE, n.PODS_ALLOCATABLE)
+                                     .from(s)
+                                     .join(n).on(s.NAME.eq(n.NAME))
+                                     .fetch()) {
+            final String name = node.get(s.NAME);
+            final double score = (fraction(node.get(s.CPU_REMAINING), node.get(n.CPU_ALLOCATABLE))
+                                  + fraction(node.get(s.MEMORY_REMAINING), node.get(n.MEMORY_ALLOCATABLE))
+                                  + fraction(node.get(s.PODS_REMAINING), node.get(n.PODS_ALLOCATABLE))) / 3;
+            nodesByScore.add(name);
+            scores.put(name, score);
+        }
+        nodesByScore.sort(Comparator.comparingDouble((String node) -> scores.get(node)).reversed()
+                                    .thenComparing(Comparator.naturalOrder()));
+        final int numNodesPerPod = Math.max(minCandidateNodes,
+                                            (int) Math.ceil(nodesByScore.size() * percentageOfNodesToScore / 100.0));
+        if (numNodesPerPod >= nodesByScore.size()) {
+            return new LinkedHashSet<>(nodesByScore);
+        }
+
+        final Set<String> taintedNodes = new HashSet<>(conn.select(Tables.NODES_THAT_HAVE_TOLERATIONS.NODE_NAME)
+                                                           .from(Tables.NODES_THAT_HAVE_TOLERATIONS)
+                                                           .fetch(Tables.NODES_THAT_HAVE_TOLERATIONS.NODE_NAME));
+        final Map<String, Set<String>> selectorMatches = ShardPlanner.podToNodes(conn.select(
+                Tables.POD_NODE_SELECTOR_MATCHES.POD_NAME, Tables.POD_NODE_SELECTOR_MATCHES.NODE_NAME)
+                .from(Tables.POD_NODE_SELECTOR_MATCHES).fetch());
+        final Map<String, Set<String>> toleratedNodes = ShardPlanner.podToNodes(conn.select(
+                Tables.PODS_THAT_TOLERATE_NODE_TAINTS.POD_NAME, Tables.PODS_THAT_TOLERATE_NODE_TAINTS.NODE_NAME)
+                .from(Tables.PODS_THAT_TOLERATE_NODE_TAINTS).fetch());
+        final Set<String> eligibleNodes = scores.keySet();
+
+        final Set<String> candidates = new HashSet<>();
+        final Set<List<Set<String>>> seenRequirements = new HashSet<>();
+        for (final Record pod : conn.select(p.POD_NAME, p.HAS_NODE_SELECTOR_LABELS).from(p).fetch()) {
+            final String podName = pod.get(p.POD_NAME);
+            final boolean hasSelector = pod.get(p.HAS_NODE_SELECTOR_LABELS);
+            final Set<String> selected = hasSelector ? selectorMatches.getOrDefault(podName, Set.of())
+                                                     : eligibleNodes;
+            final Set<String> tolerated = toleratedNodes.getOrDefault(podName, Set.of());
+            // Pods without a node selector share the (large) set of eligible nodes, so leave it out of the key
+            final List<Set<String>> requirements = Arrays.asList(hasSelector ? selected : null, tolerated);
+            if (!seenRequirements.add(requirements)) {
+                continue;
+            }
+            int added = 0;
+            for (final String node : nodesByScore) {
+                if (added == numNodesPerPod) {
+                    break;
+                }
+                if (selected.contains(node) && (!taintedNodes.contains(node) || tolerated.contains(node))) {
+                    candidates.add(node);
+                    added++;
+                }
+            }
+        }
+
+        // Nodes hosting running pods that pending pods are affine to
+        final InterPodAffinityMatches a = Tables.INTER_POD_AFFINITY_MATCHES;
+        final Set<String> affinityNodes = new HashSet<>(conn.selectDistinct(a.NODE_NAME)
+                                                            .from(a)
+                                                            .where(a.NODE_NAME.isNotNull())
+                                                            .fetch(a.NODE_NAME));
+        affinityNodes.retainAll(eligibleNodes);
+        candidates.addAll(affinityNodes);
+
+        final Set<String> ret = new LinkedHashSet<>();
+        nodesByScore.stream().filter(candidates::contains).forEach(ret::add);
+        return ret;
+    }
+
+    private static double fraction(final long remaining, final long allocatable) {
+        return allocatable == 0 ? 0 : (double) remaining / allocatable;
+    }
+}
@@ -77,6 +77,7 @@ class NodeResourceEventHandler implements ResourceEventHandler<Node> {
             queries.addAll(addNodeTaints(conn, node));
             queries.addAll(addNodeImages(conn, node));
             conn.batch(queries).execute();
+            updateSpareCapacity(node, conn);
         }
         LOG.info("{} node added in {}ms", node.getMetadata().getName(), (System.nanoTime() - now));
     }
@@ -117,6 +118,9 @@ class NodeResourceEventHandler implements ResourceEventHandler<Node> {
                 }
             }
             conn.batch(queries).execute();
+            if (hasChanged) {
+                updateSpareCapacity(newNode, conn);
+            }
         }
         LOG.info("{} => {} node {} in {}ns", oldNode.getMetadata().getName(), newNode.getMetadata().getName(),
                 hasChanged ? "updated" : "not updated", (System.nanoTime() - now));
@@ -248,6 +252,19 @@ class NodeResourceEventHandler implements ResourceEventHandler<Node> {
             .set(n.PODS_ALLOCATED, n.PODS_ALLOCATED);
     }
 
+    /**
+     * Reflects the node's allocatable resources and conditions, as written to node_info, in the spare capacity
+     * index.
+     */
+    private void updateSpareCapacity(final Node node, final DSLContext conn) {
+        final NodeInfoRecord nodeInfo = conn.selectFrom(Tables.NODE_INFO)
+                                            .where(Tables.NODE_INFO.NAME.eq(node.getMetadata().getName()))
+                                            .fetchOne();
+        if (nodeInfo != null) {
+            dbConnectionPool.getSpareCapacityIndex().updateNode(nodeInfo);
+        }
+    }
+
     private boolean hasChanged(final Node oldNode, final Node newNode) {
         return !oldNode.getSpec().equals(newNode.getSpec())
            || !oldNode.getStatus().getCapacity().equals(newNode.getStatus().getCapacity())
@@ -273,6 +290,7 @@ class NodeResourceEventHandler implements ResourceEventHandler<Node> {
 
 
     private void deleteNode(final Node node, final DSLContext conn) {
+        dbConnectionPool.getSpareCapacityIndex().removeNode(node.getMetadata().getName());
         conn.deleteFrom(Tables.NODE_INFO)
             .where(Tables.NODE_INFO.NAME.eq(node.getMetadata().getName()))
             .execute();
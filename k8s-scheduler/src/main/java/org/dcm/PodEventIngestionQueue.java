@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A single-writer pipeline that reflects pod events into the database in batches.
+ *
+ * Events are coalesced per pod while they wait, so a pod that is added and then updated several times is
+ * written once, in its latest state. A dedicated thread writes pending pods in batches of up to maxBatchSize
+ * within one transaction (see PodEventsToDatabase.handleBatch()), and never holds an event back for more than
+ * maxDelayMs. Every submitted event gets a version, and the watermark is the highest version such that it and
+ * all earlier events have been written, which lets the scheduler wait for the database to catch up. Waiting for
+ * the watermark flushes the pending events right away, without waiting for a full batch.
+ *
+ * If a batch cannot be written, its pods are written one at a time, and pods that still fail are put back at
+ * the head of the queue and retried with a backoff. The watermark never advances past a pod that has not been
+ * written.
+ */
+class PodEventIngestionQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(PodEventIngestionQueue.class);
+    private static final long INITIAL_RETRY_DELAY_MS = 10;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+    private final PodEventsToDatabase podEventsToDatabase;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("pod-ingestion-%d").build());
+
+    // Guarded by this. Pending events in the order their pods were first seen.
+    private final Map<String, PendingPod> pending = new LinkedHashMap<>();
+    private long latestVersion = 0;
+    private long watermark = 0;
+    // Set while someone waits for the watermark, so that the writer does not wait for a full batch
+    private boolean flushRequested = false;
+    // Only accessed by the writer thread
+    private long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+
+    PodEventIngestionQueue(final PodEventsToDatabase podEventsToDatabase, final int maxBatchSize,
+                           final long maxDelayMs) {
+        Preconditions.checkArgument(maxBatchSize > 0);
+        Preconditions.checkArgument(maxDelayMs >= 0);
+        this.podEventsToDatabase = podEventsToDatabase;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    void start() {
+        writer.execute(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    writeNextBatch();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final RuntimeException e) {
+                    // Keep the only writer alive, or every later scheduling round waits forever
+                    LOG.error("Unexpected error while writing pod events", e);
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        writer.shutdownNow();
+    }
+
+    /**
+     * Queues an event, merging it with any event for the same pod that has not been written yet.
+     *
+     * @return the version of the event
+     */
+    synchronized long submit(final PodEvent event) {
+        final long version = ++latestVersion;
+        final String podName = event.getPod().getMetadata().getName();
+        final PendingPod existing = pending.get(podName);
+        if (existing == null) {
+            pending.put(podName, new PendingPod(event, version, System.nanoTime()));
+        } else {
+            existing.merge(event);
+        }
+        if (pending.size() == 1 || pending.size() >= maxBatchSize) {
+            notifyAll();
+        }
+        return version;
+    }
+
+    /**
+     * @return the version of the most recently submitted event
+     */
+    synchronized long getLatestVersion() {
+        return latestVersion;
+    }
+
+    /**
+     * @return the highest version up to which all events have been written to the database
+     */
+    synchronized long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Blocks until all events up to and including the given version have been written to the database.
+     */
+    synchronized void awaitWatermark(final long version) throws InterruptedException {
+        while (watermark < version) {
+            flushRequested = true;
+            notifyAll();
+            wait();
+        }
+    }
+
+    @SuppressWarnings("IllegalCatch")
+    private void writeNextBatch() throws InterruptedException {
+        final Map<String, PendingPod> dequeued = new LinkedHashMap<>();
+        synchronized (this) {
+            while (pending.isEmpty()) {
+                wait();
+            }
+            // Wait for a full batch, but no longer than the oldest pending event may be delayed, or than it takes
+            // someone to ask for the pending events
+            final long deadline = pending.values().iterator().next().submitNanos + maxDelayNanos;
+            long remaining;
+            while (pending.size() < maxBatchSize && !flushRequested
+                   && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            // A waiter that is still behind after this batch asks again
+            flushRequested = false;
+            final Iterator<Map.Entry<String, PendingPod>> it = pending.entrySet().iterator();
+            for (int numPods = 0; it.hasNext() && numPods < maxBatchSize; numPods++) {
+                final Map.Entry<String, PendingPod> entry = it.next();
+                dequeued.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+        final List<PodEvent> batch = new ArrayList<>();
+        dequeued.values().forEach(pendingPod -> batch.addAll(pendingPod.events()));
+        final long start = System.nanoTime();
+        Map<String, PendingPod> failed = Collections.emptyMap();
+        try {
+            podEventsToDatabase.handleBatch(batch);
+            LOG.trace("Wrote a batch of {} pod events in {}ns", batch.size(), System.nanoTime() - start);
+        } catch (final RuntimeException e) {
+            LOG.warn("Could not write a batch of {} pod events, writing them one pod at a time", batch.size(), e);
+            failed = writeOneByOne(dequeued);
+        }
+        synchronized (this) {
+            if (!failed.isEmpty()) {
+                requeue(failed);
+            }
+            // Pods are dequeued in the order of their oldest pending event, and failed pods are put back in
+            // front, so everything before the first pod that is still pending has been written
+            final long batchWatermark = pending.isEmpty() ? latestVersion
+                                                          : pending.values().iterator().next().firstVersion - 1;
+            watermark = Math.max(watermark, batchWatermark);
+            notifyAll();
+        }
+        if (failed.isEmpty()) {
+            retryDelayMs = INITIAL_RETRY_DELAY_MS;
+        } else {
+            LOG.error("Could not write the events of pods {}, retrying in {}ms", failed.keySet(), retryDelayMs);
+            Thread.sleep(retryDelayMs);
+            retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes the events of each pod in a transaction of its own.
+     *
+     * @return the pods whose events could not be written
+     */
+    @SuppressWarnings("IllegalCatch")
+    private Map<String, PendingPod> writeOneByOne(final Map<String, PendingPod> pods) {
+        final Map<String, PendingPod> failed = new LinkedHashMap<>();
+        pods.forEach((podName, pendingPod) -> {
+            try {
+                podEventsToDatabase.handleBatch(pendingPod.events());
+            } catch (final RuntimeException e) {
+                LOG.warn("Could not write the events of pod {}", podName, e);
+                failed.put(podName, pendingPod);
+            }
+        });
+        return failed;
+    }
+
+    /**
+     * Puts pods whose events could not be written back at the head of the queue, merging in any events for the
+     * same pods that were submitted in the meantime.
+     */
+    private void requeue(final Map<String, PendingPod> failed) {
+        final Map<String, PendingPod> requeued = new LinkedHashMap<>(failed);
+        pending.forEach((podName, pendingPod) -> {
+            final PendingPod older = requeued.get(podName);
+            if (older == null) {
+                requeued.put(podName, pendingPod);
+            } else {
+                older.mergeNewer(pendingPod);
+            }
+        });
+        pending.clear();
+        pending.putAll(requeued);
+    }
+
+    /**
+     * The events for a pod that have not been written yet, reduced to at most a deletion followed by one event
+     */
+    private static final class PendingPod {
+        private final long firstVersion;
+        private final long submitNanos;
+        private PodEvent event;
+        private boolean deleteFirst = false;
+
+        private PendingPod(final PodEvent event, final long firstVersion, final long submitNanos) {
+            this.event = event;
+            this.firstVersion = firstVersion;
+            this.submitNanos = submitNanos;
+        }
+
+        /**
+         * @return the events to write for this pod, in order
+         */
+        private List<PodEvent> events() {
+            return deleteFirst ? List.of(new PodEvent(PodEvent.Action.DELETED, event.getPod()), event)
+                               : List.of(event);
+        }
+
+        /**
+         * Merges the events of the same pod that were submitted after this one's
+         */
+        private void mergeNewer(final PendingPod newer) {
+            for (final PodEvent next : newer.events()) {
+                merge(next);
+            }
+        }
+
+        private void merge(final PodEvent next) {
+            switch (next.getAction()) {
+                case ADDED:
+                    // A pod that was deleted and then added again needs its old rows removed first
+                    deleteFirst = deleteFirst || event.getAction() == PodEvent.Action.DELETED;
+                    event = next;
+                    break;
+                case UPDATED:
+                    // Updates to a deleted pod are ignored. Otherwise, only the latest state is kept, and a pending
+                    // add remains an add.
+                    if (event.getAction() != PodEvent.Action.DELETED) {
+                        event = new PodEvent(event.getAction(), next.getPod());
+                    }
+                    break;
+                case DELETED:
+                    deleteFirst = false;
+                    event = next;
+                    break;
+                default:
+                    throw new IllegalArgumentException(next.toString());
+            }
+        }
+    }
+}
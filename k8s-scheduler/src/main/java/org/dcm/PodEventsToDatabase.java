@@ -21,7 +21,6 @@ import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.kubernetes.api.model.ResourceRequirements;
 import io.fabric8.kubernetes.api.model.Toleration;
 import org.dcm.k8s.generated.Tables;
-import org.dcm.k8s.generated.tables.PodInfo;
 import org.dcm.k8s.generated.tables.records.PodInfoRecord;
 import org.dcm.k8s.generated.tables.records.PodLabelsRecord;
 import org.dcm.k8s.generated.tables.records.PodNodeSelectorLabelsRecord;
@@ -29,22 +28,27 @@ import org.dcm.k8s.generated.tables.records.PodTolerationsRecord;
 import org.h2.api.Trigger;
 import org.jooq.DSLContext;
 import org.jooq.Insert;
-import org.jooq.InsertOnDuplicateSetMoreStep;
 import org.jooq.Query;
 import org.jooq.Record;
 import org.jooq.Table;
 import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -55,6 +59,9 @@ class PodEventsToDatabase {
     private static final Logger LOG = LoggerFactory.getLogger(PodEventsToDatabase.class);
     private final DBConnectionPool dbConnectionPool;
 
+    // The pod_info row last written for each pod, so that updates need not read it back from the database
+    private final Map<String, PodInfoRecord> knownPods = new ConcurrentHashMap<>();
+
     private enum Operators {
         In,
         Exists,
@@ -79,11 +86,32 @@ class PodEventsToDatabase {
         }
     }
 
+    /**
+     * Whether a pod_info row counts against the resources of its node. The node_info triggers and the spare
+     * capacity index both use this, so that they agree on which pods hold resources.
+     */
+    static boolean occupiesNode(@Nullable final String nodeName, final String status) {
+        return nodeName != null && !status.equals("Succeeded") && !status.equals("Failed");
+    }
+
     /**
      * This trigger is used to incrementally reflect pod resource requests in the corresponding
      * node tables.
+     *
+     * By default, every pod_info row change issues its own update against node_info, using a prepared statement
+     * that is cached per database session. Within aggregate(), row changes instead accumulate per-node deltas,
+     * which are applied with one update per affected node when the batch completes.
      */
     public static class NodeInfoIncrementalUpdate implements Trigger {
+        private static final String UPDATE_NODE_INFO =
+                "update node_info set node_info.cpu_allocated = node_info.cpu_allocated + ?," +
+                "node_info.memory_allocated = node_info.memory_allocated + ?," +
+                "node_info.ephemeral_storage_allocated = node_info.ephemeral_storage_allocated + ?," +
+                "node_info.pods_allocated = node_info.pods_allocated + ? " +
+                "where node_info.name = ?";
+
+        // Triggers fire on the thread executing the statement, so an aggregation scope is tracked per thread
+        private static final ThreadLocal<Map<String, long[]>> PENDING_DELTAS = new ThreadLocal<>();
 
         @Override
         public void init(final Connection connection, final String s,
@@ -93,24 +121,28 @@ class PodEventsToDatabase {
         @Override
         public void fire(final Connection connection, final Object[] oldRow, final Object[] newRow)
                          throws SQLException {
-            try (final PreparedStatement stmt = connection.prepareStatement(
-                    "update node_info set node_info.cpu_allocated = node_info.cpu_allocated + ?," +
-                     "node_info.memory_allocated = node_info.memory_allocated + ?," +
-                     "node_info.ephemeral_storage_allocated = node_info.ephemeral_storage_allocated + ?," +
-                     "node_info.pods_allocated = node_info.pods_allocated + ? " +
-                     "where node_info.name = ?")) {
-                final boolean isInsert = (oldRow == null && newRow != null && newRow[2] != null);
-                final boolean isDeletion = (oldRow != null && newRow == null && oldRow[2] != null);
-                final boolean isNodeNameUpdate =
-                        oldRow != null && newRow != null && oldRow[2] == null && newRow[2] != null;
-                if (isDeletion) {
-                    applyPodInfoUpdateAgainstNode(stmt, oldRow, (String) oldRow[2], true);
-                } else if (isInsert || isNodeNameUpdate) {
-                    applyPodInfoUpdateAgainstNode(stmt, newRow, (String) newRow[2], false);
-                }
+            // The old row's resources are released and the new row's are reserved, unless neither the node nor
+            // the requests changed. This covers pods that are placed, moved, returned to pending, or that finish.
+            final String oldNode = oldRow == null ? null : occupiedNode(oldRow);
+            final String newNode = newRow == null ? null : occupiedNode(newRow);
+            if (oldNode != null && oldNode.equals(newNode)
+                    && Arrays.equals(oldRow, 4, 8, newRow, 4, 8)) { // the four *_REQUEST columns
+                return;
+            }
+            if (oldNode != null) {
+                applyPodInfoUpdateAgainstNode(connection, oldRow, oldNode, true);
+            }
+            if (newNode != null) {
+                applyPodInfoUpdateAgainstNode(connection, newRow, newNode, false);
             }
         }
 
+        @Nullable
+        private static String occupiedNode(final Object[] row) {
+            final String nodeName = (String) row[2]; // NODE_NAME
+            return occupiesNode(nodeName, (String) row[1]) ? nodeName : null; // STATUS
+        }
+
         @Override
         public void close() {
         }
@@ -119,16 +151,70 @@ class PodEventsToDatabase {
         public void remove() {
         }
 
-        private void applyPodInfoUpdateAgainstNode(final PreparedStatement statement, final Object[] row,
+        /**
+         * Executes a batch of pod_info changes in a transaction, and reflects them in node_info using one update
+         * per affected node at the end of the batch. The resulting node_info totals are the same as when every
+         * row is applied individually, but they only become visible once the batch commits. Batches that rely on
+         * node_info being updated after every row, like conditional placements, should not use this.
+         */
+        static void aggregate(final DSLContext conn, final Consumer<DSLContext> batch) {
+            if (PENDING_DELTAS.get() != null) {
+                batch.accept(conn);
+                return;
+            }
+            conn.transaction(configuration -> {
+                final DSLContext txCtx = DSL.using(configuration);
+                final Map<String, long[]> deltas = new HashMap<>();
+                PENDING_DELTAS.set(deltas);
+                try {
+                    batch.accept(txCtx);
+                } finally {
+                    PENDING_DELTAS.remove();
+                }
+                if (deltas.isEmpty()) {
+                    return;
+                }
+                txCtx.connection(connection -> {
+                    try (final PreparedStatement stmt = connection.prepareStatement(UPDATE_NODE_INFO)) {
+                        for (final Map.Entry<String, long[]> entry : deltas.entrySet()) {
+                            setParameters(stmt, entry.getValue(), entry.getKey());
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                });
+                LOG.trace("Applied node_info updates for {} nodes in one batch", deltas.size());
+            });
+        }
+
+        private void applyPodInfoUpdateAgainstNode(final Connection connection, final Object[] row,
                                                    final String nodeName, final boolean isDeletion)
                                                    throws SQLException {
             final int sign = isDeletion ? -1 : 1;
-            statement.setLong(1, sign * ((long) row[4])); // CPU_REQUEST
-            statement.setLong(2, sign * ((long) row[5])); // MEMORY_REQUEST
-            statement.setLong(3, sign * ((long) row[6])); // EPHEMERAL_STORAGE_REQUEST
-            statement.setLong(4, sign * ((long) row[7])); // PODS_REQUEST
-            statement.setString(5, nodeName);
-            statement.execute();
+            final long[] delta = {sign * ((long) row[4]),  // CPU_REQUEST
+                                  sign * ((long) row[5]),  // MEMORY_REQUEST
+                                  sign * ((long) row[6]),  // EPHEMERAL_STORAGE_REQUEST
+                                  sign * ((long) row[7])}; // PODS_REQUEST
+            final Map<String, long[]> pendingDeltas = PENDING_DELTAS.get();
+            if (pendingDeltas != null) {
+                final long[] total = pendingDeltas.computeIfAbsent(nodeName, k -> new long[delta.length]);
+                for (int i = 0; i < delta.length; i++) {
+                    total[i] += delta[i];
+                }
+                return;
+            }
+            try (final PreparedStatement statement = connection.prepareStatement(UPDATE_NODE_INFO)) {
+                setParameters(statement, delta, nodeName);
+                statement.execute();
+            }
+        }
+
+        private static void setParameters(final PreparedStatement statement, final long[] delta,
+                                          final String nodeName) throws SQLException {
+            for (int i = 0; i < delta.length; i++) {
+                statement.setLong(i + 1, delta[i]);
+            }
+            statement.setString(delta.length + 1, nodeName);
         }
     }
 
@@ -149,48 +235,171 @@ class PodEventsToDatabase {
         return event;
     }
 
+    /**
+     * Applies a batch of events, in order, within one transaction. The writes for all events are issued as a
+     * single JDBC batch, and node_info is updated once per affected node (see NodeInfoIncrementalUpdate).
+     */
+    void handleBatch(final List<PodEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        final List<PodEvent> applied = new ArrayList<>(events.size());
+        // Changes to the known pods, which only take effect once the batch commits. Deleted pods map to null.
+        final Map<String, PodInfoRecord> changes = new HashMap<>();
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            NodeInfoIncrementalUpdate.aggregate(conn, txCtx -> {
+                applied.clear();
+                changes.clear();
+                final List<Query> queries = new ArrayList<>();
+                for (final PodEvent event : events) {
+                    final Pod pod = event.getPod();
+                    final String podName = pod.getMetadata().getName();
+                    switch (event.getAction()) {
+                        case ADDED: {
+                            final PodInfoRecord podInfo = podInfoRecord(pod);
+                            queries.addAll(addPodQueries(pod, podInfo, txCtx));
+                            changes.put(podName, podInfo);
+                            break;
+                        }
+                        case UPDATED: {
+                            final PodInfoRecord existing = changes.containsKey(podName) ? changes.get(podName)
+                                                                                        : knownPods.get(podName);
+                            final PodInfoRecord podInfo = podInfoRecord(pod);
+                            if (!needsUpdate(podName, existing, podInfo)) {
+                                continue;
+                            }
+                            queries.add(upsertPodInfo(podInfo, txCtx));
+                            changes.put(podName, podInfo);
+                            break;
+                        }
+                        case DELETED:
+                            queries.add(deletePodQuery(pod, txCtx));
+                            changes.put(podName, null);
+                            break;
+                        default:
+                            throw new IllegalArgumentException(event.toString());
+                    }
+                    applied.add(event);
+                }
+                txCtx.batch(queries).execute();
+            });
+        }
+        changes.forEach((podName, podInfo) -> {
+            if (podInfo == null) {
+                knownPods.remove(podName);
+            } else {
+                knownPods.put(podName, podInfo);
+            }
+        });
+        changes.forEach(this::updateSpareCapacity);
+        LOG.trace("Applied a batch of {} pod events", applied.size());
+    }
+
     private void addPod(final Pod pod) {
         LOG.trace("Adding pod {}", pod.getMetadata().getName());
+        final PodInfoRecord podInfo = podInfoRecord(pod);
         try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
-            final List<Query> inserts = new ArrayList<>();
-            inserts.addAll(updatePodRecord(pod, conn));
-            inserts.addAll(updateContainerInfoForPod(pod, conn));
-            inserts.addAll(updatePodNodeSelectorLabels(pod, conn));
-            inserts.addAll(updatePodLabels(conn, pod));
-            // updateVolumeInfoForPod(pod, pvcToPv, conn);
-            inserts.addAll(updatePodTolerations(pod, conn));
-            inserts.addAll(updatePodAffinity(pod, conn));
-            conn.batch(inserts).execute();
+            conn.batch(addPodQueries(pod, podInfo, conn)).execute();
         }
+        knownPods.put(pod.getMetadata().getName(), podInfo);
+        updateSpareCapacity(pod.getMetadata().getName(), podInfo);
+    }
+
+    private List<Query> addPodQueries(final Pod pod, final PodInfoRecord podInfo, final DSLContext conn) {
+        final List<Query> inserts = new ArrayList<>();
+        inserts.add(upsertPodInfo(podInfo, conn));
+        inserts.addAll(updateContainerInfoForPod(pod, conn));
+        inserts.addAll(updatePodNodeSelectorLabels(pod, conn));
+        inserts.addAll(updatePodLabels(conn, pod));
+        // updateVolumeInfoForPod(pod, pvcToPv, conn);
+        inserts.addAll(updatePodTolerations(pod, conn));
+        inserts.addAll(updatePodAffinity(pod, conn));
+        return inserts;
     }
 
     private void deletePod(final Pod pod) {
         LOG.trace("Deleting pod {}", pod.getMetadata().getName());
-        // The assumption here is that all foreign key references to pod_info.pod_name will be deleted using
-        // a delete cascade
         try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
-            conn.deleteFrom(Tables.POD_INFO)
-                .where(Tables.POD_INFO.POD_NAME.eq(pod.getMetadata().getName())).execute();
+            deletePodQuery(pod, conn).execute();
         }
+        knownPods.remove(pod.getMetadata().getName());
+        updateSpareCapacity(pod.getMetadata().getName(), null);
+    }
+
+    private Query deletePodQuery(final Pod pod, final DSLContext conn) {
+        // The assumption here is that all foreign key references to pod_info.pod_name will be deleted using
+        // a delete cascade
+        return conn.deleteFrom(Tables.POD_INFO)
+                   .where(Tables.POD_INFO.POD_NAME.eq(pod.getMetadata().getName()));
     }
 
     private void updatePod(final Pod pod) {
+        final String podName = pod.getMetadata().getName();
+        final PodInfoRecord podInfo = podInfoRecord(pod);
+        if (!needsUpdate(podName, knownPods.get(podName), podInfo)) {
+            return;
+        }
+        LOG.trace("Updating pod {}", podName);
         try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
-            final PodInfoRecord existingPodInfoRecord = conn.selectFrom(Tables.POD_INFO)
-                    .where(Tables.POD_INFO.POD_NAME.eq(pod.getMetadata().getName()))
-                    .fetchOne();
-            if (existingPodInfoRecord == null) {
-                LOG.trace("Pod {} does not exist. Skipping", pod.getMetadata().getName());
-                return;
-            }
-            LOG.trace("Updating pod {}", pod.getMetadata().getName());
-            final List<Query> insertOrUpdate = updatePodRecord(pod, conn);
-            conn.batch(insertOrUpdate).execute();
+            upsertPodInfo(podInfo, conn).execute();
         }
+        knownPods.put(podName, podInfo);
+        updateSpareCapacity(podName, podInfo);
     }
 
-    private List<Query> updatePodRecord(final Pod pod, final DSLContext conn) {
-        final List<Query> inserts = new ArrayList<>();
+    /**
+     * Records that the scheduler wrote a pod's node_name directly to pod_info, so that the next event for the
+     * pod is compared against what the database holds.
+     *
+     * @param nodeName the node_name written, or null if the pod was returned to pending
+     */
+    void onNodeNameWritten(final String podName, @Nullable final String nodeName) {
+        knownPods.computeIfPresent(podName, (name, known) -> {
+            final PodInfoRecord updated = new PodInfoRecord();
+            updated.from(known);
+            updated.setNodeName(nodeName);
+            return updated;
+        });
+    }
+
+    /**
+     * Decides whether an update needs to be written, using the pod_info row last written for the pod rather
+     * than reading it back from the database.
+     */
+    private boolean needsUpdate(final String podName, @Nullable final PodInfoRecord existing,
+                                final PodInfoRecord podInfo) {
+        if (existing == null) {
+            LOG.trace("Pod {} does not exist. Skipping", podName);
+            return false;
+        }
+        if (existing.equals(podInfo)) {
+            LOG.trace("Pod {} has no changes to its pod_info columns. Skipping", podName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reflects the pod_info row just written for a pod in the spare capacity index, using the same rule and
+     * request values as the node_info triggers. This is a no-op if the placement was already reserved, for
+     * example by the scheduler itself.
+     *
+     * @param podInfo the row written, or null if the pod was deleted
+     */
+    private void updateSpareCapacity(final String podName, @Nullable final PodInfoRecord podInfo) {
+        final SpareCapacityIndex index = dbConnectionPool.getSpareCapacityIndex();
+        if (podInfo == null || !occupiesNode(podInfo.getNodeName(), podInfo.getStatus())) {
+            index.release(podName);
+            return;
+        }
+        index.reserve(podName, podInfo.getNodeName(), podInfo.getCpuRequest(), podInfo.getMemoryRequest(),
+                      podInfo.getPodsRequest());
+    }
+
+    /**
+     * Computes the pod_info row for a pod.
+     */
+    private PodInfoRecord podInfoRecord(final Pod pod) {
         final List<ResourceRequirements> resourceRequirements = pod.getSpec().getContainers().stream()
                 .map(Container::getResources)
                 .collect(Collectors.toList());
@@ -243,74 +452,41 @@ class PodEventsToDatabase {
         }
 
         final int priority = Math.min(pod.getSpec().getPriority() == null ? 10 : pod.getSpec().getPriority(), 100);
-        final PodInfo p = Tables.POD_INFO;
-        final InsertOnDuplicateSetMoreStep<PodInfoRecord> podInfoInsert = conn.insertInto(Tables.POD_INFO,
-                p.POD_NAME,
-                p.STATUS,
-                p.NODE_NAME,
-                p.NAMESPACE,
-                p.CPU_REQUEST,
-                p.MEMORY_REQUEST,
-                p.EPHEMERAL_STORAGE_REQUEST,
-                p.PODS_REQUEST,
-                p.OWNER_NAME,
-                p.CREATION_TIMESTAMP,
-                p.HAS_NODE_SELECTOR_LABELS,
-                p.HAS_POD_AFFINITY_REQUIREMENTS,
-                p.HAS_POD_ANTI_AFFINITY_REQUIREMENTS,
-                p.PRIORITY,
-                p.SCHEDULERNAME,
-                p.EQUIVALENCE_CLASS,
-                p.QOS_CLASS)
-                .values(pod.getMetadata().getName(),
-                        pod.getStatus().getPhase(),
-                        pod.getSpec().getNodeName(),
-                        pod.getMetadata().getNamespace(),
-                        cpuRequest,
-                        memoryRequest,
-                        ephemeralStorageRequest,
-                        podsRequest,
-                        ownerName,
-                        pod.getMetadata().getCreationTimestamp(),
-                        hasNodeSelector,
-                        hasPodAffinityRequirements,
-                        hasPodAntiAffinityRequirements,
-                        priority,
-                        pod.getSpec().getSchedulerName(),
-                        equivalenceClassHash(pod),
-                        getQosClass(resourceRequirements).toString()
-                )
-                .onDuplicateKeyUpdate()
-                .set(p.POD_NAME, pod.getMetadata().getName())
-                .set(p.STATUS, pod.getStatus().getPhase())
-                .set(p.NODE_NAME, pod.getSpec().getNodeName())
-                .set(p.NAMESPACE, pod.getMetadata().getNamespace())
-                .set(p.CPU_REQUEST, cpuRequest)
-                .set(p.MEMORY_REQUEST, memoryRequest)
-                .set(p.EPHEMERAL_STORAGE_REQUEST, ephemeralStorageRequest)
-                .set(p.PODS_REQUEST, podsRequest)
+        return new PodInfoRecord(pod.getMetadata().getName(),
+                pod.getStatus().getPhase(),
+                pod.getSpec().getNodeName(),
+                pod.getMetadata().getNamespace(),
+                cpuRequest,
+                memoryRequest,
+                ephemeralStorageRequest,
+                podsRequest,
 
                 // The first owner reference is used to break symmetries.
-                .set(p.OWNER_NAME, ownerName)
-                .set(p.CREATION_TIMESTAMP, pod.getMetadata().getCreationTimestamp())
-                .set(p.HAS_NODE_SELECTOR_LABELS, hasNodeSelector)
-                .set(p.HAS_POD_AFFINITY_REQUIREMENTS, hasPodAffinityRequirements)
-                .set(p.HAS_POD_ANTI_AFFINITY_REQUIREMENTS, hasPodAntiAffinityRequirements)
+                ownerName,
+                pod.getMetadata().getCreationTimestamp(),
 
                 // We cap the max priority to 100 to prevent overflow issues in the solver
-                .set(p.PRIORITY, priority)
+                priority,
 
                 // This field is important because while we injest info about all pods, we only make scheduling
                 // decisions for pods that have dcm-scheduler as their name
-                .set(p.SCHEDULERNAME, pod.getSpec().getSchedulerName())
+                pod.getSpec().getSchedulerName(),
+                hasNodeSelector,
+                hasPodAffinityRequirements,
+                hasPodAntiAffinityRequirements,
 
                 // Compute equivalent class similar to what the default scheduler does
-                .set(p.EQUIVALENCE_CLASS, equivalenceClassHash(pod))
+                equivalenceClassHash(pod),
 
                 // QoS classes are defined based on the requests/limits configured for containers in the pod
-                .set(p.QOS_CLASS, getQosClass(resourceRequirements).toString());
-        inserts.add(podInfoInsert);
-        return inserts;
+                getQosClass(resourceRequirements).toString());
+    }
+
+    private Query upsertPodInfo(final PodInfoRecord podInfo, final DSLContext conn) {
+        return conn.insertInto(Tables.POD_INFO)
+                   .set(podInfo)
+                   .onDuplicateKeyUpdate()
+                   .set(podInfo);
     }
 
     private boolean hasNodeSelector(final Pod pod) {
@@ -131,7 +131,7 @@ class Policies {
         Preconditions.checkArgument(withHardConstraint || withSoftConstraint);
 
         // We don't handle outer joins yet, so this policy currently assumes that there is at least one running
-        // pod per node. If not, those nodes will lack a row in the spare_capacity_per_node view. This is fine for
+        // pod per node. If not, those nodes will lack a row in the spare_capacity_per_node table. This is fine for
         // Kubernetes, because there always some system pods running on each node.
         final List<String> views = new ArrayList<>();
         final String hardConstraint = "create view constraint_pods_slack_per_node as " +
@@ -9,6 +9,12 @@ package org.dcm;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
@@ -20,13 +26,17 @@ import org.apache.commons.cli.ParseException;
 import org.dcm.backend.MinizincSolver;
 import org.dcm.backend.OrToolsSolver;
 import org.dcm.k8s.generated.Tables;
+import org.dcm.k8s.generated.tables.NodeInfo;
+import org.dcm.k8s.generated.tables.PodInfo;
 import org.jooq.DSLContext;
 import org.jooq.Record;
 import org.jooq.Result;
 import org.jooq.Update;
+import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -36,12 +46,17 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -53,23 +68,49 @@ import static com.codahale.metrics.MetricRegistry.name;
 public final class Scheduler {
     private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
     private static final String MINIZINC_MODEL_PATH = "/tmp";
-    private static final int DEFAULT_SOLVER_MAX_TIME_IN_SECONDS = 1;
+    static final int DEFAULT_SOLVER_MAX_TIME_IN_SECONDS = 1;
+    private static final int MAX_ADAPTIVE_BATCH_SIZE = 1000;
+    private static final int MAX_INGESTION_BATCH_SIZE = 1000;
+    // Like the default Kubernetes scheduler, always consider at least this many nodes when pruning
+    static final int MIN_CANDIDATE_NODES = 100;
 
     // This constant is also used in our views: see scheduler_tables.sql. Do not change.
     static final String SCHEDULER_NAME = "dcm-scheduler";
     private final Model model;
 
     private final AtomicInteger batchId = new AtomicInteger(0);
+    // Incremented whenever pipelined scheduling commits placements or a placement is returned to pending, so that
+    // a batch can tell whether the placements it was solved against changed before it was committed
+    private final AtomicLong placementVersion = new AtomicLong(0);
     private final MetricRegistry metrics = new MetricRegistry();
     private final Meter solverInvocations = metrics.meter("solverInvocations");
     private final Timer updateDataTimes = metrics.timer(name(Scheduler.class, "updateDataTimes"));
     private final Timer solveTimes = metrics.timer(name(Scheduler.class, "solveTimes"));
+    private final Timer bindingLatency = metrics.timer(name(Scheduler.class, "bindingLatency"));
     private final ThreadFactory namedThreadFactory =
             new ThreadFactoryBuilder().setNameFormat("computation-thread-%d").build();
     private final PodEventsToDatabase podEventsToDatabase;
     private final DBConnectionPool dbConnectionPool;
     private final ExecutorService scheduler = Executors.newSingleThreadExecutor(namedThreadFactory);
     private final LinkedBlockingDeque<Boolean> notificationQueue = new LinkedBlockingDeque<>();
+    private final Supplier<Model> modelFactory;
+    private final String solverToUse;
+    private final List<String> policies;
+    private int fetchThreads = 0;
+
+    // Only set when pipelining is enabled. Batches alternate between this model and the main one, so that
+    // the next batch's data can be fetched while the current batch is in the solver.
+    @Nullable private Model pipelineModel = null;
+    @Nullable private ExecutorService pipelineExecutor = null;
+    @Nullable private volatile BatchSizeController batchSizeController = null;
+
+    // Only set when sharding is enabled: one model per shard that can be solved concurrently
+    @Nullable private List<Model> shardModels = null;
+    @Nullable private NodeCandidatePruner nodeCandidatePruner = null;
+    @Nullable private PodEventIngestionQueue ingestionQueue = null;
+    @Nullable private ExecutorService shardExecutor = null;
+    private volatile int appliedBatchSize = BatchSizeController.DEFAULT_BATCH_SIZE;
+    private final BindingExecutor bindingExecutor;
 
     Scheduler(final DBConnectionPool dbConnectionPool, final List<String> policies, final String solverToUse,
               final boolean debugMode, final int numThreads) {
@@ -78,6 +119,18 @@ public final class Scheduler {
 
     Scheduler(final DBConnectionPool dbConnectionPool, final List<String> policies, final String solverToUse,
               final boolean debugMode, final int numThreads, final int solverMaxTimeInSeconds) {
+        this(dbConnectionPool, policies, solverToUse, debugMode, numThreads, solverMaxTimeInSeconds,
+             BindingExecutor.DEFAULT_CONCURRENCY, BindingExecutor.DEFAULT_MAX_PENDING_BINDINGS);
+    }
+
+    /**
+     * @param bindConcurrency the number of threads to use for binding pods to nodes
+     * @param maxPendingBindings the number of bindings that may be outstanding before scheduling rounds block
+     *                           (see BindingExecutor)
+     */
+    Scheduler(final DBConnectionPool dbConnectionPool, final List<String> policies, final String solverToUse,
+              final boolean debugMode, final int numThreads, final int solverMaxTimeInSeconds,
+              final int bindConcurrency, final int maxPendingBindings) {
         final InputStream resourceAsStream = Scheduler.class.getResourceAsStream("/git.properties");
         try (final BufferedReader gitPropertiesFile = new BufferedReader(new InputStreamReader(resourceAsStream,
                 StandardCharsets.UTF_8))) {
@@ -88,13 +141,25 @@ public final class Scheduler {
         }
         this.dbConnectionPool = dbConnectionPool;
         this.podEventsToDatabase = new PodEventsToDatabase(dbConnectionPool);
-        this.model = createDcmModel(dbConnectionPool.getConnectionToDb(), solverToUse, policies, numThreads,
-                                    solverMaxTimeInSeconds);
+        this.solverToUse = solverToUse;
+        this.policies = policies;
+        this.modelFactory = () -> createDcmModel(dbConnectionPool.getConnectionToDb(), solverToUse, policies,
+                                                 numThreads, solverMaxTimeInSeconds);
+        this.model = modelFactory.get();
+        this.bindingExecutor = new BindingExecutor(bindConcurrency, maxPendingBindings,
+                                                   BindingExecutor.DEFAULT_MAX_ATTEMPTS,
+                                                   BindingExecutor.DEFAULT_INITIAL_BACKOFF_MS, this::returnToPending,
+                                                   bindingLatency);
         LOG.info("Initialized scheduler:: model:{}", model);
     }
 
     void handlePodEvent(final PodEvent podEvent) {
-        podEventsToDatabase.handle(podEvent);
+        final PodEventIngestionQueue queue = ingestionQueue;
+        if (queue != null) {
+            queue.submit(podEvent);
+        } else {
+            podEventsToDatabase.handle(podEvent);
+        }
         if (podEvent.getAction().equals(PodEvent.Action.ADDED)
             && podEvent.getPod().getStatus().getPhase().equals("Pending")
             && podEvent.getPod().getSpec().getNodeName() == null
@@ -109,8 +174,8 @@ public final class Scheduler {
                 () -> {
                     while (!Thread.currentThread().isInterrupted()) {
                         try {
-                            notificationQueue.take();
-                            LOG.info("Attempting schedule");
+                            final int numNotifications = awaitPendingPodBatch(batchCount, batchTimeMs);
+                            LOG.info("Attempting schedule after {} pod notifications", numNotifications);
                             scheduleAllPendingPods(binder);
                         } catch (final InterruptedException e) {
                             Thread.currentThread().interrupt();
@@ -124,51 +189,481 @@ public final class Scheduler {
         );
     }
 
+    /**
+     * Blocks until either batchCount pending pod notifications have accumulated, or batchTimeMs have elapsed
+     * since the first one arrived. All notifications queued by then are consumed, so that they are handled by a
+     * single scheduling round.
+     *
+     * @return the number of notifications consumed
+     */
+    int awaitPendingPodBatch(final int batchCount, final long batchTimeMs) throws InterruptedException {
+        notificationQueue.take();
+        int numNotifications = 1;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchTimeMs);
+        while (numNotifications < batchCount) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || notificationQueue.poll(remaining, TimeUnit.NANOSECONDS) == null) {
+                break;
+            }
+            numNotifications++;
+        }
+        final List<Boolean> drained = new ArrayList<>();
+        numNotifications += notificationQueue.drainTo(drained);
+        return numNotifications;
+    }
+
+    /**
+     * Schedules pending pods in rounds until none are left, and issues bindings for the placements.
+     *
+     * @return a future that completes once all of the bindings issued have either succeeded or been given up on,
+     *         holding whether each binding succeeded
+     */
     @SuppressWarnings("unchecked")
-    void scheduleAllPendingPods(final IPodToNodeBinder binder) {
+    ListenableFuture<List<Boolean>> scheduleAllPendingPods(final IPodToNodeBinder binder) {
+        final PodEventIngestionQueue queue = ingestionQueue;
+        if (queue != null) {
+            // Make sure that every pod event received so far is reflected in the database
+            try {
+                queue.awaitWatermark(queue.getLatestVersion());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Futures.immediateFuture(Collections.emptyList());
+            }
+        }
+        if (pipelineModel != null) {
+            return scheduleAllPendingPodsPipelined(binder, pipelineModel);
+        }
+        if (shardModels != null) {
+            return scheduleAllPendingPodsSharded(binder, shardModels);
+        }
+        final List<ListenableFuture<List<Boolean>>> bindings = new ArrayList<>();
         int fetchCount = dbConnectionPool.getConnectionToDb().fetchCount(Tables.PODS_TO_ASSIGN_NO_LIMIT);
         while (fetchCount > 0) {
             LOG.info("Fetchcount is {}", fetchCount);
             final int batch = batchId.incrementAndGet();
+            applyBatchSize(fetchCount);
 
             final long now = System.nanoTime();
             final Result<? extends Record> podsToAssignUpdated = runOneLoop();
             final long totalTime = System.nanoTime() - now;
             solverInvocations.mark();
+            final BatchSizeController controller = batchSizeController;
+            if (controller != null) {
+                controller.observe(podsToAssignUpdated.size(), totalTime, fetchCount);
+            }
 
             fetchCount -= podsToAssignUpdated.size();
+            bindings.add(writeAndBind(binder, podsToAssignUpdated, batch, totalTime));
+        }
+        return allBindings(bindings);
+    }
 
-            // First, locally update the node_name entries for pods
-            try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+    private ListenableFuture<List<Boolean>> writeAndBind(final IPodToNodeBinder binder,
+                                                         final Result<? extends Record> podsToAssignUpdated,
+                                                         final int batch, final long totalTime) {
+        // First, locally update the node_name entries for pods. The node_info triggers apply the resulting
+        // resource usage with one update per node rather than one per pod.
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            PodEventsToDatabase.NodeInfoIncrementalUpdate.aggregate(conn, txCtx -> {
                 final List<Update<?>> updates = new ArrayList<>();
                 podsToAssignUpdated.forEach(r -> {
                     final String podName = r.get(Tables.PODS_TO_ASSIGN.POD_NAME);
                     final String nodeName = r.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
                     updates.add(
-                        conn.update(Tables.POD_INFO)
+                        txCtx.update(Tables.POD_INFO)
                                 .set(Tables.POD_INFO.NODE_NAME, nodeName)
                                 .where(Tables.POD_INFO.POD_NAME.eq(podName))
                     );
                     LOG.info("Scheduling decision for pod {} as part of batch {} made in time: {}",
                              podName, batch, totalTime);
                 });
-                conn.batch(updates).execute();
+                txCtx.batch(updates).execute();
+            });
+        }
+        podsToAssignUpdated.forEach(r -> podEventsToDatabase.onNodeNameWritten(
+                r.get(Tables.PODS_TO_ASSIGN.POD_NAME), r.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME)));
+        podsToAssignUpdated.forEach(this::reserveSpareCapacity);
+        LOG.info("Done with updates");
+        // Next, issue bind requests for pod -> node_name
+        final ListenableFuture<List<Boolean>> bindings = bindingExecutor.bindAll(binder, podsToAssignUpdated);
+        LOG.info("Done with bindings");
+        return bindings;
+    }
+
+    /**
+     * Clears the placement of a pod that could not be bound, so that a later round schedules it again. The
+     * node_info triggers release the pod's resources on the node.
+     */
+    private void returnToPending(final String podName, final String nodeName) {
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            final int updated = conn.update(Tables.POD_INFO)
+                                    .set(Tables.POD_INFO.NODE_NAME, (String) null)
+                                    .where(Tables.POD_INFO.POD_NAME.eq(podName))
+                                    .and(Tables.POD_INFO.NODE_NAME.eq(nodeName))
+                                    .execute();
+            if (updated > 0) {
+                podEventsToDatabase.onNodeNameWritten(podName, null);
+            }
+        }
+        dbConnectionPool.getSpareCapacityIndex().release(podName);
+        placementVersion.incrementAndGet();
+        notificationQueue.add(true);
+    }
+
+    private static ListenableFuture<List<Boolean>> allBindings(final List<ListenableFuture<List<Boolean>>> batches) {
+        return Futures.transform(Futures.allAsList(batches),
+                                 results -> results.stream().flatMap(List::stream).collect(Collectors.toList()),
+                                 MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Schedules pending pods in batches, splitting each batch into shards that do not share any nodes (see
+     * ShardPlanner). Shards are solved concurrently on separate models, and their placements are merged before
+     * being written and bound. If a shard cannot be solved, the other shards' placements are still committed.
+     */
+    private ListenableFuture<List<Boolean>> scheduleAllPendingPodsSharded(final IPodToNodeBinder binder,
+                                                                          final List<Model> models) {
+        final ExecutorService executor = Preconditions.checkNotNull(shardExecutor);
+        final List<ListenableFuture<List<Boolean>>> bindings = new ArrayList<>();
+        int fetchCount = dbConnectionPool.getConnectionToDb().fetchCount(Tables.PODS_TO_ASSIGN_NO_LIMIT);
+        while (fetchCount > 0) {
+            LOG.info("Fetchcount is {}", fetchCount);
+            final int batch = batchId.incrementAndGet();
+            applyBatchSize(fetchCount);
+
+            final long now = System.nanoTime();
+            final List<ShardPlanner.Shard> shards;
+            @Nullable final Set<String> candidates;
+            try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+                dbConnectionPool.getSpareCapacityIndex().flush(conn);
+                shards = ShardPlanner.plan(conn, models.size());
+                final NodeCandidatePruner pruner = nodeCandidatePruner;
+                candidates = pruner == null ? null : pruner.candidates(conn);
+            }
+            final List<Future<Result<? extends Record>>> futures = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                final Model shardModel = models.get(i);
+                final ShardPlanner.Shard shard = shards.get(i);
+                futures.add(executor.submit(() -> solveShard(shardModel, shard, candidates)));
+            }
+            final Result<Record> podsToAssignUpdated;
+            try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+                podsToAssignUpdated = conn.newResult(Tables.PODS_TO_ASSIGN.fields());
+            }
+            ModelException failure = null;
+            for (final Future<Result<? extends Record>> future : futures) {
+                try {
+                    podsToAssignUpdated.addAll(awaitShard(future));
+                } catch (final ModelException e) {
+                    failure = e;
+                }
+            }
+            final long totalTime = System.nanoTime() - now;
+            solverInvocations.mark();
+            LOG.info("Solved batch {} as {} shards in {}ns", batch, shards.size(), totalTime);
+            final BatchSizeController controller = batchSizeController;
+            if (controller != null) {
+                controller.observe(podsToAssignUpdated.size(), totalTime, fetchCount);
+            }
+            fetchCount -= podsToAssignUpdated.size();
+            bindings.add(writeAndBind(binder, podsToAssignUpdated, batch, totalTime));
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return allBindings(bindings);
+    }
+
+    private Result<? extends Record> solveShard(final Model shardModel, final ShardPlanner.Shard shard,
+                                                @Nullable final Set<String> candidates) {
+        shardModel.setFetchFilter(Tables.PODS_TO_ASSIGN.getName(),
+                                  Tables.PODS_TO_ASSIGN.POD_NAME.in(shard.getPods()));
+        shardModel.setFetchFilter(Tables.POD_NODE_SELECTOR_MATCHES.getName(),
+                                  Tables.POD_NODE_SELECTOR_MATCHES.POD_NAME.in(shard.getPods()));
+        shardModel.setFetchFilter(Tables.PODS_THAT_TOLERATE_NODE_TAINTS.getName(),
+                                  Tables.PODS_THAT_TOLERATE_NODE_TAINTS.POD_NAME.in(shard.getPods()));
+        if (candidates != null) {
+            final Set<String> shardCandidates = Sets.intersection(shard.getNodes(), candidates);
+            shardModel.setFetchFilter(Tables.SPARE_CAPACITY_PER_NODE.getName(),
+                                      Tables.SPARE_CAPACITY_PER_NODE.NAME.in(shardCandidates));
+            try {
+                return fetchAndSolve(shardModel);
+            } catch (final ModelException e) {
+                LOG.info("Could not solve shard using {} candidate nodes, retrying with all {} nodes of the shard",
+                         shardCandidates.size(), shard.getNodes().size());
+            }
+        }
+        shardModel.setFetchFilter(Tables.SPARE_CAPACITY_PER_NODE.getName(),
+                                  Tables.SPARE_CAPACITY_PER_NODE.NAME.in(shard.getNodes()));
+        return fetchAndSolve(shardModel);
+    }
+
+    private Result<? extends Record> awaitShard(final Future<Result<? extends Record>> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Schedules pending pods in batches, fetching the data for the next batch while the current batch is in the
+     * solver. The pods of a batch are claimed in the pods_in_flight table once its data is fetched, so that the
+     * next batch only considers other pending pods. Because the next batch may be prepared before the current
+     * batch's placements are written, placements are only committed if they are still valid (see
+     * commitPlacements()). Pods whose placements are rejected remain pending and are retried by a later batch. Once
+     * no pods are left for a batch fetched in the background, rejected pods are retried by a batch whose data is
+     * fetched after every earlier batch is committed.
+     */
+    private ListenableFuture<List<Boolean>> scheduleAllPendingPodsPipelined(final IPodToNodeBinder binder,
+                                                                            final Model otherModel) {
+        final ExecutorService executor = Preconditions.checkNotNull(pipelineExecutor);
+        final List<ListenableFuture<List<Boolean>>> bindings = new ArrayList<>();
+        Model current = model;
+        Model next = otherModel;
+        int batch = batchId.incrementAndGet();
+        FetchedBatch fetched = fetchAndClaim(current, batch);
+        boolean rejectedPlacements = false;
+        while (fetched.numPods > 0) {
+            LOG.info("Batch {} has {} pods", batch, fetched.numPods);
+            final int nextBatch = batchId.incrementAndGet();
+            final Model nextModel = next;
+            final Future<FetchedBatch> nextFetch = executor.submit(() -> fetchAndClaim(nextModel, nextBatch));
+
+            final long now = System.nanoTime();
+            final Result<? extends Record> podsToAssignUpdated;
+            try {
+                podsToAssignUpdated = solve(current);
+            } catch (final ModelException e) {
+                // Return the pods of both batches to the pending pods before propagating the failure
+                awaitFetch(nextFetch);
+                releaseClaims(batch);
+                releaseClaims(nextBatch);
+                throw e;
+            }
+            final long totalTime = System.nanoTime() - now;
+            solverInvocations.mark();
+            final BatchSizeController controller = batchSizeController;
+            if (controller != null) {
+                controller.observe(podsToAssignUpdated.size(), fetched.fetchNanos + totalTime, fetched.pendingPods);
+            }
+            final boolean stale = placementVersion.get() != fetched.placementVersion;
+            final Result<? extends Record> committed = commitPlacements(podsToAssignUpdated, batch, totalTime,
+                                                                        stale);
+            rejectedPlacements |= committed.size() < podsToAssignUpdated.size();
+            releaseClaims(batch);
+            bindings.add(bindingExecutor.bindAll(binder, committed));
+
+            fetched = awaitFetch(nextFetch);
+            batch = nextBatch;
+            next = current;
+            current = nextModel;
+            if (fetched.numPods == 0 && rejectedPlacements) {
+                // No batch is in flight, so this fetch sees every placement committed so far
+                rejectedPlacements = false;
+                fetched = fetchAndClaim(current, batch);
+            }
+        }
+        releaseClaims(batch);
+        return allBindings(bindings);
+    }
+
+    /**
+     * Refreshes a model's data and claims the pods it fetched, which are the pods it will attempt to place.
+     */
+    private FetchedBatch fetchAndClaim(final Model batchModel, final int batch) {
+        final int pendingPods = batchSizeController != null
+                ? dbConnectionPool.getConnectionToDb().fetchCount(Tables.PODS_TO_ASSIGN_NO_LIMIT) : 0;
+        applyBatchSize(pendingPods);
+        flushSpareCapacity();
+        // Read before the data, so that placements committed while fetching mark the batch as stale
+        final long version = placementVersion.get();
+        final Timer.Context updateDataTimer = updateDataTimes.time();
+        batchModel.updateData();
+        final long fetchNanos = updateDataTimer.stop();
+        final List<String> podNames = batchModel.getTableData(Tables.PODS_TO_ASSIGN.getName())
+                                                .getValues(Tables.PODS_TO_ASSIGN.POD_NAME);
+        if (!podNames.isEmpty()) {
+            try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+                conn.insertInto(Tables.PODS_IN_FLIGHT, Tables.PODS_IN_FLIGHT.POD_NAME, Tables.PODS_IN_FLIGHT.BATCH_ID)
+                    .select(conn.select(Tables.POD_INFO.POD_NAME, DSL.val(batch))
+                                .from(Tables.POD_INFO)
+                                .where(Tables.POD_INFO.POD_NAME.in(podNames))
+                                .and(Tables.POD_INFO.POD_NAME.notIn(conn.select(Tables.PODS_IN_FLIGHT.POD_NAME)
+                                                                        .from(Tables.PODS_IN_FLIGHT))))
+                    .execute();
+            }
+        }
+        return new FetchedBatch(podNames.size(), fetchNanos, pendingPods, version);
+    }
+
+    /**
+     * Sets the limit on the pods_to_assign view from the batch size controller, if there is one. The view is
+     * only recreated when the limit changes, and the current limit is recorded in the batch_size table.
+     */
+    private void applyBatchSize(final int pendingPods) {
+        final BatchSizeController controller = batchSizeController;
+        if (controller == null) {
+            return;
+        }
+        final int batchSize = controller.nextBatchSize(pendingPods);
+        if (batchSize == appliedBatchSize) {
+            return;
+        }
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            conn.execute("create or replace view pods_to_assign as " +
+                         "select * from pods_to_assign_no_limit limit " + batchSize);
+            conn.transaction(configuration -> {
+                final DSLContext txCtx = DSL.using(configuration);
+                txCtx.deleteFrom(Tables.BATCH_SIZE).execute();
+                txCtx.insertInto(Tables.BATCH_SIZE).values(batchSize).execute();
+            });
+        }
+        appliedBatchSize = batchSize;
+    }
+
+    private void releaseClaims(final int batch) {
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            conn.deleteFrom(Tables.PODS_IN_FLIGHT).where(Tables.PODS_IN_FLIGHT.BATCH_ID.eq(batch)).execute();
+        }
+    }
+
+    private FetchedBatch awaitFetch(final Future<FetchedBatch> fetch) {
+        try {
+            return fetch.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the node_name of each placed pod, provided that the pod is still unassigned and that the node can
+     * still accommodate the pod's requests. The node_info triggers reserve each committed pod's resources before
+     * the next placement is checked, so two batches never overcommit a node. This is why these updates are not
+     * aggregated per node.
+     *
+     * Node selectors and taints only depend on the pod and the node, but inter-pod affinity, inter-pod
+     * anti-affinity and host ports also depend on where other pods are placed. If placements changed after the
+     * batch's data was fetched, the placements of pods with such requirements are therefore rejected rather than
+     * committed against stale data.
+     *
+     * @param stale whether placements were committed or returned to pending after the batch's data was fetched
+     * @return the placements that were committed
+     */
+    private Result<? extends Record> commitPlacements(final Result<? extends Record> podsToAssignUpdated,
+                                                      final int batch, final long totalTime, final boolean stale) {
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            final Result<Record> committed = conn.newResult(podsToAssignUpdated.fields());
+            conn.transaction(configuration -> {
+                final DSLContext txCtx = DSL.using(configuration);
+                final PodInfo p = Tables.POD_INFO;
+                final NodeInfo n = Tables.NODE_INFO;
+                final List<Update<?>> updates = new ArrayList<>();
+                podsToAssignUpdated.forEach(r -> {
+                    final String podName = r.get(Tables.PODS_TO_ASSIGN.POD_NAME);
+                    final String nodeName = r.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
+                    updates.add(
+                        txCtx.update(p)
+                             .set(p.NODE_NAME, nodeName)
+                             .where(p.POD_NAME.eq(podName))
+                             .and(p.NODE_NAME.isNull())
+                             .andExists(txCtx.selectOne()
+                                             .from(n)
+                                             .where(n.NAME.eq(nodeName))
+                                             .and(n.CPU_ALLOCATED.plus(p.CPU_REQUEST).le(n.CPU_ALLOCATABLE))
+                                             .and(n.MEMORY_ALLOCATED.plus(p.MEMORY_REQUEST)
+                                                                    .le(n.MEMORY_ALLOCATABLE))
+                                             .and(n.PODS_ALLOCATED.plus(p.PODS_REQUEST).le(n.PODS_ALLOCATABLE)))
+                             .and(stale ? p.HAS_POD_AFFINITY_REQUIREMENTS.isFalse()
+                                           .and(p.HAS_POD_ANTI_AFFINITY_REQUIREMENTS.isFalse())
+                                           .andNotExists(txCtx.selectOne()
+                                                              .from(Tables.POD_PORTS_REQUEST)
+                                                              .where(Tables.POD_PORTS_REQUEST.POD_NAME.eq(podName)))
+                                        : DSL.noCondition())
+                    );
+                });
+                final int[] updateCounts = txCtx.batch(updates).execute();
+                for (int i = 0; i < updateCounts.length; i++) {
+                    final Record record = podsToAssignUpdated.get(i);
+                    if (updateCounts[i] > 0) {
+                        committed.add(record);
+                        reserveSpareCapacity(record);
+                        LOG.info("Scheduling decision for pod {} as part of batch {} made in time: {}",
+                                 record.get(Tables.PODS_TO_ASSIGN.POD_NAME), batch, totalTime);
+                    }
+                }
+            });
+            if (!committed.isEmpty()) {
+                placementVersion.incrementAndGet();
             }
-            LOG.info("Done with updates");
-            // Next, issue bind requests for pod -> node_name
-            binder.bindManyAsnc(podsToAssignUpdated);
-            LOG.info("Done with bindings");
+            committed.forEach(r -> podEventsToDatabase.onNodeNameWritten(
+                    r.get(Tables.PODS_TO_ASSIGN.POD_NAME), r.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME)));
+            if (committed.size() < podsToAssignUpdated.size()) {
+                LOG.info("{} of {} placements in batch {} conflicted with an earlier batch and will be retried",
+                         podsToAssignUpdated.size() - committed.size(), podsToAssignUpdated.size(), batch);
+            }
+            return committed;
         }
     }
 
     Result<? extends Record> runOneLoop() {
+        flushSpareCapacity();
+        final NodeCandidatePruner pruner = nodeCandidatePruner;
+        if (pruner != null) {
+            final Set<String> candidates;
+            try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+                candidates = pruner.candidates(conn);
+            }
+            model.setFetchFilter(Tables.SPARE_CAPACITY_PER_NODE.getName(),
+                                 Tables.SPARE_CAPACITY_PER_NODE.NAME.in(candidates));
+            try {
+                return fetchAndSolve(model);
+            } catch (final ModelException e) {
+                LOG.info("Could not solve using {} candidate nodes, retrying with all nodes", candidates.size());
+            } finally {
+                model.setFetchFilter(Tables.SPARE_CAPACITY_PER_NODE.getName(), null);
+            }
+        }
+        return fetchAndSolve(model);
+    }
+
+    /**
+     * Brings spare_capacity_per_node up to date with the pod and node events, and placements, seen so far.
+     */
+    private void flushSpareCapacity() {
+        try (final DSLContext conn = dbConnectionPool.getConnectionToDb()) {
+            dbConnectionPool.getSpareCapacityIndex().flush(conn);
+        }
+    }
+
+    private void reserveSpareCapacity(final Record placement) {
+        dbConnectionPool.getSpareCapacityIndex().reserve(placement.get(Tables.PODS_TO_ASSIGN.POD_NAME),
+                                                         placement.get(Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME),
+                                                         placement.get(Tables.PODS_TO_ASSIGN.CPU_REQUEST),
+                                                         placement.get(Tables.PODS_TO_ASSIGN.MEMORY_REQUEST),
+                                                         placement.get(Tables.PODS_TO_ASSIGN.PODS_REQUEST));
+    }
+
+    private Result<? extends Record> fetchAndSolve(final Model batchModel) {
         final Timer.Context updateDataTimer = updateDataTimes.time();
-        model.updateData();
+        batchModel.updateData();
         updateDataTimer.stop();
+        return solve(batchModel);
+    }
+
+    private Result<? extends Record> solve(final Model batchModel) {
         final Timer.Context solveTimer = solveTimes.time();
         final Result<? extends Record> podsToAssignUpdated =
-                model.solveModelWithoutTableUpdates(Collections.singleton("PODS_TO_ASSIGN"))
-                     .get("PODS_TO_ASSIGN");
+                batchModel.solveModelWithoutTableUpdates(Collections.singleton("PODS_TO_ASSIGN"))
+                          .get("PODS_TO_ASSIGN");
         solveTimer.stop();
         return podsToAssignUpdated;
     }
@@ -194,9 +689,136 @@ public final class Scheduler {
         }
     }
 
+    /**
+     * Fetches the model's tables concurrently over separate pooled connections when refreshing data.
+     */
+    void enableParallelFetch(final int numThreads) {
+        fetchThreads = numThreads;
+        model.enableParallelFetch(numThreads);
+        if (pipelineModel != null) {
+            pipelineModel.enableParallelFetch(numThreads);
+        }
+        if (shardModels != null) {
+            shardModels.forEach(shardModel -> shardModel.enableParallelFetch(numThreads));
+        }
+    }
+
+    /**
+     * Adjusts the number of pods considered per round so that rounds complete within the given latency.
+     */
+    void enableAdaptiveBatchSize(final long targetLatencyMs, final int minBatchSize, final int maxBatchSize) {
+        batchSizeController = new BatchSizeController(targetLatencyMs, minBatchSize, maxBatchSize);
+    }
+
+    /**
+     * Writes pod events to the database from a single thread, coalescing the events for each pod and batching
+     * many pods per transaction (see PodEventIngestionQueue). Scheduling rounds wait for all events received
+     * before the round to be written.
+     *
+     * @param maxBatchSize the maximum number of pods to write per transaction
+     * @param maxDelayMs the maximum time for which an event may wait before being written
+     */
+    void enableIngestionQueue(final int maxBatchSize, final long maxDelayMs) {
+        Preconditions.checkState(ingestionQueue == null);
+        final PodEventIngestionQueue queue = new PodEventIngestionQueue(podEventsToDatabase, maxBatchSize,
+                                                                        maxDelayMs);
+        queue.start();
+        ingestionQueue = queue;
+    }
+
+    /**
+     * Restricts the nodes considered by the solver in each round to a subset of the least loaded nodes that
+     * the pending pods may be placed on (see NodeCandidatePruner). If a round cannot be solved using that subset,
+     * it is retried with all nodes.
+     *
+     * @param percentageOfNodesToScore the percentage of eligible nodes to consider for each group of pods
+     *                                 with the same node selector and tolerations
+     * @param minCandidateNodes the minimum number of nodes to consider for each such group
+     */
+    void enableNodeCandidatePruning(final int percentageOfNodesToScore, final int minCandidateNodes) {
+        Preconditions.checkState(pipelineModel == null, "Pipelining and node pruning cannot be combined");
+        nodeCandidatePruner = new NodeCandidatePruner(percentageOfNodesToScore, minCandidateNodes);
+    }
+
+    /**
+     * Splits each batch of pods into up to numShards independent shards that are solved concurrently.
+     * This builds a model per shard, and is only supported with the ORTOOLS solver and the built-in
+     * policies, since those are the only constraints ShardPlanner accounts for when splitting pods.
+     */
+    void enableSharding(final int numShards) {
+        Preconditions.checkArgument(numShards > 0);
+        Preconditions.checkState(solverToUse.equals("ORTOOLS"), "Sharding requires the ORTOOLS solver");
+        Preconditions.checkState(Policies.getAllPolicies().containsAll(policies),
+                                 "Sharding only supports the built-in policies");
+        Preconditions.checkState(pipelineModel == null, "Pipelining and sharding cannot be combined");
+        Preconditions.checkState(shardModels == null, "Sharding is already enabled");
+        final List<Model> models = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            final Model shardModel = modelFactory.get();
+            if (fetchThreads > 0) {
+                shardModel.enableParallelFetch(fetchThreads);
+            }
+            models.add(shardModel);
+        }
+        shardExecutor = Executors.newFixedThreadPool(numShards,
+                new ThreadFactoryBuilder().setNameFormat("shard-thread-%d").setDaemon(true).build());
+        shardModels = models;
+    }
+
+    /**
+     * Overlaps fetching the data for the next batch of pods with solving the current batch.
+     * This builds a second model, and is only supported with the ORTOOLS solver.
+     */
+    void enablePipelining() {
+        Preconditions.checkState(solverToUse.equals("ORTOOLS"), "Pipelining requires the ORTOOLS solver");
+        Preconditions.checkState(shardModels == null, "Pipelining and sharding cannot be combined");
+        Preconditions.checkState(nodeCandidatePruner == null, "Pipelining and node pruning cannot be combined");
+        if (pipelineModel != null) {
+            return;
+        }
+        final Model newModel = modelFactory.get();
+        if (fetchThreads > 0) {
+            newModel.enableParallelFetch(fetchThreads);
+        }
+        pipelineExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("pipeline-fetch-thread-%d").setDaemon(true).build());
+        pipelineModel = newModel;
+    }
+
+    /**
+     * @return the time from issuing each binding until it succeeded or was given up on
+     */
+    Timer getBindingLatency() {
+        return bindingLatency;
+    }
+
     void shutdown() throws InterruptedException {
         scheduler.shutdownNow();
         scheduler.awaitTermination(100, TimeUnit.SECONDS);
+        bindingExecutor.shutdown();
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdownNow();
+            pipelineExecutor.awaitTermination(100, TimeUnit.SECONDS);
+        }
+        if (shardExecutor != null) {
+            shardExecutor.shutdownNow();
+            shardExecutor.awaitTermination(100, TimeUnit.SECONDS);
+        }
+    }
+
+    private static final class FetchedBatch {
+        private final int numPods;
+        private final long fetchNanos;
+        private final int pendingPods;
+        private final long placementVersion;
+
+        private FetchedBatch(final int numPods, final long fetchNanos, final int pendingPods,
+                             final long placementVersion) {
+            this.numPods = numPods;
+            this.fetchNanos = fetchNanos;
+            this.pendingPods = pendingPods;
+            this.placementVersion = placementVersion;
+        }
     }
 
     public static void main(final String[] args) throws InterruptedException, ParseException {
@@ -210,22 +832,64 @@ public final class Scheduler {
                 "Solver to use: MNZ-CHUFFED, ORTOOLS");
         options.addRequiredOption("t", "num-threads", true,
                 "Number of threads to use for or-tools");
+        options.addOption("ft", "fetch-threads", true,
+                "Number of threads to use for fetching tables from the database (default: sequential)");
+        options.addOption("tl", "target-latency-ms", true,
+                "Adapt the batch size so that each scheduling round completes within this latency");
+        options.addOption("pn", "percentage-of-nodes-to-score", true,
+                "Percentage of eligible nodes to consider when placing each group of similar pods (default: all)");
+        options.addOption("iq", "ingestion-delay-ms", true,
+                "Coalesce pod events and write them in batches, delaying each event by at most this many ms");
+        options.addOption("s", "shards", true,
+                "Number of independent shards of pods and nodes to solve concurrently (default: 1)");
+        options.addOption("p", "pipeline", false,
+                "Fetch the data for the next batch of pods while the current batch is being solved");
+        options.addOption("bt", "bind-threads", true,
+                "Number of threads to use for binding pods to nodes (default: "
+                + BindingExecutor.DEFAULT_CONCURRENCY + ")");
         final CommandLineParser parser = new DefaultParser();
         final CommandLine cmd = parser.parse(options, args);
 
         final DBConnectionPool conn = new DBConnectionPool();
+        final int bindThreads = cmd.hasOption("bind-threads")
+                ? Integer.parseInt(cmd.getOptionValue("bind-threads")) : BindingExecutor.DEFAULT_CONCURRENCY;
         final Scheduler scheduler = new Scheduler(conn,
                 Policies.getDefaultPolicies(),
                 cmd.getOptionValue("solver"),
                 Boolean.parseBoolean(cmd.getOptionValue("debug-mode")),
-                Integer.parseInt(cmd.getOptionValue("num-threads")));
+                Integer.parseInt(cmd.getOptionValue("num-threads")),
+                DEFAULT_SOLVER_MAX_TIME_IN_SECONDS,
+                bindThreads,
+                BindingExecutor.DEFAULT_MAX_PENDING_BINDINGS);
+        if (cmd.hasOption("fetch-threads")) {
+            scheduler.enableParallelFetch(Integer.parseInt(cmd.getOptionValue("fetch-threads")));
+        }
+        if (cmd.hasOption("target-latency-ms")) {
+            scheduler.enableAdaptiveBatchSize(Long.parseLong(cmd.getOptionValue("target-latency-ms")), 1,
+                                              MAX_ADAPTIVE_BATCH_SIZE);
+        }
+        if (cmd.hasOption("percentage-of-nodes-to-score")) {
+            scheduler.enableNodeCandidatePruning(
+                    Integer.parseInt(cmd.getOptionValue("percentage-of-nodes-to-score")), MIN_CANDIDATE_NODES);
+        }
+        if (cmd.hasOption("ingestion-delay-ms")) {
+            scheduler.enableIngestionQueue(MAX_INGESTION_BATCH_SIZE,
+                                           Long.parseLong(cmd.getOptionValue("ingestion-delay-ms")));
+        }
+        if (cmd.hasOption("shards")) {
+            scheduler.enableSharding(Integer.parseInt(cmd.getOptionValue("shards")));
+        }
+        if (cmd.hasOption("pipeline")) {
+            scheduler.enablePipelining();
+        }
 
         final KubernetesClient kubernetesClient = new DefaultKubernetesClient();
         LOG.info("Running a scheduler that connects to a Kubernetes cluster on {}",
                  kubernetesClient.getConfiguration().getMasterUrl());
 
         final KubernetesStateSync stateSync = new KubernetesStateSync(kubernetesClient);
-        stateSync.setupInformersAndPodEventStream(conn, scheduler::handlePodEvent);
+        stateSync.setupInformersAndPodEventStream(conn, scheduler::handlePodEvent,
+                                                  cmd.hasOption("ingestion-delay-ms"));
         final KubernetesBinder binder = new KubernetesBinder(kubernetesClient);
         scheduler.startScheduler(binder, Integer.parseInt(cmd.getOptionValue("batch-size")),
                                  Long.parseLong(cmd.getOptionValue("batch-interval-ms")));
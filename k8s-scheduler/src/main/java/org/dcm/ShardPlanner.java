@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import com.google.common.base.Preconditions;
+import org.dcm.k8s.generated.Tables;
+import org.dcm.k8s.generated.tables.PodsToAssign;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * Partitions the pods in pods_to_assign, and the nodes they can be placed on, into shards that can be solved
+ * independently. Pods are connected to the nodes that their node selectors and the node taints allow, and
+ * shards are built from the connected components of that graph, so no two shards share a node. Pods with
+ * inter-pod (anti-)affinity requirements may constrain each other regardless of nodes, so they are all kept
+ * in the same shard.
+ *
+ * This coupling is derived from the built-in policies (see Policies), whose constraints otherwise only relate
+ * pods placed on the same node. Other policies may relate pods across nodes in ways the planner does not see,
+ * so Scheduler.enableSharding() rejects them.
+ */
+class ShardPlanner {
+    private static final String AFFINITY_GROUP = "affinity";
+
+    private ShardPlanner() {
+    }
+
+    /**
+     * A subset of the pods to assign, and the only nodes those pods may be placed on.
+     */
+    static final class Shard {
+        private final Set<String> pods = new HashSet<>();
+        private final Set<String> nodes = new HashSet<>();
+
+        Set<String> getPods() {
+            return pods;
+        }
+
+        Set<String> getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * Computes up to maxShards shards. Connected components are packed into shards so as to balance the number
+     * of pods per shard.
+     */
+    static List<Shard> plan(final DSLContext conn, final int maxShards) {
+        Preconditions.checkArgument(maxShards > 0);
+        final PodsToAssign p = Tables.PODS_TO_ASSIGN;
+        final Set<String> eligibleNodes = new HashSet<>(conn.select(Tables.SPARE_CAPACITY_PER_NODE.NAME)
+                                                            .from(Tables.SPARE_CAPACITY_PER_NODE)
+                                                            .fetch(Tables.SPARE_CAPACITY_PER_NODE.NAME));
+        final Set<String> taintedNodes = new HashSet<>(conn.select(Tables.NODES_THAT_HAVE_TOLERATIONS.NODE_NAME)
+                                                           .from(Tables.NODES_THAT_HAVE_TOLERATIONS)
+                                                           .fetch(Tables.NODES_THAT_HAVE_TOLERATIONS.NODE_NAME));
+        final Map<String, Set<String>> selectorMatches = podToNodes(conn.select(
+                Tables.POD_NODE_SELECTOR_MATCHES.POD_NAME, Tables.POD_NODE_SELECTOR_MATCHES.NODE_NAME)
+                .from(Tables.POD_NODE_SELECTOR_MATCHES).fetch());
+        final Map<String, Set<String>> toleratedNodes = podToNodes(conn.select(
+                Tables.PODS_THAT_TOLERATE_NODE_TAINTS.POD_NAME, Tables.PODS_THAT_TOLERATE_NODE_TAINTS.NODE_NAME)
+                .from(Tables.PODS_THAT_TOLERATE_NODE_TAINTS).fetch());
+
+        final UnionFind components = new UnionFind();
+        final List<String> pods = new ArrayList<>();
+        for (final Record pod : conn.select(p.POD_NAME, p.HAS_NODE_SELECTOR_LABELS,
+                                            p.HAS_POD_AFFINITY_REQUIREMENTS, p.HAS_POD_ANTI_AFFINITY_REQUIREMENTS)
+                                    .from(p).fetch()) {
+            final String podName = pod.get(p.POD_NAME);
+            final String podKey = podKey(podName);
+            pods.add(podName);
+            components.add(podKey);
+            final Set<String> candidates = pod.get(p.HAS_NODE_SELECTOR_LABELS)
+                    ? selectorMatches.getOrDefault(podName, Set.of()) : eligibleNodes;
+            final Set<String> tolerated = toleratedNodes.getOrDefault(podName, Set.of());
+            for (final String node : candidates) {
+                if (eligibleNodes.contains(node) && (!taintedNodes.contains(node) || tolerated.contains(node))) {
+                    components.union(podKey, nodeKey(node));
+                }
+            }
+            if (pod.get(p.HAS_POD_AFFINITY_REQUIREMENTS) || pod.get(p.HAS_POD_ANTI_AFFINITY_REQUIREMENTS)) {
+                components.union(podKey, AFFINITY_GROUP);
+            }
+        }
+
+        // Group pods and nodes by component
+        final Map<String, Shard> byComponent = new LinkedHashMap<>();
+        for (final String pod : pods) {
+            byComponent.computeIfAbsent(components.find(podKey(pod)), k -> new Shard()).pods.add(pod);
+        }
+        for (final String node : eligibleNodes) {
+            final Shard shard = byComponent.get(components.find(nodeKey(node)));
+            if (shard != null) {
+                shard.nodes.add(node);
+            }
+        }
+
+        // Pack the largest components first, each into the shard with the fewest pods so far
+        final List<Shard> sortedComponents = byComponent.values().stream()
+                .sorted(Comparator.comparingInt((Shard s) -> s.pods.size()).reversed())
+                .collect(Collectors.toList());
+        final List<Shard> shards = new ArrayList<>(maxShards);
+        for (final Shard component : sortedComponents) {
+            if (shards.size() < maxShards) {
+                shards.add(component);
+                continue;
+            }
+            final Shard smallest = shards.stream().min(Comparator.comparingInt(s -> s.pods.size())).get();
+            smallest.pods.addAll(component.pods);
+            smallest.nodes.addAll(component.nodes);
+        }
+        return shards;
+    }
+
+    /**
+     * Groups (pod name, node name) pairs by pod.
+     */
+    static Map<String, Set<String>> podToNodes(final List<? extends Record> podNodePairs) {
+        final Map<String, Set<String>> ret = new HashMap<>();
+        for (final Record pair : podNodePairs) {
+            ret.computeIfAbsent((String) pair.get(0), k -> new HashSet<>()).add((String) pair.get(1));
+        }
+        return ret;
+    }
+
+    private static String podKey(final String podName) {
+        return "pod/" + podName;
+    }
+
+    private static String nodeKey(final String nodeName) {
+        return "node/" + nodeName;
+    }
+
+    private static final class UnionFind {
+        private final Map<String, String> parents = new HashMap<>();
+
+        void add(final String element) {
+            parents.putIfAbsent(element, element);
+        }
+
+        String find(final String element) {
+            add(element);
+            String root = element;
+            while (!parents.get(root).equals(root)) {
+                root = parents.get(root);
+            }
+            // Path compression
+            String current = element;
+            while (!current.equals(root)) {
+                final String next = parents.get(current);
+                parents.put(current, root);
+                current = next;
+            }
+            return root;
+        }
+
+        void union(final String a, final String b) {
+            final String rootA = find(a);
+            final String rootB = find(b);
+            if (!rootA.equals(rootB)) {
+                parents.put(rootA, rootB);
+            }
+        }
+    }
+}
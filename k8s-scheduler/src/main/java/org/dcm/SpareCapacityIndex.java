@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import org.dcm.k8s.generated.Tables;
+import org.dcm.k8s.generated.tables.SpareCapacityPerNode;
+import org.dcm.k8s.generated.tables.records.NodeInfoRecord;
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Maintains the spare capacity of every node in memory, keyed by node name, and mirrors it into the
+ * spare_capacity_per_node table that the scheduling policies read.
+ *
+ * The index is updated directly from node events (allocatable resources and conditions) and pod events, as well as
+ * when the scheduler assigns pods to nodes or returns them to pending. Pods are reserved with the requests of their
+ * pod_info row, and only while that row occupies a node (see PodEventsToDatabase.occupiesNode()), so the index
+ * agrees with the allocated counters that the node_info triggers maintain. Reserving or releasing a pod's
+ * resources costs O(1), and only affects the nodes it touches. Changed nodes are marked dirty and written to the
+ * table by flush(), so a scheduling round only pays for the nodes that changed since the previous one.
+ * Reservations are keyed by pod, so repeated notifications for the same placement are only counted once.
+ */
+class SpareCapacityIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(SpareCapacityIndex.class);
+    private final Map<String, NodeCapacity> nodes = new HashMap<>();
+    private final Map<String, Reservation> reservations = new HashMap<>();
+    private final Set<String> dirtyNodes = new HashSet<>();
+    private final Object flushLock = new Object();
+
+    /**
+     * Sets the allocatable resources and conditions of a node, as they appear in node_info.
+     */
+    synchronized void updateNode(final NodeInfoRecord node) {
+        final NodeCapacity capacity = nodes.computeIfAbsent(node.getName(), k -> new NodeCapacity());
+        capacity.known = true;
+        capacity.schedulable = !node.getUnschedulable() && !node.getMemoryPressure() && !node.getOutOfDisk()
+                               && !node.getDiskPressure() && !node.getPidPressure() && !node.getNetworkUnavailable()
+                               && node.getReady();
+        capacity.cpuAllocatable = node.getCpuAllocatable();
+        capacity.memoryAllocatable = node.getMemoryAllocatable();
+        capacity.podsAllocatable = node.getPodsAllocatable();
+        dirtyNodes.add(node.getName());
+    }
+
+    /**
+     * Marks a node as deleted. Reservations held by pods on the node are kept until those pods are released.
+     */
+    synchronized void removeNode(final String nodeName) {
+        final NodeCapacity capacity = nodes.get(nodeName);
+        if (capacity != null) {
+            capacity.known = false;
+            dirtyNodes.add(nodeName);
+        }
+    }
+
+    /**
+     * Reserves a pod's requests on a node. If the pod already holds a different reservation, for example on
+     * another node, that reservation is released first.
+     */
+    synchronized void reserve(final String podName, final String nodeName, final long cpuRequest,
+                              final long memoryRequest, final long podsRequest) {
+        final Reservation existing = reservations.get(podName);
+        if (existing != null) {
+            if (existing.nodeName.equals(nodeName) && existing.cpuRequest == cpuRequest
+                    && existing.memoryRequest == memoryRequest && existing.podsRequest == podsRequest) {
+                return;
+            }
+            release(podName);
+        }
+        final Reservation reservation = new Reservation(nodeName, cpuRequest, memoryRequest, podsRequest);
+        reservations.put(podName, reservation);
+        apply(reservation, 1);
+    }
+
+    /**
+     * Releases the resources reserved by a pod, if any.
+     */
+    synchronized void release(final String podName) {
+        final Reservation reservation = reservations.remove(podName);
+        if (reservation != null) {
+            apply(reservation, -1);
+        }
+    }
+
+    /**
+     * @return the spare (cpu, memory, pods) capacity of a node, or null if the node cannot host any pods
+     */
+    @Nullable
+    synchronized long[] getSpareCapacity(final String nodeName) {
+        final NodeCapacity capacity = nodes.get(nodeName);
+        return capacity == null || !capacity.hasSpareCapacity() ? null
+                : new long[]{capacity.cpuAllocatable - capacity.cpuAllocated,
+                             capacity.memoryAllocatable - capacity.memoryAllocated,
+                             capacity.podsAllocatable - capacity.podsAllocated};
+    }
+
+    /**
+     * Writes the nodes that changed since the last flush to the spare_capacity_per_node table. Nodes without
+     * spare capacity, or that are not schedulable, are removed from the table.
+     */
+    void flush(final DSLContext conn) {
+        synchronized (flushLock) {
+            final SpareCapacityPerNode s = Tables.SPARE_CAPACITY_PER_NODE;
+            final List<Query> queries = new ArrayList<>();
+            final List<String> removed = new ArrayList<>();
+            final int numDirtyNodes;
+            synchronized (this) {
+                if (dirtyNodes.isEmpty()) {
+                    return;
+                }
+                numDirtyNodes = dirtyNodes.size();
+                for (final String nodeName : dirtyNodes) {
+                    final NodeCapacity capacity = nodes.get(nodeName);
+                    if (capacity == null || !capacity.hasSpareCapacity()) {
+                        removed.add(nodeName);
+                        continue;
+                    }
+                    final long cpuRemaining = capacity.cpuAllocatable - capacity.cpuAllocated;
+                    final long memoryRemaining = capacity.memoryAllocatable - capacity.memoryAllocated;
+                    final long podsRemaining = capacity.podsAllocatable - capacity.podsAllocated;
+                    queries.add(conn.insertInto(s, s.NAME, s.CPU_REMAINING, s.MEMORY_REMAINING, s.PODS_REMAINING)
+                                    .values(nodeName, cpuRemaining, memoryRemaining, podsRemaining)
+                                    .onDuplicateKeyUpdate()
+                                    .set(s.CPU_REMAINING, cpuRemaining)
+                                    .set(s.MEMORY_REMAINING, memoryRemaining)
+                                    .set(s.PODS_REMAINING, podsRemaining));
+                }
+                dirtyNodes.clear();
+            }
+            if (!removed.isEmpty()) {
+                queries.add(conn.deleteFrom(s).where(s.NAME.in(removed)));
+            }
+            conn.batch(queries).execute();
+            LOG.trace("Flushed spare capacity of {} nodes ({} removed)", numDirtyNodes, removed.size());
+        }
+    }
+
+    private void apply(final Reservation reservation, final int sign) {
+        // Pods may be reported before the node they run on, so keep track of their usage regardless
+        final NodeCapacity capacity = nodes.computeIfAbsent(reservation.nodeName, k -> new NodeCapacity());
+        capacity.cpuAllocated += sign * reservation.cpuRequest;
+        capacity.memoryAllocated += sign * reservation.memoryRequest;
+        capacity.podsAllocated += sign * reservation.podsRequest;
+        dirtyNodes.add(reservation.nodeName);
+    }
+
+    private static final class NodeCapacity {
+        private boolean known = false;
+        private boolean schedulable = false;
+        private long cpuAllocatable;
+        private long memoryAllocatable;
+        private long podsAllocatable;
+        private long cpuAllocated;
+        private long memoryAllocated;
+        private long podsAllocated;
+
+        private boolean hasSpareCapacity() {
+            return known && schedulable
+                    && cpuAllocated < cpuAllocatable
+                    && memoryAllocated < memoryAllocatable
+                    && podsAllocated < podsAllocatable;
+        }
+    }
+
+    private static final class Reservation {
+        private final String nodeName;
+        private final long cpuRequest;
+        private final long memoryRequest;
+        private final long podsRequest;
+
+        private Reservation(final String nodeName, final long cpuRequest, final long memoryRequest,
+                            final long podsRequest) {
+            this.nodeName = nodeName;
+            this.cpuRequest = cpuRequest;
+            this.memoryRequest = memoryRequest;
+            this.podsRequest = podsRequest;
+        }
+    }
+}
@@ -200,6 +200,15 @@ create table pod_images
   foreign key(pod_name) references pod_info(pod_name) on delete cascade
 );
 
+-- Pods that belong to a batch that is being solved by a pipelined scheduler, but whose placements
+-- have not been committed yet. These are hidden from subsequent batches.
+create table pods_in_flight
+(
+  pod_name varchar(100) not null primary key,
+  batch_id integer not null,
+  foreign key(pod_name) references pod_info(pod_name) on delete cascade
+);
+
 -- Select all pods that need to be scheduled.
 -- We also indicate boolean values to check whether
 -- a pod has node selector or pod affinity labels,
@@ -223,7 +232,8 @@ select
   equivalence_class,
   qos_class
 from pod_info
-where status = 'Pending' and node_name is null and schedulerName = 'dcm-scheduler';
+where status = 'Pending' and node_name is null and schedulerName = 'dcm-scheduler'
+  and pod_name not in (select pod_name from pods_in_flight);
 
 -- This view is updated dynamically to change the limit. This
 -- pattern is required because there is no clean way to enforce
@@ -413,23 +423,16 @@ having
 create view inter_pod_anti_affinity_matches as
 select *, count(*) over (partition by pod_name) as num_matches from inter_pod_anti_affinity_matches_inner;
 
--- Spare capacity
-create view spare_capacity_per_node as
-select name as name,
-  cpu_allocatable - cpu_allocated as cpu_remaining,
-  memory_allocatable - memory_allocated as memory_remaining,
-  pods_allocatable - pods_allocated as pods_remaining
-from node_info
-where unschedulable = false and
-      memory_pressure = false and
-      out_of_disk = false and
-      disk_pressure = false and
-      pid_pressure = false and
-      network_unavailable = false and
-      ready = true and
-      cpu_allocated < cpu_allocatable and
-      memory_allocated <  memory_allocatable and
-      pods_allocated < pods_allocatable;
+-- Spare capacity of the schedulable nodes that can still host pods. This table
+-- is maintained incrementally from pod and node events by SpareCapacityIndex.
+create table spare_capacity_per_node
+(
+  name varchar(36) not null primary key,
+  cpu_remaining bigint not null,
+  memory_remaining bigint not null,
+  pods_remaining bigint not null,
+  foreign key(name) references node_info(name) on delete cascade
+);
 
 -- Taints and tolerations
 create view pods_that_tolerate_node_taints as
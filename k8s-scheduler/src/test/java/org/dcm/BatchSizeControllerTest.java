@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2018-2020 VMware, Inc. All Rights Reserved.
+ *
+ * SPDX-License-Identifier: BSD-2
+ */
+
+package org.dcm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+public class BatchSizeControllerTest {
+
+    @Test
+    public void testGrowsDuringBursts() {
+        final BatchSizeController controller = new BatchSizeController(1000, 1, 500);
+        assertEquals(50, controller.nextBatchSize(10000));
+
+        // Fast rounds with a backlog grow the batch, up to the maximum
+        int previous = controller.getBatchSize();
+        for (int i = 0; i < 20; i++) {
+            final int batchSize = controller.nextBatchSize(10000);
+            controller.observe(batchSize, TimeUnit.MILLISECONDS.toNanos(10), 10000);
+            assertTrue(controller.getBatchSize() >= previous);
+            previous = controller.getBatchSize();
+        }
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    @Test
+    public void testShrinksWhenSlow() {
+        final BatchSizeController controller = new BatchSizeController(100, 5, 500);
+
+        // A round that takes twice the target latency halves the batch
+        controller.observe(50, TimeUnit.MILLISECONDS.toNanos(200), 1000);
+        assertEquals(25, controller.getBatchSize());
+
+        // But never below the minimum
+        controller.observe(25, TimeUnit.SECONDS.toNanos(10), 1000);
+        assertEquals(5, controller.getBatchSize());
+
+        // Growth is capped by what the latency target allows
+        controller.observe(5, TimeUnit.MILLISECONDS.toNanos(80), 1000);
+        assertEquals(6, controller.getBatchSize());
+    }
+
+    @Test
+    public void testSmallBatchesWhenQuiet() {
+        final BatchSizeController controller = new BatchSizeController(1000, 1, 500);
+        assertEquals(3, controller.nextBatchSize(3));
+
+        // Draining the queue within the target does not change the batch size
+        controller.observe(3, TimeUnit.MILLISECONDS.toNanos(10), 3);
+        assertEquals(50, controller.getBatchSize());
+        assertEquals(1, controller.nextBatchSize(1));
+    }
+}
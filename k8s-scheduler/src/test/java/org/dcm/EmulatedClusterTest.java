@@ -6,6 +6,7 @@
 
 package org.dcm;
 
+import com.codahale.metrics.Snapshot;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.fabric8.kubernetes.api.model.Affinity;
 import io.fabric8.kubernetes.api.model.Container;
@@ -35,6 +36,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -45,7 +47,7 @@ class EmulatedClusterTest {
 
     public void runTraceLocally(final int numNodes, final String traceFileName, final int cpuScaleDown,
                                 final int memScaleDown, final int timeScaleDown, final int startTimeCutOff,
-                                final int affinityRequirementsProportion)
+                                final int affinityRequirementsProportion, final int percentageOfNodesToScore)
             throws Exception {
         final DBConnectionPool dbConnectionPool = new DBConnectionPool();
 
@@ -61,6 +63,9 @@ class EmulatedClusterTest {
         final int solverMaxTimeInSeconds = numNodes >= 5000 ? 2 : 1;
         final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true,
                                        4, solverMaxTimeInSeconds);
+        if (percentageOfNodesToScore > 0) {
+            scheduler.enableNodeCandidatePruning(percentageOfNodesToScore, Scheduler.MIN_CANDIDATE_NODES);
+        }
         final PodResourceEventHandler handler = new PodResourceEventHandler(scheduler::handlePodEvent, service);
         scheduler.startScheduler(new EmulatedPodToNodeBinder(dbConnectionPool), 100, 50);
         for (int i = 0; i < numNodes; i++) {
@@ -89,6 +94,13 @@ class EmulatedClusterTest {
         final DefaultKubernetesClient client = new DefaultKubernetesClient();
         replay.runTrace(client, traceFileName, deployer, "dcm-scheduler", cpuScaleDown,
                 memScaleDown, timeScaleDown, startTimeCutOff, affinityRequirementsProportion);
+        final Snapshot bindingLatency = scheduler.getBindingLatency().getSnapshot();
+        LOG.info("Binding latency (ms) for {} bindings: p50={} p90={} p99={} max={}",
+                 scheduler.getBindingLatency().getCount(),
+                 TimeUnit.NANOSECONDS.toMillis((long) bindingLatency.getMedian()),
+                 TimeUnit.NANOSECONDS.toMillis((long) bindingLatency.getValue(0.9)),
+                 TimeUnit.NANOSECONDS.toMillis((long) bindingLatency.get99thPercentile()),
+                 TimeUnit.NANOSECONDS.toMillis(bindingLatency.getMax()));
     }
 
     private static Node addNode(final String nodeName, final Map<String, String> labels,
@@ -170,6 +182,8 @@ class EmulatedClusterTest {
         options.addOption("d", "deploymentAffinity", true,
                 "D, 1 if pods in a deployment should be affine to each other," +
                         " 2 if pods across deployments should be affine to each other");
+        options.addOption("k", "percentageOfNodesToScore", true,
+                "K, from 1 to 100, the percentage of eligible nodes to consider for each group of similar pods");
         final CommandLineParser parser = new DefaultParser();
         final CommandLine cmd = parser.parse(options, args);
         final int numNodes = Integer.parseInt(cmd.getOptionValue("numNodes"));
@@ -180,12 +194,16 @@ class EmulatedClusterTest {
         final int startTimeCutOff = Integer.parseInt(cmd.getOptionValue("startTimeCutOff"));
         final int affinityRequirementsProportion = Integer.parseInt(cmd.hasOption("proportion") ?
                 cmd.getOptionValue("proportion") : "0");
+        final int percentageOfNodesToScore = Integer.parseInt(cmd.hasOption("percentageOfNodesToScore") ?
+                cmd.getOptionValue("percentageOfNodesToScore") : "0");
         LOG.info("Running experiment with parameters: numNodes: {}, traceFile: {}, cpuScaleDown: {}, " +
-                    "memScaleDown: {}, timeScaleDown: {}, startTimeCutOff: {}, proportion: {}",
+                    "memScaleDown: {}, timeScaleDown: {}, startTimeCutOff: {}, proportion: {}, " +
+                    "percentageOfNodesToScore: {}",
                 numNodes, traceFile, cpuScaleDown, memScaleDown,
-                timeScaleDown, startTimeCutOff, affinityRequirementsProportion);
+                timeScaleDown, startTimeCutOff, affinityRequirementsProportion, percentageOfNodesToScore);
         emulatedClusterTest.runTraceLocally(numNodes, traceFile, cpuScaleDown, memScaleDown, timeScaleDown,
-                                            startTimeCutOff, affinityRequirementsProportion);
+                                            startTimeCutOff, affinityRequirementsProportion,
+                                            percentageOfNodesToScore);
         System.exit(0); // without this, there are non-daemon threads that prevent JVM shutdown
     }
 }
\ No newline at end of file
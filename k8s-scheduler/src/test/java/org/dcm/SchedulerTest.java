@@ -6,7 +6,9 @@
 
 package org.dcm;
 
+import com.codahale.metrics.Timer;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.fabric8.kubernetes.api.model.Affinity;
 import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.LabelSelector;
@@ -36,9 +38,12 @@ import io.fabric8.kubernetes.api.model.Taint;
 import io.fabric8.kubernetes.api.model.Toleration;
 import org.dcm.k8s.generated.Tables;
 import org.dcm.k8s.generated.tables.records.PodInfoRecord;
+import org.dcm.k8s.generated.tables.records.SpareCapacityPerNodeRecord;
 import org.jooq.DSLContext;
 import org.jooq.Record;
+import org.jooq.Record3;
 import org.jooq.Result;
+import org.jooq.exception.DataAccessException;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -53,14 +58,26 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -163,6 +180,149 @@ public class SchedulerTest {
         checkThatResourcesNotReflected.run();
     }
 
+    /*
+     * Make sure that aggregating node_info updates across a batch of pod_info changes yields the same totals as
+     * applying them one row at a time, and that failed batches leave node_info untouched
+     */
+    @Test
+    public void testAggregatedNodeInfoUpdates() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final PodEventsToDatabase eventsToDatabase = new PodEventsToDatabase(dbConnectionPool);
+        final NodeResourceEventHandler nodeHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final int numNodes = 4;
+        final int numPods = 20;
+        for (int i = 0; i < numNodes; i++) {
+            nodeHandler.onAddSync(addNode("n" + i, Collections.emptyMap(), Collections.emptyList()));
+        }
+        final Map<String, Long> expectedCpu = new HashMap<>();
+        final Map<String, Long> expectedPods = new HashMap<>();
+        for (int i = 0; i < numPods; i++) {
+            final Pod pod = newPod("p" + i);
+            pod.getSpec().getContainers().get(0).getResources()
+                                               .setRequests(Map.of("cpu", new Quantity(String.valueOf(i + 1))));
+            eventsToDatabase.handle(new PodEvent(PodEvent.Action.ADDED, pod));
+            expectedCpu.merge("n" + (i % numNodes), (i + 1) * 1000L, Long::sum);
+            expectedPods.merge("n" + (i % numNodes), 1L, Long::sum);
+        }
+        final Consumer<DSLContext> assignAll = txCtx -> txCtx.batch(
+                IntStream.range(0, numPods)
+                         .mapToObj(i -> txCtx.update(Tables.POD_INFO)
+                                             .set(Tables.POD_INFO.NODE_NAME, "n" + (i % numNodes))
+                                             .where(Tables.POD_INFO.POD_NAME.eq("p" + i)))
+                         .collect(Collectors.toList())).execute();
+
+        // A failed batch is rolled back, including the node_info updates it would have made
+        assertThrows(IllegalStateException.class,
+                     () -> PodEventsToDatabase.NodeInfoIncrementalUpdate.aggregate(conn, txCtx -> {
+                         assignAll.accept(txCtx);
+                         throw new IllegalStateException();
+                     }));
+        assertEquals(0, conn.fetchCount(Tables.POD_INFO, Tables.POD_INFO.NODE_NAME.isNotNull()));
+        conn.selectFrom(Tables.NODE_INFO).fetch().forEach(r -> assertEquals(0L, r.getCpuAllocated()));
+
+        PodEventsToDatabase.NodeInfoIncrementalUpdate.aggregate(conn, assignAll);
+        conn.selectFrom(Tables.NODE_INFO).fetch().forEach(r -> {
+            assertEquals(expectedCpu.get(r.getName()), r.getCpuAllocated());
+            assertEquals(expectedPods.get(r.getName()), r.getPodsAllocated());
+        });
+
+        // Rows changed outside of an aggregation scope are still applied one at a time
+        conn.deleteFrom(Tables.POD_INFO).where(Tables.POD_INFO.POD_NAME.eq("p0")).execute();
+        assertEquals(expectedCpu.get("n0") - 1000,
+                     conn.select(Tables.NODE_INFO.CPU_ALLOCATED).from(Tables.NODE_INFO)
+                         .where(Tables.NODE_INFO.NAME.eq("n0")).fetchOne(Tables.NODE_INFO.CPU_ALLOCATED));
+        PodEventsToDatabase.NodeInfoIncrementalUpdate.aggregate(conn, txCtx -> txCtx.deleteFrom(Tables.POD_INFO)
+                                                                                    .execute());
+        conn.selectFrom(Tables.NODE_INFO).fetch().forEach(r -> {
+            assertEquals(0L, r.getCpuAllocated());
+            assertEquals(0L, r.getPodsAllocated());
+        });
+    }
+
+    /*
+     * Make sure that spare_capacity_per_node reflects pod and node events, as well as the scheduler's own
+     * placements, once the spare capacity index is flushed
+     */
+    @Test
+    public void testSpareCapacityIndex() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final SpareCapacityIndex index = dbConnectionPool.getSpareCapacityIndex();
+        final PodEventsToDatabase eventsToDatabase = new PodEventsToDatabase(dbConnectionPool);
+        final NodeResourceEventHandler nodeHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final Map<String, Node> nodes = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            final String nodeName = "n" + i;
+            final Node node = addNode(nodeName, Collections.emptyMap(), Collections.emptyList());
+            node.getStatus().getCapacity().put("cpu", new Quantity("10"));
+            nodeHandler.onAddSync(node);
+            nodes.put(nodeName, node);
+        }
+        final Pod runningPod = newPod("running-pod", "Running", Collections.emptyMap(), Collections.emptyMap());
+        runningPod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("4")));
+        runningPod.getSpec().setNodeName("n0");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.ADDED, runningPod));
+        // Repeated notifications for the same placement are only counted once
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, runningPod));
+
+        final Function<String, SpareCapacityPerNodeRecord> spareCapacity = nodeName -> {
+            index.flush(conn);
+            return conn.selectFrom(Tables.SPARE_CAPACITY_PER_NODE)
+                       .where(Tables.SPARE_CAPACITY_PER_NODE.NAME.eq(nodeName))
+                       .fetchOne();
+        };
+        assertEquals(6000, spareCapacity.apply("n0").getCpuRemaining());
+        assertEquals(99, spareCapacity.apply("n0").getPodsRemaining());
+        assertEquals(10000, spareCapacity.apply("n1").getCpuRemaining());
+        assertArrayEquals(new long[]{6000, 1000, 99}, index.getSpareCapacity("n0"));
+
+        // A node that is no longer schedulable is removed from the table, and is added back when it recovers
+        final Node unschedulable = addNode("n2", Collections.emptyMap(), Collections.emptyList());
+        unschedulable.getStatus().getCapacity().put("cpu", new Quantity("10"));
+        unschedulable.getSpec().setUnschedulable(true);
+        nodeHandler.onUpdateSync(nodes.get("n2"), unschedulable);
+        assertNull(spareCapacity.apply("n2"));
+        nodeHandler.onUpdateSync(unschedulable, nodes.get("n2"));
+        assertEquals(10000, spareCapacity.apply("n2").getCpuRemaining());
+
+        // Pods release their resources when they move to another node, and when they finish
+        final Pod finishingPod = newPod("finishing-pod", "Running", Collections.emptyMap(), Collections.emptyMap());
+        finishingPod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("2")));
+        finishingPod.getSpec().setNodeName("n1");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.ADDED, finishingPod));
+        assertEquals(8000, spareCapacity.apply("n1").getCpuRemaining());
+        finishingPod.getSpec().setNodeName("n2");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, finishingPod));
+        assertEquals(10000, spareCapacity.apply("n1").getCpuRemaining());
+        assertEquals(8000, spareCapacity.apply("n2").getCpuRemaining());
+        finishingPod.getStatus().setPhase("Succeeded");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, finishingPod));
+        assertEquals(10000, spareCapacity.apply("n2").getCpuRemaining());
+
+        // Placements made by the scheduler are reserved before the next round
+        final Pod pendingPod = newPod("pending-pod");
+        pendingPod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("7")));
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.ADDED, pendingPod));
+        final List<String> policies = Policies.from(Policies.nodePredicates(),
+                                                    Policies.capacityConstraint(true, false));
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        final String nodeName = conn.select(Tables.POD_INFO.NODE_NAME).from(Tables.POD_INFO)
+                                    .where(Tables.POD_INFO.POD_NAME.eq("pending-pod"))
+                                    .fetchOne(Tables.POD_INFO.NODE_NAME);
+        assertNotEquals("n0", nodeName);
+        assertEquals(3000, spareCapacity.apply(nodeName).getCpuRemaining());
+
+        // Deleting pods releases their resources, and the table agrees with node_info throughout
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.DELETED, runningPod));
+        assertEquals(10000, spareCapacity.apply("n0").getCpuRemaining());
+        conn.selectFrom(Tables.NODE_INFO).fetch().forEach(
+            node -> assertEquals(node.getCpuAllocatable() - node.getCpuAllocated(),
+                                 (long) spareCapacity.apply(node.getName()).getCpuRemaining())
+        );
+    }
+
     /*
      * Test if multiple connections from our connection pool see each other's changes
      */
@@ -1180,6 +1340,593 @@ public class SchedulerTest {
     }
 
 
+    /*
+     * Make sure that pods restricted to disjoint node pools are solved as separate shards, and that every pod is
+     * placed within its pool
+     */
+    @Test
+    public void testShardedScheduling() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final List<String> policies = Policies.getDefaultPolicies();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final int nodesPerPool = 4;
+        final int podsPerPool = 20;
+        final List<String> pools = List.of("a", "b");
+
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final PodResourceEventHandler handler = new PodResourceEventHandler(eventHandler::handle);
+
+        for (final String pool : pools) {
+            for (int i = 0; i < nodesPerPool; i++) {
+                final String nodeName = pool + "-n" + i;
+                nodeResourceEventHandler.onAddSync(addNode(nodeName, map("pool", pool), Collections.emptyList()));
+
+                // Add one system pod per node
+                final Pod pod = newPod("system-pod-" + nodeName, "Running", Collections.emptyMap(),
+                                       Collections.emptyMap());
+                pod.getSpec().setNodeName(nodeName);
+                handler.onAddSync(pod);
+            }
+            for (int i = 0; i < podsPerPool; i++) {
+                handler.onAddSync(newPod(pool + "-p" + i, "Pending", map("pool", pool), Collections.emptyMap()));
+            }
+        }
+
+        // Each pool forms its own shard, with no nodes in common
+        dbConnectionPool.getSpareCapacityIndex().flush(conn);
+        final List<ShardPlanner.Shard> shards = ShardPlanner.plan(conn, 4);
+        assertEquals(2, shards.size());
+        for (final ShardPlanner.Shard shard : shards) {
+            assertEquals(podsPerPool, shard.getPods().size());
+            assertEquals(nodesPerPool, shard.getNodes().size());
+            final String pool = shard.getPods().iterator().next().substring(0, 1);
+            assertTrue(shard.getPods().stream().allMatch(pod -> pod.startsWith(pool)));
+            assertTrue(shard.getNodes().stream().allMatch(node -> node.startsWith(pool)));
+        }
+
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.enableSharding(2);
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        final Result<PodInfoRecord> fetch = conn.selectFrom(Tables.POD_INFO).fetch();
+        assertEquals(pools.size() * (nodesPerPool + podsPerPool), fetch.size());
+
+        // Policies that the planner does not know about may couple pods across shards
+        final List<String> customPolicies = new ArrayList<>(policies);
+        customPolicies.add("create view constraint_custom as select * from pods_to_assign " +
+                           "having all_different(pods_to_assign.controllable__node_name) = true");
+        final Scheduler customScheduler = new Scheduler(dbConnectionPool, customPolicies, "ORTOOLS", true,
+                                                        numThreads);
+        assertThrows(IllegalStateException.class, () -> customScheduler.enableSharding(2));
+        fetch.forEach(e -> assertTrue(e.getNodeName() != null
+                                      && e.getNodeName().charAt(0) == e.getPodName().charAt(0)
+                                      || e.getPodName().startsWith("system-pod")));
+    }
+
+    /*
+     * Make sure that node pruning only considers the least loaded nodes that each group of pods may use, and that
+     * rounds fall back to all nodes when the candidates are not enough
+     */
+    @Test
+    public void testNodeCandidatePruning() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final PodResourceEventHandler handler = new PodResourceEventHandler(eventHandler::handle);
+        final int numNodes = 20;
+
+        // The first half of the nodes are loaded, and the first two of those are the only ones with a label
+        for (int i = 0; i < numNodes; i++) {
+            final String nodeName = "n" + i;
+            final Node node = addNode(nodeName, i < 2 ? map("gpu", "true") : Collections.emptyMap(),
+                                      Collections.emptyList());
+            node.getStatus().getCapacity().put("cpu", new Quantity("100"));
+            nodeResourceEventHandler.onAddSync(node);
+            if (i < numNodes / 2) {
+                final Pod pod = newPod("running-pod-" + nodeName, "Running", Collections.emptyMap(),
+                                       Collections.emptyMap());
+                pod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("50")));
+                pod.getSpec().setNodeName(nodeName);
+                handler.onAddSync(pod);
+            }
+        }
+        for (int i = 0; i < 6; i++) {
+            final Pod pod = newPod("p" + i);
+            pod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("10")));
+            handler.onAddSync(pod);
+        }
+        for (int i = 0; i < 2; i++) {
+            handler.onAddSync(newPod("gpu-p" + i, "Pending", map("gpu", "true"), Collections.emptyMap()));
+        }
+
+        // Pods without a selector contribute the three least loaded nodes, and the others the two labelled nodes
+        final int minCandidateNodes = 3;
+        dbConnectionPool.getSpareCapacityIndex().flush(conn);
+        final NodeCandidatePruner pruner = new NodeCandidatePruner(10, minCandidateNodes);
+        assertEquals(Set.of("n10", "n11", "n12", "n0", "n1"), pruner.candidates(conn));
+
+        final List<String> policies = Policies.from(Policies.nodePredicates(),
+                                                    Policies.capacityConstraint(true, false));
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.enableNodeCandidatePruning(10, minCandidateNodes);
+        final Result<? extends Record> result = scheduler.runOneLoop();
+        assertEquals(8, result.size());
+        result.forEach(r -> assertTrue(pruner.candidates(conn).contains(
+                r.getValue("CONTROLLABLE__NODE_NAME", String.class))));
+
+        // Six pods that need most of a node each do not fit on the three candidate nodes, so the round is
+        // retried with all nodes
+        for (int i = 0; i < 6; i++) {
+            final Pod pod = newPod("large-p" + i);
+            pod.getSpec().getContainers().get(0).getResources().setRequests(Map.of("cpu", new Quantity("60")));
+            handler.onAddSync(pod);
+        }
+        final Result<? extends Record> fallbackResult = scheduler.runOneLoop();
+        assertEquals(14, fallbackResult.size());
+        assertEquals(6, fallbackResult.stream()
+                                      .filter(r -> r.getValue("POD_NAME", String.class).startsWith("large"))
+                                      .map(r -> r.getValue("CONTROLLABLE__NODE_NAME", String.class))
+                                      .distinct()
+                                      .count());
+    }
+
+    /*
+     * Make sure that the ingestion queue writes only the latest state of each pod, in batches, and that its
+     * watermark lets the scheduler see every event submitted before a round
+     */
+    @Test
+    public void testIngestionQueue() throws InterruptedException {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final PodEventsToDatabase eventsToDatabase = new PodEventsToDatabase(dbConnectionPool) {
+            @Override
+            void handleBatch(final List<PodEvent> events) {
+                batchSizes.add(events.size());
+                super.handleBatch(events);
+            }
+        };
+        final PodEventIngestionQueue queue = new PodEventIngestionQueue(eventsToDatabase, 100,
+                                                                        TimeUnit.MINUTES.toMillis(1));
+        queue.start();
+
+        // Each pod is added and then updated three times, which is written as a single add of the last state
+        final int numPods = 50;
+        for (int update = 0; update < 4; update++) {
+            for (int i = 0; i < numPods; i++) {
+                final Pod pod = newPod("p" + i);
+                pod.getSpec().setPriority(update);
+                queue.submit(new PodEvent(update == 0 ? PodEvent.Action.ADDED : PodEvent.Action.UPDATED, pod));
+            }
+        }
+        // Pods that are deleted while pending are never written, and pods that are deleted and added again are
+        // written in their new state only
+        queue.submit(new PodEvent(PodEvent.Action.ADDED, newPod("deleted")));
+        queue.submit(new PodEvent(PodEvent.Action.DELETED, newPod("deleted")));
+        queue.submit(new PodEvent(PodEvent.Action.DELETED, newPod("p0")));
+        queue.submit(new PodEvent(PodEvent.Action.ADDED, newPod("p0", "Pending", Collections.emptyMap(),
+                                                                map("version", "2"))));
+        assertEquals(0, queue.getWatermark());
+
+        // The batch is not full, so it is only written because someone waits for it, well before the delay
+        final long version = queue.submit(new PodEvent(PodEvent.Action.ADDED, newPod("p-last")));
+        assertEquals(4 * numPods + 5, version);
+        Thread.sleep(100);
+        assertEquals(0, queue.getWatermark());
+        final long waitStart = System.nanoTime();
+        queue.awaitWatermark(version);
+        assertTrue(System.nanoTime() - waitStart < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(version, queue.getWatermark());
+        // One batch of 52 pods, one of which is deleted before being added again
+        assertEquals(List.of(53), batchSizes);
+        assertEquals(numPods + 1, conn.fetchCount(Tables.POD_INFO));
+
+        // A full batch is written without anyone waiting for it
+        long fillerVersion = 0;
+        for (int i = 0; i < 100; i++) {
+            fillerVersion = queue.submit(new PodEvent(PodEvent.Action.ADDED, newPod("filler-" + i)));
+        }
+        final long fillerDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.getWatermark() < fillerVersion && System.nanoTime() < fillerDeadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(fillerVersion, queue.getWatermark());
+        assertEquals(List.of(53, 100), batchSizes);
+        assertEquals(numPods + 1 + 100, conn.fetchCount(Tables.POD_INFO));
+        assertEquals(numPods - 1, conn.fetchCount(Tables.POD_INFO, Tables.POD_INFO.PRIORITY.eq(3)));
+        assertEquals(0, conn.fetchCount(Tables.POD_INFO, Tables.POD_INFO.POD_NAME.eq("deleted")));
+        assertEquals(List.of("2"), conn.select(Tables.POD_LABELS.LABEL_VALUE).from(Tables.POD_LABELS)
+                                        .where(Tables.POD_LABELS.POD_NAME.eq("p0"))
+                                        .fetch(Tables.POD_LABELS.LABEL_VALUE));
+        queue.shutdown();
+
+        // A scheduler that ingests through the queue sees every pod received before the round
+        final NodeResourceEventHandler nodeHandler = new NodeResourceEventHandler(dbConnectionPool);
+        nodeHandler.onAddSync(addNode("n0", Collections.emptyMap(), Collections.emptyList()));
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, Policies.getDefaultPolicies(), "ORTOOLS", true,
+                                                  numThreads);
+        scheduler.enableIngestionQueue(100, TimeUnit.MINUTES.toMillis(1));
+        conn.deleteFrom(Tables.POD_INFO).execute();
+        for (int i = 0; i < 10; i++) {
+            scheduler.handlePodEvent(new PodEvent(PodEvent.Action.ADDED, newPod("q" + i)));
+        }
+        final long roundStart = System.nanoTime();
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        assertTrue(System.nanoTime() - roundStart < TimeUnit.SECONDS.toNanos(30));
+        assertEquals(10, conn.fetchCount(Tables.POD_INFO, Tables.POD_INFO.NODE_NAME.eq("n0")));
+    }
+
+    /*
+     * Make sure that batches that cannot be written are retried pod by pod, and that the watermark does not
+     * advance past pods that have not been written
+     */
+    @Test
+    public void testIngestionQueueRetries() throws InterruptedException {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final AtomicInteger remainingFailures = new AtomicInteger(3);
+        final PodEventsToDatabase eventsToDatabase = new PodEventsToDatabase(dbConnectionPool) {
+            @Override
+            void handleBatch(final List<PodEvent> events) {
+                final boolean hasFailingPod = events.stream()
+                        .anyMatch(e -> e.getPod().getMetadata().getName().equals("p1"));
+                if (hasFailingPod && remainingFailures.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+                    throw new DataAccessException("Injected failure");
+                }
+                super.handleBatch(events);
+            }
+        };
+        final PodEventIngestionQueue queue = new PodEventIngestionQueue(eventsToDatabase, 100, 0);
+        queue.start();
+        long version = 0;
+        for (int i = 0; i < 3; i++) {
+            version = queue.submit(new PodEvent(PodEvent.Action.ADDED, newPod("p" + i)));
+        }
+        // Fails as part of the batch, then on its own twice, before it is written
+        queue.awaitWatermark(version);
+        assertEquals(0, remainingFailures.get());
+        assertEquals(3, conn.fetchCount(Tables.POD_INFO));
+        queue.shutdown();
+    }
+
+    /*
+     * Make sure that updates are checked against the pods already ingested, without reading pod_info back, and
+     * that updates which do not change pod_info are not written
+     */
+    @Test
+    public void testKnownPodsSkipNoOpUpdates() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final PodEventsToDatabase eventsToDatabase = new PodEventsToDatabase(dbConnectionPool);
+        final int numPods = 10;
+        for (int i = 0; i < numPods; i++) {
+            eventsToDatabase.handle(new PodEvent(PodEvent.Action.ADDED, newPod("p" + i)));
+        }
+        // A marker that any write to pod_info would overwrite
+        conn.update(Tables.POD_INFO).set(Tables.POD_INFO.PRIORITY, 99).execute();
+
+        // Updates that only change fields that pod_info does not track are skipped, one at a time and in batches
+        final Pod relabeled = newPod("p0");
+        relabeled.getMetadata().setResourceVersion("2");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, relabeled));
+        eventsToDatabase.handleBatch(List.of(new PodEvent(PodEvent.Action.UPDATED, newPod("p1")),
+                                             new PodEvent(PodEvent.Action.UPDATED, newPod("p2"))));
+        assertEquals(numPods, conn.fetchCount(Tables.POD_INFO, Tables.POD_INFO.PRIORITY.eq(99)));
+
+        // Updates that change pod_info are written
+        final Pod higherPriority = newPod("p3");
+        higherPriority.getSpec().setPriority(5);
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, higherPriority));
+        final Pod bound = newPod("p4");
+        bound.getSpec().setNodeName("n0");
+        eventsToDatabase.handleBatch(List.of(new PodEvent(PodEvent.Action.UPDATED, bound)));
+        assertEquals(5, conn.select(Tables.POD_INFO.PRIORITY).from(Tables.POD_INFO)
+                            .where(Tables.POD_INFO.POD_NAME.eq("p3")).fetchOne().value1());
+        assertEquals("n0", conn.select(Tables.POD_INFO.NODE_NAME).from(Tables.POD_INFO)
+                               .where(Tables.POD_INFO.POD_NAME.eq("p4")).fetchOne().value1());
+
+        // Updates for pods that were never added, or were deleted, are ignored
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.DELETED, newPod("p5")));
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, newPod("p5")));
+        eventsToDatabase.handleBatch(List.of(new PodEvent(PodEvent.Action.UPDATED, newPod("unknown"))));
+        assertEquals(numPods - 1, conn.fetchCount(Tables.POD_INFO));
+
+        // Within a batch, updates see the adds and deletes that precede them
+        eventsToDatabase.handleBatch(List.of(new PodEvent(PodEvent.Action.ADDED, newPod("p5")),
+                                             new PodEvent(PodEvent.Action.UPDATED, reprioritized("p5", 7)),
+                                             new PodEvent(PodEvent.Action.DELETED, newPod("p6")),
+                                             new PodEvent(PodEvent.Action.UPDATED, reprioritized("p6", 7))));
+        assertEquals(List.of("p5"), conn.select(Tables.POD_INFO.POD_NAME).from(Tables.POD_INFO)
+                                        .where(Tables.POD_INFO.PRIORITY.eq(7))
+                                        .fetch(Tables.POD_INFO.POD_NAME));
+        assertEquals(numPods - 1, conn.fetchCount(Tables.POD_INFO));
+
+        // Node names written by the scheduler are compared against, rather than the last event's
+        conn.update(Tables.POD_INFO).set(Tables.POD_INFO.NODE_NAME, "n1")
+            .where(Tables.POD_INFO.POD_NAME.eq("p7")).execute();
+        eventsToDatabase.onNodeNameWritten("p7", "n1");
+        conn.update(Tables.POD_INFO).set(Tables.POD_INFO.NODE_NAME, (String) null)
+            .where(Tables.POD_INFO.POD_NAME.eq("p4")).execute();
+        eventsToDatabase.onNodeNameWritten("p4", null);
+        final Pod boundByScheduler = newPod("p7");
+        boundByScheduler.getSpec().setNodeName("n2");
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, boundByScheduler));
+        eventsToDatabase.handle(new PodEvent(PodEvent.Action.UPDATED, bound));
+        assertEquals("n2", conn.select(Tables.POD_INFO.NODE_NAME).from(Tables.POD_INFO)
+                               .where(Tables.POD_INFO.POD_NAME.eq("p7")).fetchOne().value1());
+        assertEquals("n0", conn.select(Tables.POD_INFO.NODE_NAME).from(Tables.POD_INFO)
+                               .where(Tables.POD_INFO.POD_NAME.eq("p4")).fetchOne().value1());
+    }
+
+    private Pod reprioritized(final String podName, final int priority) {
+        final Pod pod = newPod(podName);
+        pod.getSpec().setPriority(priority);
+        return pod;
+    }
+
+    /*
+     * Make sure that pod notifications are coalesced until either enough pods are pending or the batching window
+     * has elapsed
+     */
+    @Test
+    public void testBatchingWindow() throws InterruptedException {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final List<String> policies = Policies.getDefaultPolicies();
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+
+        // All queued notifications are consumed by a single round, even beyond the batch count
+        for (int i = 0; i < 10; i++) {
+            scheduler.handlePodEvent(new PodEvent(PodEvent.Action.ADDED, newPod("p" + i)));
+        }
+        assertEquals(10, scheduler.awaitPendingPodBatch(5, TimeUnit.MINUTES.toMillis(1)));
+
+        // With fewer notifications than the batch count, the round starts once the window elapses
+        for (int i = 10; i < 13; i++) {
+            scheduler.handlePodEvent(new PodEvent(PodEvent.Action.ADDED, newPod("p" + i)));
+        }
+        final long batchTimeMs = 200;
+        final long start = System.nanoTime();
+        assertEquals(3, scheduler.awaitPendingPodBatch(100, batchTimeMs));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(batchTimeMs));
+    }
+
+    /*
+     * Make sure that the scheduler places all pending pods when the batch size adapts to a latency target
+     * that forces it to shrink
+     */
+    @Test
+    public void testAdaptiveBatchSize() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final List<String> policies = Policies.getDefaultPolicies();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final int numNodes = 10;
+        final int numPods = 60;
+        final int minBatchSize = 10;
+
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final PodResourceEventHandler handler = new PodResourceEventHandler(eventHandler::handle);
+
+        for (int i = 0; i < numNodes; i++) {
+            nodeResourceEventHandler.onAddSync(addNode("n" + i, Collections.emptyMap(),
+                                           Collections.emptyList()));
+
+            // Add one system pod per node
+            final String podName = "system-pod-n" + i;
+            final Pod pod = newPod(podName, "Running", Collections.emptyMap(), Collections.emptyMap());
+            pod.getSpec().setNodeName("n" + i);
+            handler.onAddSync(pod);
+        }
+
+        for (int i = 0; i < numPods; i++) {
+            handler.onAddSync(newPod("p" + i));
+        }
+
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.enableAdaptiveBatchSize(1, minBatchSize, 100);
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        final Result<PodInfoRecord> fetch = conn.selectFrom(Tables.POD_INFO).fetch();
+        fetch.forEach(e -> assertTrue(e.getNodeName() != null && e.getNodeName().startsWith("n")));
+
+        // No round completes within 1ms, so the batch size drops to the minimum
+        assertEquals(minBatchSize, conn.selectFrom(Tables.BATCH_SIZE).fetchOne().getPendingpodslimit());
+    }
+
+    /*
+     * Make sure that pipelined batches place all pending pods without overcommitting nodes, even though each batch
+     * is prepared before the previous batch's placements are committed
+     */
+    @Test
+    public void testPipelinedSchedulingDoesNotOvercommitNodes() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final List<String> policies = Policies.getDefaultPolicies();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final int numNodes = 4;
+        final int podsPerNode = 30;
+        final int numPods = 110;
+
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final PodResourceEventHandler handler = new PodResourceEventHandler(eventHandler::handle);
+
+        for (int i = 0; i < numNodes; i++) {
+            final Node node = addNode("n" + i, Collections.emptyMap(), Collections.emptyList());
+            node.getStatus().getAllocatable().put("pods", new Quantity(String.valueOf(podsPerNode)));
+            nodeResourceEventHandler.onAddSync(node);
+
+            // Add one system pod per node
+            final String podName = "system-pod-n" + i;
+            final Pod pod = newPod(podName, "Running", Collections.emptyMap(), Collections.emptyMap());
+            pod.getSpec().setNodeName("n" + i);
+            handler.onAddSync(pod);
+        }
+
+        for (int i = 0; i < numPods; i++) {
+            handler.onAddSync(newPod("p" + i));
+        }
+
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.enablePipelining();
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        final Result<PodInfoRecord> fetch = conn.selectFrom(Tables.POD_INFO).fetch();
+        fetch.forEach(e -> assertTrue(e.getNodeName() != null && e.getNodeName().startsWith("n")));
+        conn.selectFrom(Tables.NODE_INFO).fetch()
+            .forEach(node -> assertTrue(node.getPodsAllocated() <= node.getPodsAllocatable()));
+        assertEquals(0, conn.fetchCount(Tables.PODS_IN_FLIGHT));
+    }
+
+    /*
+     * Make sure that pipelined batches eventually place pods with inter-pod requirements, whose placements are
+     * rejected by batches that were solved against data fetched before an earlier batch was committed
+     */
+    @Test
+    public void testPipelinedSchedulingPlacesPodsWithInterPodRequirements() {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final List<String> policies = Policies.getDefaultPolicies();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final int numNodes = 4;
+        final int numPods = 110;
+
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final PodResourceEventHandler handler = new PodResourceEventHandler(eventHandler::handle);
+
+        for (int i = 0; i < numNodes; i++) {
+            nodeResourceEventHandler.onAddSync(addNode("n" + i, Collections.emptyMap(), Collections.emptyList()));
+
+            // Add one system pod per node
+            final String podName = "system-pod-n" + i;
+            final Pod pod = newPod(podName, "Running", Collections.emptyMap(), Collections.emptyMap());
+            pod.getSpec().setNodeName("n" + i);
+            handler.onAddSync(pod);
+        }
+
+        for (int i = 0; i < numPods; i++) {
+            final Pod pod = newPod("p" + i);
+            if (i % 10 == 0) {
+                final PodAntiAffinity podAntiAffinity = new PodAntiAffinity();
+                podAntiAffinity.getRequiredDuringSchedulingIgnoredDuringExecution()
+                               .add(term("kubernetes.io/hostname", podExpr("app", "In", "none")));
+                pod.getSpec().getAffinity().setPodAntiAffinity(podAntiAffinity);
+            }
+            handler.onAddSync(pod);
+        }
+
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, policies, "ORTOOLS", true, numThreads);
+        scheduler.enablePipelining();
+        scheduler.scheduleAllPendingPods(new EmulatedPodToNodeBinder(dbConnectionPool));
+        conn.selectFrom(Tables.POD_INFO).fetch()
+            .forEach(e -> assertTrue(e.getNodeName() != null && e.getNodeName().startsWith("n")));
+        assertEquals(0, conn.fetchCount(Tables.PODS_IN_FLIGHT));
+    }
+
+    /*
+     * Make sure that bindings to the same node are issued one at a time, that failed bindings are retried, and
+     * that pods whose bindings keep failing are returned to the pending pods
+     */
+    @Test
+    public void testBindingRetriesAndReturnsFailedPodsToPending() throws Exception {
+        final DBConnectionPool dbConnectionPool = new DBConnectionPool();
+        final DSLContext conn = dbConnectionPool.getConnectionToDb();
+        final NodeResourceEventHandler nodeResourceEventHandler = new NodeResourceEventHandler(dbConnectionPool);
+        final PodEventsToDatabase eventHandler = new PodEventsToDatabase(dbConnectionPool);
+        final int numNodes = 3;
+        final int numPods = 20;
+        for (int i = 0; i < numNodes; i++) {
+            nodeResourceEventHandler.onAddSync(addNode("n" + i, Collections.emptyMap(), Collections.emptyList()));
+        }
+        for (int i = 0; i < numPods; i++) {
+            eventHandler.handle(new PodEvent(PodEvent.Action.ADDED, newPod("p" + i)));
+        }
+
+        // p0 fails once, and p1 fails every time
+        final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> bindingsInProgress = new ConcurrentHashMap<>();
+        final AtomicBoolean concurrentBindingsToNode = new AtomicBoolean(false);
+        final IPodToNodeBinder binder = (namespace, podName, nodeName) -> {
+            final AtomicInteger inProgress = bindingsInProgress.computeIfAbsent(nodeName, k -> new AtomicInteger());
+            if (inProgress.incrementAndGet() > 1) {
+                concurrentBindingsToNode.set(true);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inProgress.decrementAndGet();
+            final int attempt = attempts.computeIfAbsent(podName, k -> new AtomicInteger()).incrementAndGet();
+            if (podName.equals("p1") || (podName.equals("p0") && attempt == 1)) {
+                throw new IllegalStateException("Binding " + podName + " failed");
+            }
+        };
+        final Scheduler scheduler = new Scheduler(dbConnectionPool, Policies.getDefaultPolicies(), "ORTOOLS", true,
+                                                  numThreads, Scheduler.DEFAULT_SOLVER_MAX_TIME_IN_SECONDS, 4, 5);
+        final List<Boolean> results = scheduler.scheduleAllPendingPods(binder).get();
+        assertEquals(numPods, results.size());
+        assertEquals(1, results.stream().filter(bound -> !bound).count());
+        assertFalse(concurrentBindingsToNode.get());
+        assertEquals(2, attempts.get("p0").get());
+        assertEquals(BindingExecutor.DEFAULT_MAX_ATTEMPTS, attempts.get("p1").get());
+        assertEquals(numPods, scheduler.getBindingLatency().getCount());
+
+        // p1 is pending again, and its resources are no longer reserved on the node it was placed on
+        assertEquals(List.of("p1"), conn.select(Tables.PODS_TO_ASSIGN.POD_NAME).from(Tables.PODS_TO_ASSIGN)
+                                        .fetch(Tables.PODS_TO_ASSIGN.POD_NAME));
+        final Result<PodInfoRecord> pods = conn.selectFrom(Tables.POD_INFO).fetch();
+        conn.selectFrom(Tables.NODE_INFO).fetch().forEach(
+            node -> assertEquals(pods.stream().filter(pod -> node.getName().equals(pod.getNodeName()))
+                                              .mapToLong(PodInfoRecord::getPodsRequest).sum(),
+                                 (long) node.getPodsAllocated())
+        );
+        scheduler.shutdown();
+    }
+
+    /*
+     * Make sure that a binding still queued behind another binding to the same node at shutdown is returned to the
+     * pending pods, and that the future for its batch completes
+     */
+    @Test
+    public void testBindingsQueuedAtShutdownAreReturned() throws Exception {
+        final DSLContext conn = new DBConnectionPool().getConnectionToDb();
+        final Result<Record3<String, String, String>> placements =
+                conn.newResult(Tables.PODS_TO_ASSIGN.NAMESPACE, Tables.PODS_TO_ASSIGN.POD_NAME,
+                               Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
+        for (final String podName : List.of("p0", "p1")) {
+            final Record3<String, String, String> placement =
+                    conn.newRecord(Tables.PODS_TO_ASSIGN.NAMESPACE, Tables.PODS_TO_ASSIGN.POD_NAME,
+                                   Tables.PODS_TO_ASSIGN.CONTROLLABLE__NODE_NAME);
+            placement.values("default", podName, "n0");
+            placements.add(placement);
+        }
+
+        // p0's binding blocks until the executor is shut down, so p1's binding is still queued behind it
+        final CountDownLatch bindingStarted = new CountDownLatch(1);
+        final IPodToNodeBinder binder = (namespace, podName, nodeName) -> {
+            bindingStarted.countDown();
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Binding " + podName + " was interrupted", e);
+            }
+        };
+        final List<String> returnedPods = Collections.synchronizedList(new ArrayList<>());
+        final Timer bindingLatency = new Timer();
+        final BindingExecutor executor = new BindingExecutor(2, 10, 1, 0,
+                                                             (podName, nodeName) -> returnedPods.add(podName),
+                                                             bindingLatency);
+        final ListenableFuture<List<Boolean>> bindings = executor.bindAll(binder, placements);
+        assertTrue(bindingStarted.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                                                  () -> bindings.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(List.of("p0", "p1"), returnedPods);
+        assertEquals(2, bindingLatency.getCount());
+    }
+
     private static Map<String, String> map(final String k1, final String v1) {
         return Collections.singletonMap(k1, v1);
     }